@@ -0,0 +1,138 @@
+package com.example.securitydemo;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Date;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Signs the tokens used by the benchmarks.
+ */
+final class BenchmarkTokens {
+
+    static final String RS256_ISSUER = "https://rs256-issuer.local";
+
+    private BenchmarkTokens() {
+    }
+
+    /**
+     * Token of the private authorization server, see {@link PrivateServerJwtTokenIssuer}.
+     */
+    static String privateServerToken(String subject) {
+        try {
+            return sign(new MACSigner(PrivateServerJwtTokenIssuer.PRIVATE_AUTH_SERVER_KEY),
+                    new JWSHeader(JWSAlgorithm.HS256), PrivateServerJwtTokenIssuer.ISSUER_NAME, subject);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Unable to sign benchmark token", e);
+        }
+    }
+
+    static RSAKey generateRsaKey() {
+        try {
+            return new RSAKeyGenerator(2048).keyID("benchmark").generate();
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Unable to generate benchmark key", e);
+        }
+    }
+
+    static String rs256Token(RSAKey key, String subject) {
+        try {
+            return sign(new RSASSASigner(key), new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+                    RS256_ISSUER, subject);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Unable to sign benchmark token", e);
+        }
+    }
+
+    static ECKey generateEcKey() {
+        try {
+            return new ECKeyGenerator(Curve.P_256).keyID("benchmark-ec").generate();
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Unable to generate benchmark key", e);
+        }
+    }
+
+    /**
+     * ES256 token of the private authorization server, see {@link PublicKeyRing}.
+     */
+    static String es256Token(ECKey key, String subject) {
+        try {
+            return sign(new ECDSASigner(key), new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(key.getKeyID()).build(),
+                    PrivateServerJwtTokenIssuer.ISSUER_NAME, subject);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Unable to sign benchmark token", e);
+        }
+    }
+
+    static KeyPair generateEd25519Key() {
+        try {
+            return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to generate benchmark key", e);
+        }
+    }
+
+    static OctetKeyPair toOctetKeyPair(String keyId, KeyPair keyPair) {
+        // The X.509 encoding of an Ed25519 public key ends with its 32 bytes
+        byte[] encoded = keyPair.getPublic().getEncoded();
+        byte[] x = Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length);
+        return new OctetKeyPair.Builder(Curve.Ed25519, Base64URL.encode(x)).keyID(keyId).build();
+    }
+
+    /**
+     * EdDSA token of the private authorization server, signed with the JDK since the
+     * Nimbus {@code Ed25519Signer} requires Tink.
+     */
+    static String edDsaToken(String keyId, KeyPair keyPair, String subject) {
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.EdDSA).keyID(keyId).build();
+        String signingInput = header.toBase64URL() + "."
+                + Base64URL.encode(claims(PrivateServerJwtTokenIssuer.ISSUER_NAME, subject).toString());
+        try {
+            Signature signature = Signature.getInstance("Ed25519");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + Base64URL.encode(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign benchmark token", e);
+        }
+    }
+
+    private static String sign(JWSSigner signer, JWSHeader header, String issuer, String subject)
+            throws JOSEException {
+        SignedJWT jwt = new SignedJWT(header, claims(issuer, subject));
+        jwt.sign(signer);
+        return jwt.serialize();
+    }
+
+    private static JWTClaimsSet claims(String issuer, String subject) {
+        Instant now = Instant.now();
+        return new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .subject(subject)
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(1, ChronoUnit.DAYS)))
+                .build();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.securitydemo;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Compares the stream-based authority mapping that {@link SubjectBasedGrantedAuthoritiesConverter}
+ * used originally with the current implementation backed by {@link GrantedAuthorityRegistry}.
+ * <p>
+ * Run with {@code ./gradlew jmh}; the GC profiler reports allocation per operation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GrantedAuthoritiesConverterBenchmark {
+
+    @Param({"bob", "admin", "unknown"})
+    public String subject;
+
+    private Jwt jwt;
+    private Converter<Jwt, Collection<GrantedAuthority>> streamConverter;
+    private Converter<Jwt, Collection<GrantedAuthority>> internedConverter;
+
+    @Setup
+    public void setup() {
+        jwt = Jwt.withTokenValue("token")
+                .header("alg", "HS256")
+                .subject(subject)
+                .build();
+        SubjectRolesResolver resolver = new InMemorySubjectRolesResolver();
+        streamConverter = new StreamGrantedAuthoritiesConverter(resolver);
+        internedConverter = new SubjectBasedGrantedAuthoritiesConverter(resolver);
+    }
+
+    @Benchmark
+    public Collection<GrantedAuthority> stream() {
+        return streamConverter.convert(jwt);
+    }
+
+    @Benchmark
+    public Collection<GrantedAuthority> interned() {
+        return internedConverter.convert(jwt);
+    }
+
+    /**
+     * The original implementation kept as a baseline.
+     */
+    private static class StreamGrantedAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
+
+        private final SubjectRolesResolver roleProvider;
+
+        StreamGrantedAuthoritiesConverter(SubjectRolesResolver roleProvider) {
+            this.roleProvider = roleProvider;
+        }
+
+        @Override
+        public Collection<GrantedAuthority> convert(Jwt source) {
+            return roleProvider.getRolesBySubject(source.getSubject())
+                    .stream()
+                    .map(role -> "ROLE_" + role)
+                    .map(SimpleGrantedAuthority::new)
+                    .collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.securitydemo;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import com.nimbusds.jwt.JWTParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading the issuer of a token with {@link JwtIssuerScanner} against the
+ * full parse performed by Spring's {@code JwtIssuerAuthenticationManagerResolver}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IssuerResolutionBenchmark {
+
+    private String token;
+
+    @Setup
+    public void setup() {
+        token = BenchmarkTokens.rs256Token(BenchmarkTokens.generateRsaKey(), "bob");
+    }
+
+    @Benchmark
+    public String scan() {
+        return JwtIssuerScanner.issuerOf(token);
+    }
+
+    @Benchmark
+    public String parse() throws ParseException {
+        return JWTParser.parse(token).getJWTClaimsSet().getIssuer();
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+/**
+ * Measures decoding and signature verification of a single token: HS256 with the
+ * decoder of {@link PrivateServerJwtTokenIssuer} and with the stock Nimbus decoder,
+ * RS256 against a locally generated key, and RS256 behind the {@link CachingJwtDecoder}.
+ * The RS256 decoder selects its key from an in-memory JWK set, like the decoders of
+ * {@link MockOidcJwtTokenIssuer} do from a fetched one, so that the key selection is
+ * measured along with the signature but no network is involved.
+ * ES256 and EdDSA are verified by the same decoder as HS256, with the keys of a
+ * {@link PublicKeyRing}, so that the asymmetric algorithms compare against both the
+ * shared HMAC key and the RS256 keys of external issuers.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtDecodingBenchmark {
+
+    private JwtDecoder hs256Decoder;
+    private JwtDecoder stockHs256Decoder;
+    private String hs256Token;
+    private JwtDecoder rs256Decoder;
+    private JwtDecoder cachingRs256Decoder;
+    private String rs256Token;
+    private PrivateServerJwtTokenIssuer asymmetricIssuer;
+    private JwtDecoder asymmetricDecoder;
+    private Path publicKeyFile;
+    private String es256Token;
+    private String edDsaToken;
+
+    @Setup
+    public void setup() throws JOSEException, IOException {
+        hs256Decoder = new PrivateServerJwtTokenIssuer().getJwtDecoder();
+        stockHs256Decoder = NimbusJwtDecoder.withSecretKey(PrivateServerJwtTokenIssuer.PRIVATE_AUTH_SERVER_KEY).build();
+        hs256Token = BenchmarkTokens.privateServerToken("bob");
+
+        RSAKey rsaKey = BenchmarkTokens.generateRsaKey();
+        rs256Decoder = jwkSetDecoder(new ImmutableJWKSet<>(new JWKSet(rsaKey.toPublicJWK())));
+        cachingRs256Decoder = new CachingJwtDecoder(rs256Decoder, 10_000, Duration.ofMinutes(5));
+        rs256Token = BenchmarkTokens.rs256Token(rsaKey, "bob");
+
+        ECKey ecKey = BenchmarkTokens.generateEcKey();
+        KeyPair edKeyPair = BenchmarkTokens.generateEd25519Key();
+        publicKeyFile = Files.createTempFile("public-keys", ".json");
+        Files.write(publicKeyFile, new JWKSet(List.of(ecKey.toPublicJWK(),
+                BenchmarkTokens.toOctetKeyPair("benchmark-ed", edKeyPair))).toString(false)
+                .getBytes(StandardCharsets.UTF_8));
+        SecurityDemoProperties.PrivateServer properties = new SecurityDemoProperties.PrivateServer();
+        properties.setPublicKeyFile(publicKeyFile);
+        asymmetricIssuer = new PrivateServerJwtTokenIssuer(properties);
+        asymmetricDecoder = asymmetricIssuer.getJwtDecoder();
+        es256Token = BenchmarkTokens.es256Token(ecKey, "bob");
+        edDsaToken = BenchmarkTokens.edDsaToken("benchmark-ed", edKeyPair, "bob");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        asymmetricIssuer.close();
+        Files.deleteIfExists(publicKeyFile);
+    }
+
+    /**
+     * Same processor as the one of {@link MockOidcJwtTokenIssuer}, with the given JWK source.
+     */
+    private static JwtDecoder jwkSetDecoder(JWKSource<SecurityContext> jwkSource) {
+        Set<JWSAlgorithm> jwsAlgorithms = new HashSet<>();
+        jwsAlgorithms.addAll(JWSAlgorithm.Family.RSA);
+        jwsAlgorithms.addAll(JWSAlgorithm.Family.EC);
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(jwsAlgorithms, jwkSource));
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+        return new NimbusJwtDecoder(jwtProcessor);
+    }
+
+    @Benchmark
+    public Jwt hs256() {
+        return hs256Decoder.decode(hs256Token);
+    }
+
+    @Benchmark
+    public Jwt hs256Stock() {
+        return stockHs256Decoder.decode(hs256Token);
+    }
+
+    @Benchmark
+    public Jwt rs256() {
+        return rs256Decoder.decode(rs256Token);
+    }
+
+    @Benchmark
+    public Jwt rs256Cached() {
+        return cachingRs256Decoder.decode(rs256Token);
+    }
+
+    @Benchmark
+    public Jwt es256() {
+        return asymmetricDecoder.decode(es256Token);
+    }
+
+    @Benchmark
+    public Jwt edDsa() {
+        return asymmetricDecoder.decode(edDsaToken);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.securitydemo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Sends requests through the complete servlet {@code SecurityFilterChain} of the
+ * application with {@link MockMvc}: bearer token extraction, issuer resolution,
+ * decoding, authority conversion and the authorization rules. The context runs on a
+ * mock servlet environment, without an embedded server.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecurityFilterChainBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mvc;
+    private String userAuthorization;
+    private String adminAuthorization;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(SecurityDemoApplication.class)
+                .web(WebApplicationType.SERVLET)
+                // Like @SpringBootTest with WebEnvironment.MOCK
+                .contextFactory(webApplicationType -> new GenericWebApplicationContext(new MockServletContext()))
+                .properties("logging.level.root=WARN")
+                .run();
+        mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context)
+                .apply(springSecurity())
+                .build();
+        userAuthorization = "Bearer " + BenchmarkTokens.privateServerToken("bob");
+        adminAuthorization = "Bearer " + BenchmarkTokens.privateServerToken("admin");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult publicEndpoint() throws Exception {
+        return mvc.perform(get("/public")).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult protectedEndpoint() throws Exception {
+        return mvc.perform(get("/protected").header("Authorization", userAuthorization)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult adminEndpoint() throws Exception {
+        return mvc.perform(get("/admin").header("Authorization", adminAuthorization)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult forbiddenEndpoint() throws Exception {
+        return mvc.perform(get("/admin").header("Authorization", userAuthorization)).andReturn();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures role lookups of the available {@link SubjectRolesResolver} implementations.
+ * The memory-mapped index is built from a generated CSV with a million subjects.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubjectRolesResolutionBenchmark {
+
+    private static final int INDEXED_SUBJECTS = 1_000_000;
+
+    @Param({"admin", "unknown"})
+    public String subject;
+
+    private SubjectRolesResolver inMemory;
+    private SubjectRolesResolver cached;
+    private MappedSubjectRolesResolver mapped;
+    private Path directory;
+
+    @Setup
+    public void setup() throws IOException {
+        inMemory = new InMemorySubjectRolesResolver();
+        cached = new CachingSubjectRolesResolver(inMemory, 10_000, Duration.ofMinutes(10), Duration.ofMinutes(1),
+                Duration.ofMinutes(1));
+
+        directory = Files.createTempDirectory("subject-roles-benchmark");
+        Path csv = directory.resolve("roles.csv");
+        StringBuilder content = new StringBuilder("admin,ADMIN\n");
+        for (int i = 0; i < INDEXED_SUBJECTS; i++) {
+            content.append("subject-").append(i).append(i % 10 == 0 ? ",ADMIN\n" : ",USER\n");
+        }
+        Files.write(csv, content.toString().getBytes(StandardCharsets.UTF_8));
+        Path index = directory.resolve("roles.idx");
+        SubjectRolesIndexBuilder.build(csv, index);
+        mapped = new MappedSubjectRolesResolver(index, Duration.ofHours(1));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mapped.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Collection<String> inMemory() {
+        return inMemory.getRolesBySubject(subject);
+    }
+
+    @Benchmark
+    public Collection<String> cached() {
+        return cached.getRolesBySubject(subject);
+    }
+
+    @Benchmark
+    public Collection<String> mapped() {
+        return mapped.getRolesBySubject(subject);
+    }
+}
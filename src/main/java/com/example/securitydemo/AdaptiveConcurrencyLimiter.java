@@ -0,0 +1,163 @@
+package com.example.securitydemo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.authentication.AuthenticationManager;
+
+/**
+ * Limit of concurrent authentications, e.g. of one issuer, which adapts to the observed
+ * latency, so that a slow dependency like a JWK set endpoint or a role backend ties up
+ * a bounded number of request threads.
+ * <p>
+ * The limit follows a latency gradient: the average latency of a short window is
+ * compared to a long-term average. As long as the short-term latency stays within the
+ * tolerance, the limit grows additively, by a fraction of its square root per window.
+ * As queuing sets in and the short-term latency rises, the limit shrinks in proportion
+ * to the ratio of the two, by up to a tenth per window. The long-term average follows
+ * a lasting change slowly, so that a new normal is accepted eventually. The limit only
+ * grows while it is actually used, so that a quiet phase does not leave behind a limit
+ * that no longer protects anything.
+ * <p>
+ * Taking a permit is an increment of the in-flight counter. The samples are summed up
+ * without locks, and the one request which closes a window updates the limit.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    // Windows are at least this long and have at least this many samples
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int WINDOW_SAMPLES = 10;
+
+    // Weight of the new value in the exponential moving averages of the limit and the long-term latency
+    private static final double LIMIT_SMOOTHING = 0.2;
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    private final int minimumLimit;
+    private final int maximumLimit;
+    private final double latencyTolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong windowLatencySum = new AtomicLong();
+    private final AtomicInteger windowSamples = new AtomicInteger();
+    private final AtomicInteger windowMaximumInFlight = new AtomicInteger();
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    private volatile int limit;
+    private volatile long windowStartNanos;
+    private double estimatedLimit;
+    private double longTermLatency;
+
+    /**
+     * @param latencyTolerance ratio of the short-term to the long-term latency which
+     * does not yet shrink the limit, e.g. {@code 1.5}
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minimumLimit, int maximumLimit,
+            double latencyTolerance) {
+        if (minimumLimit < 1 || maximumLimit < minimumLimit || latencyTolerance < 1) {
+            throw new IllegalArgumentException("Limits must be positive and the tolerance at least 1, but are "
+                    + minimumLimit + ".." + maximumLimit + " and " + latencyTolerance);
+        }
+        this.minimumLimit = minimumLimit;
+        this.maximumLimit = maximumLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = Math.min(Math.max(initialLimit, minimumLimit), maximumLimit);
+        this.estimatedLimit = limit;
+        this.windowStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Decorates the authentication manager so that it is limited by this limiter.
+     * Authentications over the limit fail with a {@link ConcurrencyLimitExceededException}.
+     */
+    public AuthenticationManager limit(AuthenticationManager authenticationManager) {
+        return authentication -> {
+            if (!tryAcquire()) {
+                throw new ConcurrencyLimitExceededException("Too many concurrent authentications, limit is "
+                        + limit);
+            }
+            long start = System.nanoTime();
+            try {
+                return authenticationManager.authenticate(authentication);
+            } finally {
+                release(start, System.nanoTime());
+            }
+        };
+    }
+
+    /**
+     * Takes a permit if the limit allows it. A permit taken must be given back with
+     * {@link #release(long, long)}.
+     */
+    public boolean tryAcquire() {
+        int current = inFlight.incrementAndGet();
+        if (current > limit) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        if (current > windowMaximumInFlight.get()) {
+            windowMaximumInFlight.accumulateAndGet(current, Math::max);
+        }
+        return true;
+    }
+
+    /**
+     * Gives back a permit and records the latency of the work done with it.
+     *
+     * @param startNanos time the work started, as per {@link System#nanoTime()}
+     * @param nowNanos current time
+     */
+    public void release(long startNanos, long nowNanos) {
+        inFlight.decrementAndGet();
+        windowLatencySum.addAndGet(nowNanos - startNanos);
+        int samples = windowSamples.incrementAndGet();
+        if (samples >= WINDOW_SAMPLES && nowNanos - windowStartNanos >= WINDOW_NANOS
+                && updating.compareAndSet(false, true)) {
+            try {
+                closeWindow(nowNanos);
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void closeWindow(long nowNanos) {
+        // Samples recorded concurrently may end up in the next window, which is harmless
+        int samples = windowSamples.getAndSet(0);
+        long latencySum = windowLatencySum.getAndSet(0);
+        int maximumInFlight = windowMaximumInFlight.getAndSet(0);
+        windowStartNanos = nowNanos;
+        if (samples == 0) {
+            return;
+        }
+        double shortTermLatency = Math.max(1, (double) latencySum / samples);
+        if (longTermLatency == 0) {
+            longTermLatency = shortTermLatency;
+            return;
+        }
+        longTermLatency += (shortTermLatency - longTermLatency) * LATENCY_SMOOTHING;
+        if (longTermLatency > shortTermLatency * 2) {
+            // Recovering from a slow phase, let the long-term latency catch up quickly
+            longTermLatency = shortTermLatency * 2;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, latencyTolerance * longTermLatency / shortTermLatency));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        if (maximumInFlight < estimatedLimit / 2) {
+            // The limit was not the bottleneck, so there is no evidence it could be higher
+            newLimit = Math.min(newLimit, estimatedLimit);
+        }
+        newLimit = estimatedLimit + (newLimit - estimatedLimit) * LIMIT_SMOOTHING;
+        estimatedLimit = Math.max(minimumLimit, Math.min(maximumLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -0,0 +1,423 @@
+package com.example.securitydemo;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.server.resource.BearerTokenAuthenticationToken;
+
+/**
+ * Audit trail of the authentication decisions, written to rolling files without
+ * adding I/O to the requests.
+ * <p>
+ * Requests only record their decision in a ring buffer of preallocated events. A
+ * slot is claimed with a compare-and-set of the producer cursor, and handed over to
+ * the writer by publishing its sequence number, so recording neither locks nor
+ * allocates. A single background writer drains the events in batches, writes them as
+ * JSON lines and flushes once per batch. While idle, it parks until the next request
+ * publishes an event and wakes it up.
+ * <p>
+ * When the writer falls behind and the buffer is full, the {@link OverflowPolicy}
+ * decides whether the event is dropped or the request waits for a free slot.
+ * Dropped events are counted and reported as {@code security.audit.dropped}.
+ */
+public class AuthenticationAuditLog implements MeterBinder, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthenticationAuditLog.class);
+
+    private static final String FILE_NAME = "audit.log";
+
+    // Pause of blocked requests between attempts, and of the closing writer waiting for claimed events
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // Producer cursor once the writer stopped, so that no more slots can be claimed
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    /**
+     * What to do with an event when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drop the event and count it, the request is not delayed.
+         */
+        DROP,
+        /**
+         * Wait until the writer frees a slot, so that no event is lost.
+         */
+        BLOCK
+    }
+
+    private final Event[] events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong producerCursor = new AtomicLong();
+    private final OverflowPolicy overflowPolicy;
+    private final Path directory;
+    private final long maximumFileSize;
+    private final int maximumHistory;
+    private final int batchSize;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder writtenCount = new LongAdder();
+    private final Thread writer;
+
+    private long consumerCursor;
+    private JsonGenerator generator;
+    private volatile boolean running = true;
+    private volatile boolean writerParked;
+
+    /**
+     * @param bufferSize number of events buffered, rounded up to a power of two
+     * @param batchSize maximum number of events written between two flushes
+     * @param maximumFileSize size after which the file is rolled over
+     * @param maximumHistory number of rolled over files kept
+     */
+    public AuthenticationAuditLog(Path directory, int bufferSize, OverflowPolicy overflowPolicy, int batchSize,
+            long maximumFileSize, int maximumHistory) {
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.events = new Event[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            events[i] = new Event();
+            sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.directory = directory;
+        this.maximumFileSize = maximumFileSize;
+        this.maximumHistory = maximumHistory;
+        this.batchSize = batchSize;
+        try {
+            Files.createDirectories(directory);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open audit log in " + directory, e);
+        }
+        this.writer = new Thread(this::writeEvents, "authentication-audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Decorates the authentication manager so that all its decisions are recorded.
+     * Failed authentications are attributed to the issuer found in the token, if any.
+     */
+    public AuthenticationManager audit(AuthenticationManager authenticationManager) {
+        return authentication -> {
+            Authentication result;
+            try {
+                result = authenticationManager.authenticate(authentication);
+            } catch (AuthenticationException e) {
+                recordFailure(issuerOf(authentication), e.getMessage());
+                throw e;
+            }
+            recordSuccess(JwtAuthentications.issuerOf(result), JwtAuthentications.subjectOf(result),
+                    result.getAuthorities());
+            return result;
+        };
+    }
+
+    public void recordSuccess(String issuer, String subject, Collection<? extends GrantedAuthority> authorities) {
+        record(true, issuer, subject, authorities, null);
+    }
+
+    public void recordFailure(String issuer, String reason) {
+        record(false, issuer, null, Collections.emptySet(), reason);
+    }
+
+    /**
+     * Number of events not written because the buffer was full or writing failed.
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Number of events written to the file.
+     */
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("security.audit.dropped", this, AuthenticationAuditLog::getDroppedCount)
+                .description("Authentication audit events dropped because the buffer was full or writing failed")
+                .register(registry);
+        FunctionCounter.builder("security.audit.written", this, AuthenticationAuditLog::getWrittenCount)
+                .description("Authentication audit events written")
+                .register(registry);
+    }
+
+    /**
+     * Stops the writer once all events claimed until then are written. Events recorded
+     * afterwards are dropped and counted.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void record(boolean success, String issuer, String subject,
+            Collection<? extends GrantedAuthority> authorities, String reason) {
+        long position = claim();
+        if (position < 0) {
+            droppedCount.increment();
+            return;
+        }
+        int index = (int) position & mask;
+        Event event = events[index];
+        event.timestamp = System.currentTimeMillis();
+        event.success = success;
+        event.issuer = issuer;
+        event.subject = subject;
+        event.authorities = authorities;
+        event.reason = reason;
+        // Publishes the event to the writer
+        sequences.set(index, position + 1);
+        if (writerParked) {
+            writerParked = false;
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Claims the next free slot, see Dmitry Vyukov's bounded MPMC queue.
+     *
+     * @return position of the claimed slot, or {@code -1} if the event is to be dropped
+     */
+    private long claim() {
+        long position = producerCursor.get();
+        while (true) {
+            if (position == CLOSED) {
+                return -1;
+            }
+            long sequence = sequences.get((int) position & mask);
+            long difference = sequence - position;
+            if (difference == 0) {
+                if (producerCursor.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+                position = producerCursor.get();
+            } else if (difference < 0) {
+                // The slot still holds an event of the previous lap, so the buffer is full
+                if (overflowPolicy == OverflowPolicy.DROP || !running) {
+                    return -1;
+                }
+                LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+                position = producerCursor.get();
+            } else {
+                position = producerCursor.get();
+            }
+        }
+    }
+
+    private void writeEvents() {
+        while (true) {
+            if (writeBatch() > 0) {
+                continue;
+            }
+            if (!running) {
+                long position = producerCursor.get();
+                if (position == consumerCursor && producerCursor.compareAndSet(position, CLOSED)) {
+                    break;
+                }
+                // Events claimed but not published yet, or claimed in the meantime
+                LockSupport.parkNanos(this, BLOCKED_PARK_NANOS);
+                continue;
+            }
+            writerParked = true;
+            // Checked after announcing the park, so that either the writer sees the next
+            // event here or its producer sees the flag and wakes the writer up
+            if (!isPublished(consumerCursor) && running) {
+                LockSupport.park(this);
+            }
+            writerParked = false;
+        }
+        try {
+            generator.close();
+        } catch (IOException e) {
+            log.warn("Unable to close audit log in {}", directory, e);
+        }
+    }
+
+    private int writeBatch() {
+        int count = 0;
+        IOException failure = null;
+        while (count < batchSize) {
+            if (!isPublished(consumerCursor)) {
+                break;
+            }
+            int index = (int) consumerCursor & mask;
+            Event event = events[index];
+            if (failure == null) {
+                try {
+                    write(event);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            event.clear();
+            // Frees the slot for the next lap
+            sequences.set(index, consumerCursor + events.length);
+            consumerCursor++;
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            generator.flush();
+            writtenCount.add(count);
+            if (Files.size(directory.resolve(FILE_NAME)) >= maximumFileSize) {
+                roll();
+            }
+        } catch (IOException e) {
+            droppedCount.add(count);
+            log.warn("Unable to write authentication audit events to {}", directory, e);
+            reopen();
+        }
+        return count;
+    }
+
+    private boolean isPublished(long position) {
+        return sequences.get((int) position & mask) == position + 1;
+    }
+
+    private void write(Event event) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("time", Instant.ofEpochMilli(event.timestamp).toString());
+        generator.writeStringField("outcome", event.success ? "success" : "failure");
+        if (event.issuer != null) {
+            generator.writeStringField("issuer", event.issuer);
+        }
+        if (event.subject != null) {
+            generator.writeStringField("subject", event.subject);
+        }
+        if (event.success) {
+            generator.writeArrayFieldStart("authorities");
+            for (GrantedAuthority authority : event.authorities) {
+                generator.writeString(authority.getAuthority());
+            }
+            generator.writeEndArray();
+        }
+        if (event.reason != null) {
+            generator.writeStringField("reason", event.reason);
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Renames audit.log to audit.log.1, audit.log.1 to audit.log.2 and so on, dropping
+     * the oldest file, and starts a new audit.log.
+     */
+    private void roll() throws IOException {
+        generator.close();
+        Files.deleteIfExists(directory.resolve(FILE_NAME + "." + maximumHistory));
+        for (int i = maximumHistory - 1; i >= 1; i--) {
+            Path file = directory.resolve(FILE_NAME + "." + i);
+            if (Files.exists(file)) {
+                Files.move(file, directory.resolve(FILE_NAME + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maximumHistory > 0) {
+            Files.move(directory.resolve(FILE_NAME), directory.resolve(FILE_NAME + ".1"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(directory.resolve(FILE_NAME));
+        }
+        open();
+    }
+
+    /**
+     * Starts over with a new generator, since the current one might have been left
+     * in the middle of an event.
+     */
+    private void reopen() {
+        try {
+            generator.close();
+        } catch (IOException e) {
+            log.debug("Unable to close audit log in {}", directory, e);
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            log.warn("Unable to reopen audit log in {}", directory, e);
+        }
+    }
+
+    private void open() throws IOException {
+        BufferedWriter fileWriter = Files.newBufferedWriter(directory.resolve(FILE_NAME), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        generator = jsonFactory.createGenerator(fileWriter);
+        // Events are separated by newlines instead
+        generator.setRootValueSeparator(null);
+    }
+
+    private static String issuerOf(Authentication authentication) {
+        if (!(authentication instanceof BearerTokenAuthenticationToken)) {
+            return null;
+        }
+        try {
+            return JwtIssuerScanner.issuerOf(((BearerTokenAuthenticationToken) authentication).getToken());
+        } catch (BadJwtException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Slot of the ring buffer, reused for every lap.
+     */
+    private static final class Event {
+
+        private long timestamp;
+        private boolean success;
+        private String issuer;
+        private String subject;
+        private Collection<? extends GrantedAuthority> authorities;
+        private String reason;
+
+        void clear() {
+            issuer = null;
+            subject = null;
+            authorities = null;
+            reason = null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.securitydemo;
+
+import org.springframework.util.Assert;
+
+/**
+ * Where the roles of an issuer's tokens come from, see
+ * {@link SupportedJwtTokenIssuer#getAuthorityPolicy()}.
+ * <p>
+ * Issuers which put the roles into their tokens can skip the {@link SubjectRolesResolver}
+ * entirely. The claim holds role names without the {@code ROLE_} prefix, either as an
+ * array or as a space-separated string, and is only trusted for tokens whose signature
+ * was verified with the keys of that issuer.
+ */
+public final class AuthorityPolicy {
+
+    /**
+     * Source of the roles.
+     */
+    public enum Source {
+        /**
+         * Roles are looked up by the token subject, the default.
+         */
+        RESOLVER,
+        /**
+         * Roles are taken from the token claim only.
+         */
+        CLAIM,
+        /**
+         * Roles of the token claim are added to the ones looked up by the subject.
+         */
+        MERGED
+    }
+
+    private static final AuthorityPolicy RESOLVER = new AuthorityPolicy(Source.RESOLVER, null);
+
+    private final Source source;
+    private final String claimName;
+
+    private AuthorityPolicy(Source source, String claimName) {
+        this.source = source;
+        this.claimName = claimName;
+    }
+
+    public static AuthorityPolicy resolver() {
+        return RESOLVER;
+    }
+
+    public static AuthorityPolicy claim(String claimName) {
+        Assert.hasText(claimName, "claimName cannot be empty");
+        return new AuthorityPolicy(Source.CLAIM, claimName);
+    }
+
+    public static AuthorityPolicy merged(String claimName) {
+        Assert.hasText(claimName, "claimName cannot be empty");
+        return new AuthorityPolicy(Source.MERGED, claimName);
+    }
+
+    public static AuthorityPolicy of(Source source, String claimName) {
+        switch (source) {
+            case CLAIM:
+                return claim(claimName);
+            case MERGED:
+                return merged(claimName);
+            default:
+                return resolver();
+        }
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * @return name of the claim with the roles, or {@code null} for {@link Source#RESOLVER}
+     */
+    public String getClaimName() {
+        return claimName;
+    }
+
+    @Override
+    public String toString() {
+        return claimName == null ? source.name() : source + "(" + claimName + ")";
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+/**
+ * Validates batches of bearer tokens with the decoders of the supported issuers.
+ * <p>
+ * Tokens are verified in parallel on a pool of a fixed size shared by all batches.
+ * Each batch keeps only a bounded window of tokens in flight and hands the results
+ * over in the order of the tokens as soon as they are available, so the memory
+ * needed for a batch does not depend on its size. Neither does the memory needed for
+ * a single line: longer lines than the maximum token length are skipped unread and
+ * reported as invalid. A batch ends with an invalid result for the first token beyond
+ * the maximum number of tokens.
+ * <p>
+ * Each token gets a result, also when its verification fails unexpectedly, so that a
+ * single token cannot abort the whole batch.
+ */
+public class BatchTokenValidator implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchTokenValidator.class);
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final JwtIssuerRegistry issuers;
+    private final SubjectBasedGrantedAuthoritiesConverter authoritiesConverter;
+    private final ExecutorService executor;
+    private final int maximumInFlight;
+    private final int maximumTokens;
+    private final int maximumTokenLength;
+
+    public BatchTokenValidator(JwtIssuerRegistry issuers,
+            SubjectBasedGrantedAuthoritiesConverter authoritiesConverter,
+            SecurityDemoProperties.BatchValidation properties) {
+        this.issuers = issuers;
+        this.authoritiesConverter = authoritiesConverter;
+        this.maximumTokens = properties.getMaximumTokens();
+        this.maximumTokenLength = properties.getMaximumTokenLength();
+        int parallelism = properties.getParallelism();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "token-validation-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Enough to keep all threads busy while the results of a batch are written
+        this.maximumInFlight = parallelism * 4;
+    }
+
+    /**
+     * Upper bound of the size of a batch in characters, including line breaks.
+     */
+    public long getMaximumBatchLength() {
+        return (long) maximumTokens * (maximumTokenLength + 2);
+    }
+
+    /**
+     * Validates the tokens read from the given reader, one per line, and passes the
+     * results to the writer in the same order. Blank lines are skipped.
+     */
+    public void validate(Reader tokens, ResultWriter results) throws IOException {
+        ArrayDeque<Future<TokenValidationResult>> pending = new ArrayDeque<>(maximumInFlight);
+        StringBuilder line = new StringBuilder();
+        try {
+            int index = 0;
+            while (readLine(tokens, line)) {
+                String token = line.toString().trim();
+                if (token.isEmpty()) {
+                    continue;
+                }
+                if (pending.size() == maximumInFlight) {
+                    results.write(awaitNext(pending, index, results));
+                }
+                int tokenIndex = index++;
+                if (tokenIndex == maximumTokens) {
+                    pending.add(CompletableFuture.completedFuture(
+                            TokenValidationResult.invalid(tokenIndex, null, "Too many tokens")));
+                    break;
+                }
+                if (line.length() > maximumTokenLength) {
+                    pending.add(CompletableFuture.completedFuture(
+                            TokenValidationResult.invalid(tokenIndex, null, "Token too long")));
+                } else {
+                    pending.add(executor.submit(() -> validate(tokenIndex, token)));
+                }
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    results.write(awaitNext(pending, index, results));
+                }
+            }
+            while (!pending.isEmpty()) {
+                results.write(awaitNext(pending, index, results));
+            }
+            results.flush();
+        } finally {
+            // E.g. when the client went away, there is no point in verifying the rest
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Validates a single token.
+     */
+    public TokenValidationResult validate(int index, String token) {
+        String issuer = null;
+        try {
+            issuer = JwtIssuerScanner.issuerOf(token);
+            if (issuer == null) {
+                return TokenValidationResult.invalid(index, null, "Missing issuer");
+            }
+            JwtDecoder decoder = issuers.getDecoder(issuer);
+            if (decoder == null) {
+                return TokenValidationResult.invalid(index, issuer, "Invalid issuer");
+            }
+            AuthorityPolicy authorityPolicy = issuers.getAuthorityPolicy(issuer);
+            Jwt jwt = decoder.decode(token);
+            return TokenValidationResult.valid(index, issuer, jwt.getSubject(),
+                    roles(jwt, authorityPolicy != null ? authorityPolicy : AuthorityPolicy.resolver()));
+        } catch (JwtException e) {
+            return TokenValidationResult.invalid(index, issuer, e.getMessage());
+        } catch (RuntimeException e) {
+            // E.g. the JWK set or the roles of the subject not being available
+            log.warn("Unable to validate token of issuer {}", issuer, e);
+            return TokenValidationResult.invalid(index, issuer, "Unable to validate token");
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private List<String> roles(Jwt jwt, AuthorityPolicy authorityPolicy) {
+        Collection<GrantedAuthority> authorities = authoritiesConverter.convert(jwt, authorityPolicy);
+        List<String> roles = new ArrayList<>(authorities.size());
+        for (GrantedAuthority authority : authorities) {
+            String name = authority.getAuthority();
+            if (name.startsWith(ROLE_PREFIX)) {
+                roles.add(name.substring(ROLE_PREFIX.length()));
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * Reads the next line into the given builder without its line break. Only up to one
+     * character more than the maximum token length is kept, which is enough to tell
+     * that the line is too long.
+     *
+     * @return {@code false} at the end of the input
+     */
+    private boolean readLine(Reader reader, StringBuilder line) throws IOException {
+        line.setLength(0);
+        int c = reader.read();
+        if (c < 0) {
+            return false;
+        }
+        while (c >= 0 && c != '\n') {
+            if (c != '\r' && line.length() <= maximumTokenLength) {
+                line.append((char) c);
+            }
+            c = reader.read();
+        }
+        return true;
+    }
+
+    /**
+     * @param submitted number of tokens submitted so far, which tells the index of the next one
+     */
+    private static TokenValidationResult awaitNext(ArrayDeque<Future<TokenValidationResult>> pending,
+            int submitted, ResultWriter results) throws IOException {
+        Future<TokenValidationResult> next = pending.peek();
+        if (!next.isDone()) {
+            // Let the client see the results written so far while waiting
+            results.flush();
+        }
+        int index = submitted - pending.size();
+        try {
+            TokenValidationResult result = next.get();
+            pending.poll();
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while validating tokens");
+        } catch (ExecutionException e) {
+            pending.poll();
+            log.warn("Unable to validate token", e.getCause());
+            return TokenValidationResult.invalid(index, null, "Unable to validate token");
+        }
+    }
+
+    /**
+     * Receiver of the results of a batch.
+     */
+    public interface ResultWriter {
+
+        void write(TokenValidationResult result) throws IOException;
+
+        void flush() throws IOException;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides threads for the blocking parts of the security pipeline, such as
+ * background refreshes of cached roles and JWK sets.
+ * <p>
+ * In the virtual-thread mode every blocking task runs on its own virtual thread,
+ * so a slow role backend or issuer occupies neither a platform thread nor a slot
+ * in a bounded pool. Otherwise, the common fork-join pool and dedicated daemon
+ * threads are used.
+ */
+public class BlockingExecutors implements Closeable {
+
+    private final boolean virtualThreads;
+    private final Executor executor;
+
+    public BlockingExecutors(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        this.executor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Executors backed by platform threads only.
+     */
+    public static BlockingExecutors platform() {
+        return new BlockingExecutors(false);
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Executor for short-lived blocking tasks.
+     */
+    public Executor executor() {
+        return executor;
+    }
+
+    /**
+     * Factory for threads of long-lived background workers.
+     */
+    public ThreadFactory threadFactory(String name) {
+        if (virtualThreads) {
+            return Thread.ofVirtual().name(name).factory();
+        }
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void close() {
+        // The common pool is not ours to shut down
+        if (executor instanceof ExecutorService && virtualThreads) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+}
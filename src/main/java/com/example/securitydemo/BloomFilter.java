@@ -0,0 +1,98 @@
+package com.example.securitydemo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of strings, each in one of several namespaces, e.g. token ids and
+ * subjects, and within a scope, e.g. an issuer, without concatenating namespace,
+ * scope and value.
+ * <p>
+ * Adding is lock-free and can run concurrently with lookups. The probe positions are
+ * derived from a single 64-bit hash, split into two halves combined as
+ * {@code h1 + i * h2}, so a lookup hashes the value once regardless of the number of
+ * probes.
+ */
+class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final int capacity;
+
+    /**
+     * @param capacity number of values for which the false positive rate holds
+     * @param falsePositiveRate probability of a lookup of an absent value reporting a match
+     */
+    BloomFilter(int capacity, double falsePositiveRate) {
+        // Optimal size and number of hash functions, see https://en.wikipedia.org/wiki/Bloom_filter
+        long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        this.capacity = capacity;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    void add(char namespace, String scope, String value) {
+        long hash = hash(namespace, scope, value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} if the value was certainly not added, {@code true} if it
+     * might have been
+     */
+    boolean mightContain(char namespace, String scope, String value) {
+        long hash = hash(namespace, scope, value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index(int combinedHash) {
+        return (combinedHash & 0x7fffffffL) % bitCount;
+    }
+
+    /**
+     * 64-bit FNV-1a of the namespace and the characters of the scope and the value,
+     * finished with the MurmurHash3 mix so that both halves are well distributed.
+     */
+    private static long hash(char namespace, String scope, String value) {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ namespace) * 0x100000001b3L;
+        for (int i = 0; i < scope.length(); i++) {
+            hash = (hash ^ scope.charAt(i)) * 0x100000001b3L;
+        }
+        // Separates the scope from the value, so that moving characters between them changes the hash
+        hash = (hash ^ 0xffff) * 0x100000001b3L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3f99e3b2ce5L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.securitydemo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+/**
+ * Decorates a {@link JwtDecoder} with a bounded cache of already verified tokens
+ * so that clients reusing the same bearer token do not pay for the signature
+ * verification on every request.
+ * <p>
+ * Entries are keyed by the SHA-256 digest of the raw token rather than by the token
+ * itself, which keeps the key size constant. A cached token is only served for the
+ * very token it was decoded from, so not even a colliding digest lets one token pass
+ * for another. The digests are computed by {@link MessageDigest}s of an {@link ObjectPool}.
+ * <p>
+ * Every entry is evicted no later than the <em>exp</em> claim of its token; tokens
+ * without expiry are never cached. Failed verifications are not cached either.
+ * Hits and misses are recorded, see {@link SecurityPipelineMetrics#monitorJwtCache}.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    // Shared by all decoders
+    private static final ObjectPool<MessageDigest> SHA_256 = new ObjectPool<>(CachingJwtDecoder::sha256);
+
+    private final JwtDecoder delegate;
+    private final Function<String, Object> keyFunction;
+    private final Cache<Object, Jwt> cache;
+
+    public CachingJwtDecoder(JwtDecoder delegate, long maximumSize, Duration maximumTtl) {
+        this(delegate, maximumSize, maximumTtl, CachingJwtDecoder::digest, Clock.systemUTC(), Ticker.systemTicker());
+    }
+
+    /**
+     * @param keyFunction derives the cache key from a token
+     * @param clock clock the expiry of the tokens is compared with
+     * @param ticker time source of the cache
+     */
+    CachingJwtDecoder(JwtDecoder delegate, long maximumSize, Duration maximumTtl, Function<String, Object> keyFunction,
+            Clock clock, Ticker ticker) {
+        this.delegate = delegate;
+        this.keyFunction = keyFunction;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry(maximumTtl, clock))
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        Object key = keyFunction.apply(token);
+        Jwt jwt = cache.getIfPresent(key);
+        if (jwt == null || !jwt.getTokenValue().equals(token)) {
+            jwt = delegate.decode(token);
+            if (jwt.getExpiresAt() != null) {
+                cache.put(key, jwt);
+            }
+        }
+        return jwt;
+    }
+
+    /**
+     * Number of decoded tokens served from the cache.
+     */
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    /**
+     * Number of decoded tokens that required the full verification.
+     */
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * The underlying cache, to bind its statistics to a meter registry.
+     */
+    Cache<?, ?> cache() {
+        return cache;
+    }
+
+    /**
+     * Number of cached tokens after pending evictions, for tests.
+     */
+    long estimatedSize() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    static ByteBuffer digest(String token) {
+        MessageDigest digest = SHA_256.borrow();
+        try {
+            // Tokens are base64url encoded so there is no need for a full UTF-8 encoder
+            return ByteBuffer.wrap(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } finally {
+            // digest() has reset it already
+            SHA_256.release(digest);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the runtime", e);
+        }
+    }
+
+    /**
+     * Expires every entry at the expiry time of its token, capped by the maximum TTL.
+     */
+    private static class TokenExpiry implements Expiry<Object, Jwt> {
+
+        private final long maximumTtlNanos;
+        private final Clock clock;
+
+        TokenExpiry(Duration maximumTtl, Clock clock) {
+            this.maximumTtlNanos = maximumTtl.toNanos();
+            this.clock = clock;
+        }
+
+        @Override
+        public long expireAfterCreate(Object key, Jwt jwt, long currentTime) {
+            long untilExpiry = TimeUnit.MILLISECONDS.toNanos(jwt.getExpiresAt().toEpochMilli() - clock.millis());
+            return Math.max(0, Math.min(untilExpiry, maximumTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(Object key, Jwt jwt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(Object key, Jwt jwt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
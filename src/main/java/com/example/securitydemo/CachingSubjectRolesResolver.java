@@ -0,0 +1,126 @@
+package com.example.securitydemo;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+/**
+ * Decorates a {@link SubjectRolesResolver} backed by a slow store (e.g. a database)
+ * with a bounded cache.
+ * <p>
+ * The cache is designed to keep the lookup off the request path:
+ * <ul>
+ *     <li>concurrent requests for the same subject trigger a single call to the delegate;</li>
+ *     <li>entries older than the refresh interval are reloaded in the background on access
+ *     while the current value is still served, so hot subjects never wait for a reload;</li>
+ *     <li>subjects without roles are cached too, but with a separate (usually shorter) TTL.</li>
+ * </ul>
+ * Failures of the delegate are propagated to the caller and never cached. Failed
+ * background refreshes keep serving the previous value until it expires.
+ */
+public class CachingSubjectRolesResolver implements SubjectRolesResolver {
+
+    private final LoadingCache<String, Collection<String>> cache;
+
+    public CachingSubjectRolesResolver(SubjectRolesResolver delegate, long maximumSize, Duration ttl,
+            Duration refreshAfter, Duration negativeTtl) {
+        this(delegate, maximumSize, ttl, refreshAfter, negativeTtl, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param refreshExecutor executor of the background refreshes
+     */
+    public CachingSubjectRolesResolver(SubjectRolesResolver delegate, long maximumSize, Duration ttl,
+            Duration refreshAfter, Duration negativeTtl, Executor refreshExecutor) {
+        this(delegate, maximumSize, ttl, refreshAfter, negativeTtl, refreshExecutor, Ticker.systemTicker());
+    }
+
+    /**
+     * @param ticker time source of the cache
+     */
+    CachingSubjectRolesResolver(SubjectRolesResolver delegate, long maximumSize, Duration ttl,
+            Duration refreshAfter, Duration negativeTtl, Executor refreshExecutor, Ticker ticker) {
+        this.cache = Caffeine.newBuilder()
+                .executor(refreshExecutor)
+                .ticker(ticker)
+                .maximumSize(maximumSize)
+                .expireAfter(new RolesExpiry(ttl, negativeTtl))
+                .refreshAfterWrite(refreshAfter)
+                .recordStats()
+                .build(subject -> normalize(delegate.getRolesBySubject(subject)));
+    }
+
+    /**
+     * Wraps the resolver with a cache when it is enabled in the properties.
+     */
+    public static SubjectRolesResolver decorate(SubjectRolesResolver resolver,
+            SecurityDemoProperties.RolesCache properties, BlockingExecutors blockingExecutors) {
+        if (!properties.isEnabled()) {
+            return resolver;
+        }
+        return new CachingSubjectRolesResolver(resolver, properties.getMaximumSize(), properties.getTtl(),
+                properties.getRefreshAfter(), properties.getNegativeTtl(), blockingExecutors.executor());
+    }
+
+    @Override
+    public Collection<String> getRolesBySubject(String subject) {
+        return cache.get(subject);
+    }
+
+    /**
+     * Number of lookups served from the cache.
+     */
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    /**
+     * Number of lookups that had to wait for the delegate.
+     */
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    private static Collection<String> normalize(Collection<String> roles) {
+        return roles == null || roles.isEmpty() ? Collections.emptySet() : roles;
+    }
+
+    /**
+     * Applies the negative TTL to subjects without roles and the regular TTL to all others.
+     */
+    private static class RolesExpiry implements Expiry<String, Collection<String>> {
+
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        RolesExpiry(Duration ttl, Duration negativeTtl) {
+            this.ttlNanos = ttl.toNanos();
+            this.negativeTtlNanos = negativeTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String subject, Collection<String> roles, long currentTime) {
+            return roles.isEmpty() ? negativeTtlNanos : ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String subject, Collection<String> roles, long currentTime,
+                long currentDuration) {
+            // A refresh is an update, so it restarts the lifetime of the entry
+            return expireAfterCreate(subject, roles, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String subject, Collection<String> roles, long currentTime,
+                long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.securitydemo;
+
+import java.util.Collection;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+
+/**
+ * Replacement of {@code JwtAuthenticationConverter} which produces a
+ * {@link CompactJwtAuthenticationToken}, so that the decoded {@link Jwt} is not
+ * retained after the authentication.
+ */
+public class CompactJwtAuthenticationConverter implements Converter<Jwt, AbstractAuthenticationToken> {
+
+    private final Converter<Jwt, Collection<GrantedAuthority>> authoritiesConverter;
+
+    public CompactJwtAuthenticationConverter(Converter<Jwt, Collection<GrantedAuthority>> authoritiesConverter) {
+        this.authoritiesConverter = authoritiesConverter;
+    }
+
+    @Override
+    public AbstractAuthenticationToken convert(Jwt jwt) {
+        return new CompactJwtAuthenticationToken(jwt.getTokenValue(), jwt.getSubject(),
+                jwt.getClaimAsString(JwtClaimNames.ISS), jwt.getExpiresAt(), authoritiesConverter.convert(jwt));
+    }
+}
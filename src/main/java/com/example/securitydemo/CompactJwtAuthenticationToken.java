@@ -0,0 +1,123 @@
+package com.example.securitydemo;
+
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTParser;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.MappedJwtClaimSetConverter;
+
+/**
+ * Authentication of a verified bearer token which retains only what the application
+ * needs on every request: the subject, the issuer, the expiry and the authorities.
+ * <p>
+ * Unlike {@code JwtAuthenticationToken}, it does not keep the {@link Jwt} with its
+ * headers and claims maps alive for the lifetime of the request, and it keeps the
+ * interned authorities collection of the {@link GrantedAuthorityRegistry} instead of
+ * copying it. The full token is decoded again from its raw value on the first call
+ * of {@link #getToken()}. This is safe without verification, since the raw value
+ * is only kept once it was verified.
+ */
+public class CompactJwtAuthenticationToken extends AbstractAuthenticationToken {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Converter<Map<String, Object>, Map<String, Object>> CLAIM_SET_CONVERTER =
+            MappedJwtClaimSetConverter.withDefaults(Collections.emptyMap());
+
+    private final String tokenValue;
+    private final String subject;
+    private final String issuer;
+    private final Instant expiresAt;
+    private final Collection<GrantedAuthority> authorities;
+
+    private transient volatile Jwt token;
+
+    /**
+     * @param authorities immutable authorities, exposed as is without a defensive copy
+     */
+    public CompactJwtAuthenticationToken(String tokenValue, String subject, String issuer, Instant expiresAt,
+            Collection<GrantedAuthority> authorities) {
+        // The authorities are not passed on to avoid the copy made by the superclass
+        super(AuthorityUtils.NO_AUTHORITIES);
+        this.tokenValue = tokenValue;
+        this.subject = subject;
+        this.issuer = issuer;
+        this.expiresAt = expiresAt;
+        this.authorities = authorities;
+        setAuthenticated(true);
+    }
+
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getName() {
+        return subject;
+    }
+
+    @Override
+    public Object getPrincipal() {
+        return subject;
+    }
+
+    @Override
+    public Object getCredentials() {
+        return tokenValue;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Returns the full token, decoded from the raw value on the first call.
+     */
+    public Jwt getToken() {
+        Jwt jwt = token;
+        if (jwt == null) {
+            jwt = decode(tokenValue);
+            token = jwt;
+        }
+        return jwt;
+    }
+
+    /**
+     * Same as {@code JwtAuthenticationToken#getTokenAttributes()}, decoded on demand.
+     */
+    public Map<String, Object> getTokenAttributes() {
+        return getToken().getClaims();
+    }
+
+    private static Jwt decode(String tokenValue) {
+        try {
+            JWT jwt = JWTParser.parse(tokenValue);
+            return Jwt.withTokenValue(tokenValue)
+                    .headers(headers -> headers.putAll(jwt.getHeader().toJSONObject()))
+                    .claims(claims -> claims.putAll(CLAIM_SET_CONVERTER.convert(jwt.getJWTClaimsSet().getClaims())))
+                    .build();
+        } catch (ParseException e) {
+            throw new JwtException("Unable to decode authenticated token", e);
+        }
+    }
+}
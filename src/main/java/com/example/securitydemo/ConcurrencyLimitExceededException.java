@@ -0,0 +1,17 @@
+package com.example.securitydemo;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * Thrown when an authentication is rejected because the {@link AdaptiveConcurrencyLimiter}
+ * of the issuer is at its limit. It is an {@link AuthenticationServiceException}, since
+ * the token itself might well be valid, and it is answered with 503 Service Unavailable.
+ */
+public class ConcurrencyLimitExceededException extends AuthenticationServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConcurrencyLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -1,23 +1,46 @@
 package com.example.securitydemo;
 
 import java.util.Collection;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
 
+import javax.servlet.http.HttpServletRequest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationManagerResolver;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.config.annotation.ObjectPostProcessor;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationProvider;
 import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
 import org.springframework.security.oauth2.server.resource.authentication.JwtIssuerAuthenticationManagerResolver;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenAuthenticationEntryPoint;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenAuthenticationFilter;
+import org.springframework.security.oauth2.server.resource.web.DefaultBearerTokenResolver;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
 
 /**
  * Configures security rules for the application and registers two {@link SupportedJwtTokenIssuer}
  * to enable validation of the JWT tokens issued by different providers.
+ * <p>
+ * The security chain is only created for servlet applications. When the application runs
+ * on WebFlux, the chain is provided by {@link ReactiveSecurityConfiguration} instead, while
+ * the issuers and role resolvers declared here are shared by both modes.
  */
 @Configuration
 public class DefaultSecurityConfiguration {
@@ -29,32 +52,131 @@ public class DefaultSecurityConfiguration {
      * <p>
      * Note that it is possible to have multiple beans of this type in the same
      * application context.
+     * <p>
+     * The authorization rules are enforced by a {@link PathTrieAuthorizationManager}
+     * rather than by ant matchers with SpEL expressions. When enabled via
+     * {@link SecurityDemoProperties.RateLimit}, authenticated requests pass the
+     * {@link RateLimitingFilter} first. When enabled via {@link SecurityDemoProperties.ServerTiming},
+     * the stages of sampled requests are timed by the {@link ServerTimingRecorder}.
+     * Authentications rejected by the {@link AdaptiveConcurrencyLimiter} of their
+     * issuer are answered with 503 Service Unavailable.
      */
     @Bean
-    public SecurityFilterChain defaultSecurityChain(HttpSecurity http) throws Exception {
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public SecurityFilterChain defaultSecurityChain(HttpSecurity http, SecurityPipelineMetrics metrics,
+            ServerTimingRecorder serverTiming, SecurityDemoProperties properties) throws Exception {
+        if (properties.getRateLimit().isEnabled()) {
+            // Not a bean, which would also register it with the servlet container outside the chain
+            http.addFilterAfter(new RateLimitingFilter(properties.getRateLimit()),
+                    BearerTokenAuthenticationFilter.class);
+        }
+        if (serverTiming.isEnabled()) {
+            http.addFilterBefore(serverTiming.createFilter(), BearerTokenAuthenticationFilter.class);
+            http.oauth2ResourceServer(oauth -> oauth
+                    .bearerTokenResolver(serverTiming.timeExtraction(new DefaultBearerTokenResolver())));
+        }
         return http
-                // First define authorization rules
-                .authorizeRequests(auth -> auth
-                        .antMatchers("/public").permitAll() // anyone can access
-                        .antMatchers("/admin").hasRole("ADMIN") // only users with role "ROLE_ADMIN" can access
-                        .anyRequest().authenticated() // only authenticated users can access regardless of role
+                // First define authorization rules, compiled once instead of evaluating expressions per request
+                .authorizeHttpRequests(auth -> auth
+                        .anyRequest().access(serverTiming.timeAuthorization(PathTrieAuthorizationManager.builder()
+                                .permitAll("/public") // anyone can access
+                                .hasRole("/admin/**", "ADMIN") // only users with role "ROLE_ADMIN" can access
+                                // only the gateway sidecar can validate token batches
+                                .hasRole("/tokens/validate", properties.getBatchValidation().getRole())
+                                .anyRequestAuthenticated() // only authenticated users can access regardless of role
+                                .build()))
                 )
                 // Enable security configuration for OAuth 2 Resource Server
                 .oauth2ResourceServer(oauth -> oauth
                         // This is what enables support for multiple token issuers
-                        .authenticationManagerResolver(authenticationManagerResolver(null, null))
+                        .authenticationManagerResolver(authenticationManagerResolver(null, null, null))
+                        .withObjectPostProcessor(new ObjectPostProcessor<BearerTokenAuthenticationFilter>() {
+                            @Override
+                            public <O extends BearerTokenAuthenticationFilter> O postProcess(O filter) {
+                                if (metrics.isEnabled() || properties.getConcurrencyLimit().isEnabled()) {
+                                    filter.setAuthenticationFailureHandler(
+                                            metrics.countFailures(bearerTokenFailureHandler()));
+                                }
+                                return filter;
+                            }
+                        })
                 )
                 .build();
     }
 
     @Bean
-    public SupportedJwtTokenIssuer privateServerJwtTokenIssuer() {
-        return new PrivateServerJwtTokenIssuer();
+    public PrivateServerJwtTokenIssuer privateServerJwtTokenIssuer(SecurityDemoProperties properties) {
+        return new PrivateServerJwtTokenIssuer(properties.getPrivateServer());
+    }
+
+    @Bean
+    public MockOidcJwtTokenIssuer mockOidcJwtTokenIssuer(SecurityDemoProperties properties,
+            BlockingExecutors blockingExecutors) {
+        return new MockOidcJwtTokenIssuer(properties.getJwks(), blockingExecutors);
+    }
+
+    /**
+     * Threads for the blocking parts of the pipeline, virtual ones when
+     * {@link SecurityDemoProperties.VirtualThreads} is enabled.
+     */
+    @Bean
+    public BlockingExecutors blockingExecutors(SecurityDemoProperties properties) {
+        return new BlockingExecutors(properties.getVirtualThreads().isEnabled());
+    }
+
+    /**
+     * Metrics of the authentication pipeline, active when enabled via
+     * {@link SecurityDemoProperties.Metrics} and a {@link MeterRegistry} is available.
+     */
+    @Bean
+    public SecurityPipelineMetrics securityPipelineMetrics(ObjectProvider<MeterRegistry> registry,
+            SecurityDemoProperties properties) {
+        return new SecurityPipelineMetrics(properties.getMetrics().isEnabled() ? registry.getIfAvailable() : null);
     }
 
+    /**
+     * Per-request timings of the servlet pipeline stages, active when enabled via
+     * {@link SecurityDemoProperties.ServerTiming}.
+     */
+    @Bean
+    public ServerTimingRecorder serverTimingRecorder(SecurityDemoProperties properties) {
+        SecurityDemoProperties.ServerTiming serverTiming = properties.getServerTiming();
+        return new ServerTimingRecorder(serverTiming.isEnabled(), serverTiming.getSampleRate());
+    }
+
+    /**
+     * Factory of the decoders of the {@link SupportedJwtTokenIssuer}s, shared by the
+     * servlet and the reactive security chain.
+     */
+    @Bean
+    public JwtDecoderFactory jwtDecoderFactory(SecurityDemoProperties properties, SecurityPipelineMetrics metrics,
+            ServerTimingRecorder serverTiming, ObjectProvider<TokenRevocationList> revocationList) {
+        return new JwtDecoderFactory(properties.getJwtCache(), metrics, serverTiming,
+                revocationList.getIfAvailable());
+    }
+
+    /**
+     * Deny list of revoked tokens, checked for every verified token when enabled via
+     * {@link SecurityDemoProperties.Revocation}.
+     */
+    @Bean
+    @ConditionalOnProperty("security-demo.revocation.enabled")
+    public TokenRevocationList tokenRevocationList(SecurityDemoProperties properties) {
+        SecurityDemoProperties.Revocation revocation = properties.getRevocation();
+        return new TokenRevocationList(revocation.getFile(), revocation.getReloadInterval(),
+                revocation.getExpectedRevocations(), revocation.getFalsePositiveRate());
+    }
+
+    /**
+     * Resolver of subject roles backed by a memory-mapped index file. When configured,
+     * it takes precedence over the {@link InMemorySubjectRolesResolver}.
+     */
     @Bean
-    public SupportedJwtTokenIssuer mockOidcJwtTokenIssuer() {
-        return new MockOidcJwtTokenIssuer();
+    @Primary
+    @ConditionalOnProperty("security-demo.roles-index.file")
+    public MappedSubjectRolesResolver mappedSubjectRolesResolver(SecurityDemoProperties properties) {
+        SecurityDemoProperties.RolesIndex rolesIndex = properties.getRolesIndex();
+        return new MappedSubjectRolesResolver(rolesIndex.getFile(), rolesIndex.getReloadInterval());
     }
 
     /**
@@ -65,50 +187,193 @@ public class DefaultSecurityConfiguration {
     @Bean
     public JwtAuthenticationConverter jwtAuthenticationConverter() {
         JwtAuthenticationConverter jwtAuthenticationConverter = new JwtAuthenticationConverter();
-        jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(grantedAuthoritiesConverter(null));
+        jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(grantedAuthoritiesConverter(null, null, null));
         return jwtAuthenticationConverter;
     }
 
     /**
      * Implementation of {@link JwtGrantedAuthoritiesConverter} that maps token's
      * subject claim to a collection of user roles.
+     * <p>
+     * When enabled via {@link SecurityDemoProperties.RolesCache}, the lookups go
+     * through a {@link CachingSubjectRolesResolver}.
      */
     @Bean
-    public SubjectBasedGrantedAuthoritiesConverter grantedAuthoritiesConverter(SubjectRolesResolver roleProvider) {
-        return new SubjectBasedGrantedAuthoritiesConverter(roleProvider);
+    public SubjectBasedGrantedAuthoritiesConverter grantedAuthoritiesConverter(SubjectRolesResolver roleProvider,
+            SecurityDemoProperties properties, BlockingExecutors blockingExecutors) {
+        return new SubjectBasedGrantedAuthoritiesConverter(
+                CachingSubjectRolesResolver.decorate(roleProvider, properties.getRolesCache(), blockingExecutors));
     }
 
     /**
-     * Instance of the {@link JwtIssuerAuthenticationManagerResolver} preconfigured
-     * to map issuers to their respective JwtDecoders based on the available instances
-     * of the {@link SupportedJwtTokenIssuer}.
+     * Registry of all available {@link SupportedJwtTokenIssuer}s by issuer name. Their
+     * decoders are shared by the authentication pipeline and the {@link TokenValidationController}.
      * <p>
      * It utilizes Spring's ability to inject all beans of a specific type from
      * the application context as a single collection. To add support for a new
      * issuer it is enough to register one more bean of type {@link SupportedJwtTokenIssuer}.
+     * Tenant issuers can also be added at runtime, see {@link #tenantIssuersFile}.
+     * <p>
+     * The decoders are created by the {@link JwtDecoderFactory}, which puts them behind
+     * a {@link CachingJwtDecoder}, when enabled, and the {@link TokenRevocationList}, if any.
+     * <p>
+     * When {@link SecurityPipelineMetrics} are enabled, each issuer gets its own
+     * instrumented authentication converter, so that the meters can be tagged with
+     * the issuer name without inspecting the token. When enabled via
+     * {@link SecurityDemoProperties.CompactAuthentication}, the converter produces
+     * {@link CompactJwtAuthenticationToken}s. The {@link ServerTimingRecorder} times the
+     * verification of the tokens that miss the cache and the mapping to authorities.
+     * Issuers with an {@link AuthorityPolicy} other than the default get their own
+     * converter as well, which takes the roles from the token.
+     * <p>
+     * When enabled via {@link SecurityDemoProperties.ConcurrencyLimit}, the authentication
+     * manager of each issuer is limited by its own {@link AdaptiveConcurrencyLimiter}, so
+     * that a slow issuer cannot tie up the threads needed by the others.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public JwtIssuerRegistry jwtIssuerRegistry(Collection<SupportedJwtTokenIssuer> supportedIssuers,
+            SecurityDemoProperties properties,
+            JwtAuthenticationConverter jwtAuthenticationConverter,
+            SubjectBasedGrantedAuthoritiesConverter grantedAuthoritiesConverter,
+            SecurityPipelineMetrics metrics,
+            ServerTimingRecorder serverTiming,
+            JwtDecoderFactory jwtDecoderFactory) {
+        JwtIssuerRegistry registry = new JwtIssuerRegistry(jwtDecoderFactory::createJwtDecoder,
+                (issuer, decoder) -> {
+                    JwtAuthenticationProvider provider = new JwtAuthenticationProvider(decoder);
+                    provider.setJwtAuthenticationConverter(createAuthenticationConverterForIssuer(issuer,
+                            jwtAuthenticationConverter, grantedAuthoritiesConverter, properties, metrics,
+                            serverTiming));
+                    SecurityDemoProperties.ConcurrencyLimit concurrencyLimit = properties.getConcurrencyLimit();
+                    if (!concurrencyLimit.isEnabled()) {
+                        return provider::authenticate;
+                    }
+                    return new AdaptiveConcurrencyLimiter(concurrencyLimit.getInitialLimit(),
+                            concurrencyLimit.getMinimumLimit(), concurrencyLimit.getMaximumLimit(),
+                            concurrencyLimit.getLatencyTolerance()).limit(provider::authenticate);
+                },
+                properties.getIssuers().getIdleTimeout(), metrics::removeIssuer);
+        for (SupportedJwtTokenIssuer issuer : supportedIssuers) {
+            registry.register(issuer);
+        }
+        return registry;
+    }
+
+    /**
+     * Tenant issuers listed in the file configured via {@link SecurityDemoProperties.Issuers}.
+     * They are verified like the mock OIDC provider, against the JWK set of each tenant.
+     * Since they are not beans, they are bound to the {@link MeterRegistry}, if any, when
+     * the registry creates them.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @ConditionalOnProperty("security-demo.issuers.file")
+    public TenantIssuersFile tenantIssuersFile(JwtIssuerRegistry registry, SecurityDemoProperties properties,
+            BlockingExecutors blockingExecutors, ObjectProvider<MeterRegistry> meterRegistry) {
+        SecurityDemoProperties.Issuers issuers = properties.getIssuers();
+        return new TenantIssuersFile(issuers.getFile(), issuers.getReloadInterval(), registry,
+                (issuerName, jwkSetUri) -> {
+                    MockOidcJwtTokenIssuer issuer = new MockOidcJwtTokenIssuer(issuerName, jwkSetUri,
+                            properties.getJwks(), blockingExecutors);
+                    meterRegistry.ifAvailable(issuer::bindTo);
+                    return issuer;
+                });
+    }
+
+    /**
+     * Validator of token batches behind the {@link TokenValidationController}. Since
+     * it uses the same decoders, role lookups and authority policies, it accepts exactly
+     * the tokens the security chain accepts.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public BatchTokenValidator batchTokenValidator(JwtIssuerRegistry registry,
+            SubjectBasedGrantedAuthoritiesConverter grantedAuthoritiesConverter, SecurityDemoProperties properties) {
+        return new BatchTokenValidator(registry, grantedAuthoritiesConverter, properties.getBatchValidation());
+    }
+
+    /**
+     * Instance of the {@link IssuerScanningAuthenticationManagerResolver} preconfigured
+     * to map issuers to their respective authentication managers provided by the
+     * {@link JwtIssuerRegistry}. It behaves like Spring's own
+     * {@link JwtIssuerAuthenticationManagerResolver} but does not parse the token
+     * twice on its way to the decoder. The decisions are recorded by the
+     * {@link AuthenticationAuditLog}, if any, and the time to find the issuer by the
+     * {@link ServerTimingRecorder}.
      * <p>
      * This approach to configuring multi-tenancy was taken from the
      * <a href="https://docs.spring.io/spring-security/site/docs/5.5.3/reference/html5/#oauth2resourceserver-multitenancy">documentation</a>
      */
     @Bean
-    public JwtIssuerAuthenticationManagerResolver authenticationManagerResolver(
-            Collection<SupportedJwtTokenIssuer> supportedIssuers,
-            JwtAuthenticationConverter jwtAuthenticationConverter) {
-        Map<String, AuthenticationManager> authenticationManagers = new ConcurrentHashMap<>();
-
-        for (SupportedJwtTokenIssuer issuer : supportedIssuers) {
-            JwtAuthenticationProvider provider =
-                    createJwtAuthenticationProviderForIssuer(issuer, jwtAuthenticationConverter);
-            authenticationManagers.put(issuer.getIssuerName(), provider::authenticate);
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public AuthenticationManagerResolver<HttpServletRequest> authenticationManagerResolver(
+            JwtIssuerRegistry registry, ServerTimingRecorder serverTiming,
+            ObjectProvider<AuthenticationAuditLog> auditLog) {
+        AuthenticationAuditLog audit = auditLog.getIfAvailable();
+        UnaryOperator<AuthenticationManager> decorator = serverTiming::startIssuerResolution;
+        if (audit != null) {
+            decorator = authenticationManager -> audit.audit(serverTiming.startIssuerResolution(authenticationManager));
         }
+        return new IssuerScanningAuthenticationManagerResolver(serverTiming.endIssuerResolution(registry), decorator);
+    }
 
-        return new JwtIssuerAuthenticationManagerResolver(authenticationManagers::get);
+    /**
+     * Audit trail of all authentication decisions of the servlet chain, written in the
+     * background when enabled via {@link SecurityDemoProperties.Audit}.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @ConditionalOnProperty("security-demo.audit.enabled")
+    public AuthenticationAuditLog authenticationAuditLog(SecurityDemoProperties properties) {
+        SecurityDemoProperties.Audit audit = properties.getAudit();
+        return new AuthenticationAuditLog(audit.getDirectory(), audit.getBufferSize(), audit.getOverflowPolicy(),
+                audit.getBatchSize(), audit.getMaximumFileSize().toBytes(), audit.getMaximumHistory());
+    }
+
+    private Converter<Jwt, ? extends AbstractAuthenticationToken> createAuthenticationConverterForIssuer(
+            SupportedJwtTokenIssuer issuer, JwtAuthenticationConverter jwtAuthenticationConverter,
+            SubjectBasedGrantedAuthoritiesConverter grantedAuthoritiesConverter, SecurityDemoProperties properties,
+            SecurityPipelineMetrics metrics, ServerTimingRecorder serverTiming) {
+        String issuerName = issuer.getIssuerName();
+        AuthorityPolicy authorityPolicy = issuer.getAuthorityPolicy();
+        boolean compact = properties.getCompactAuthentication().isEnabled();
+        boolean instrumented = metrics.isEnabled() || serverTiming.isEnabled();
+        if (!compact && !instrumented && authorityPolicy.getSource() == AuthorityPolicy.Source.RESOLVER) {
+            return jwtAuthenticationConverter;
+        }
+        Converter<Jwt, Collection<GrantedAuthority>> authoritiesConverter =
+                grantedAuthoritiesConverter.withAuthorityPolicy(authorityPolicy);
+        if (instrumented) {
+            authoritiesConverter = serverTiming.timeAuthorityConversion(metrics.timeAuthorityConversion(issuerName,
+                    grantedAuthoritiesConverter.withRoleProvider(roleProvider -> serverTiming.timeRoleResolution(
+                            metrics.timeRoleResolution(issuerName, roleProvider)))
+                            .withAuthorityPolicy(authorityPolicy)));
+        }
+        if (compact) {
+            return new CompactJwtAuthenticationConverter(authoritiesConverter);
+        }
+        JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
+        converter.setJwtGrantedAuthoritiesConverter(authoritiesConverter);
+        return converter;
     }
 
-    private JwtAuthenticationProvider createJwtAuthenticationProviderForIssuer(SupportedJwtTokenIssuer issuer, JwtAuthenticationConverter converter) {
-        JwtAuthenticationProvider provider = new JwtAuthenticationProvider(issuer.getJwtDecoder());
-        provider.setJwtAuthenticationConverter(converter);
-        return provider;
+    /**
+     * Same as the default failure handler of {@link BearerTokenAuthenticationFilter},
+     * except that authentications rejected by a concurrency limit fail fast with 503.
+     */
+    private static AuthenticationFailureHandler bearerTokenFailureHandler() {
+        BearerTokenAuthenticationEntryPoint entryPoint = new BearerTokenAuthenticationEntryPoint();
+        return (request, response, exception) -> {
+            if (exception instanceof ConcurrencyLimitExceededException) {
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+                return;
+            }
+            if (exception instanceof AuthenticationServiceException) {
+                throw exception;
+            }
+            entryPoint.commence(request, response, exception);
+        };
     }
 
 }
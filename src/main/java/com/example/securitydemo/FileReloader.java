@@ -0,0 +1,103 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a component in sync with the file it is loaded from, such as the keys of the
+ * {@link HmacKeyRing} or the revocations of the {@link TokenRevocationList}.
+ * <p>
+ * The file is loaded when the reloader is created and then checked periodically. It is
+ * loaded again whenever its modification time, size or file key changed, so that files
+ * replaced or appended to within the resolution of the file system clock are noticed
+ * as well. If a reload fails, the component keeps its previous state until a valid file
+ * appears. All reloaders share a single background thread, since reloads are rare.
+ */
+final class FileReloader implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FileReloader.class);
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "file-reloader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Loads the file into the component, replacing its previous state.
+     */
+    @FunctionalInterface
+    interface Loader {
+
+        void load() throws IOException;
+    }
+
+    private final Path file;
+    private final String description;
+    private final Loader loader;
+    private final ScheduledFuture<?> schedule;
+
+    private volatile Version version;
+
+    /**
+     * @param description what the file contains, for the log
+     * @throws IOException if the initial load fails
+     */
+    FileReloader(Path file, String description, Duration reloadInterval, Loader loader) throws IOException {
+        this.file = file;
+        this.description = description;
+        this.loader = loader;
+        reload();
+        this.schedule = SCHEDULER.scheduleWithFixedDelay(this::reloadIfModified,
+                reloadInterval.toMillis(), reloadInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Loads the current version of the file, whether it changed or not.
+     */
+    synchronized void reload() throws IOException {
+        // Taken before loading, so that a change made meanwhile is loaded by the next check
+        Version current = Version.of(file);
+        loader.load();
+        version = current;
+    }
+
+    @Override
+    public void close() {
+        // Not interrupted, the thread is shared by all reloaders
+        schedule.cancel(false);
+    }
+
+    private void reloadIfModified() {
+        try {
+            if (!Version.of(file).equals(version)) {
+                reload();
+                log.info("Reloaded {} {}", description, file);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Keep the previous state until a valid file appears
+            log.warn("Unable to reload {} {}", description, file, e);
+        }
+    }
+
+    private record Version(FileTime modifiedTime, long size, Object fileKey) {
+
+        static Version of(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new Version(attributes.lastModifiedTime(), attributes.size(), attributes.fileKey());
+        }
+    }
+}
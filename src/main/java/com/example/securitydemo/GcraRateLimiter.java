@@ -0,0 +1,135 @@
+package com.example.securitydemo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limiter with an independent budget per key, e.g. per subject, implemented with
+ * the generic cell rate algorithm (GCRA).
+ * <p>
+ * GCRA is equivalent to a token bucket, but the state of a bucket is a single number:
+ * the theoretical arrival time of the next request. Taking a permit is one
+ * compare-and-set of that number, so the limiter does not lock and does not need a
+ * background thread to refill the buckets.
+ * <p>
+ * The buckets are spread over stripes by the hash of the key. A bucket whose
+ * theoretical arrival time has passed is full again and carries no information, so
+ * such buckets are dropped lazily: every few thousand new keys of a stripe, that
+ * stripe is swept. Keeping the sweeps per stripe bounds the work done on any single
+ * request, even with millions of distinct keys.
+ */
+public class GcraRateLimiter {
+
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 4;
+
+    // Number of keys added to a stripe between two sweeps
+    private static final int SWEEP_INTERVAL = 4096;
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * @param permitsPerSecond sustained rate of each key
+     * @param burst number of requests of a key admitted at once after a pause
+     */
+    public GcraRateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive, but are "
+                    + permitsPerSecond + " and " + burst);
+        }
+        this.emissionIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstToleranceNanos = emissionIntervalNanos * burst;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Takes a permit of the given key if its budget allows it.
+     *
+     * @param nowNanos current time as per {@link System#nanoTime()}
+     * @return {@code 0} if the permit was taken, otherwise the time in nanoseconds until
+     * the next permit becomes available
+     */
+    public long tryAcquire(String key, long nowNanos) {
+        Stripe stripe = stripeOf(key);
+        AtomicLong bucket = stripe.buckets.get(key);
+        if (bucket == null) {
+            bucket = stripe.add(key, nowNanos);
+        }
+        long arrivalTime = bucket.get();
+        while (true) {
+            long next = (arrivalTime - nowNanos > 0 ? arrivalTime : nowNanos) + emissionIntervalNanos;
+            long wait = next - nowNanos - burstToleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(arrivalTime, next)) {
+                return 0;
+            }
+            arrivalTime = bucket.get();
+        }
+    }
+
+    /**
+     * Gives back a permit taken by {@link #tryAcquire}, e.g. when the request is rejected
+     * by another limiter after all.
+     */
+    public void release(String key) {
+        AtomicLong bucket = stripeOf(key).buckets.get(key);
+        if (bucket != null) {
+            bucket.addAndGet(-emissionIntervalNanos);
+        }
+    }
+
+    /**
+     * Number of keys with a partially used budget, including not yet swept full ones.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.buckets.size();
+        }
+        return size;
+    }
+
+    /**
+     * Drops the full buckets of all stripes at once, rather than one stripe every few
+     * thousand new keys.
+     */
+    void sweep(long nowNanos) {
+        for (Stripe stripe : stripes) {
+            stripe.sweep(nowNanos);
+        }
+    }
+
+    private Stripe stripeOf(String key) {
+        return stripes[spread(key.hashCode()) & (STRIPES - 1)];
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Stripe {
+
+        private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicLong additions = new AtomicLong();
+
+        AtomicLong add(String key, long nowNanos) {
+            if (additions.incrementAndGet() % SWEEP_INTERVAL == 0) {
+                sweep(nowNanos);
+            }
+            AtomicLong bucket = new AtomicLong(nowNanos);
+            AtomicLong existing = buckets.putIfAbsent(key, bucket);
+            return existing != null ? existing : bucket;
+        }
+
+        void sweep(long nowNanos) {
+            // A permit racing with the removal is lost, which only errs on the side of the client
+            buckets.values().removeIf(arrivalTime -> nowNanos - arrivalTime.get() >= 0);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.securitydemo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Registry of interned {@link GrantedAuthority} collections.
+ * <p>
+ * Applications typically have only a handful of distinct role sets, so instead of
+ * creating new authorities for every authenticated request each distinct set of
+ * roles is mapped once to an immutable collection which is shared afterwards.
+ * A lookup with a {@link Set} or a {@link List} of roles does not allocate.
+ * <p>
+ * The numbers of interned role sets and roles are bounded to protect from unexpected
+ * cardinality, e.g. of roles taken from token claims (see {@link AuthorityPolicy});
+ * role sets and roles above the limits are converted without interning.
+ */
+public class GrantedAuthorityRegistry {
+
+    // Match default Spring Security expectations about role names used in authorization rules
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private static final int DEFAULT_MAXIMUM_ROLE_SETS = 1024;
+
+    private static final int DEFAULT_MAXIMUM_ROLES = 1024;
+
+    private final ConcurrentMap<String, GrantedAuthority> authoritiesByRole = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Collection<String>, Collection<GrantedAuthority>> authoritiesByRoles =
+            new ConcurrentHashMap<>();
+    private final int maximumRoleSets;
+    private final int maximumRoles;
+
+    public GrantedAuthorityRegistry() {
+        this(DEFAULT_MAXIMUM_ROLE_SETS);
+    }
+
+    public GrantedAuthorityRegistry(int maximumRoleSets) {
+        this(maximumRoleSets, DEFAULT_MAXIMUM_ROLES);
+    }
+
+    public GrantedAuthorityRegistry(int maximumRoleSets, int maximumRoles) {
+        this.maximumRoleSets = maximumRoleSets;
+        this.maximumRoles = maximumRoles;
+    }
+
+    /**
+     * Returns the shared immutable collection of authorities for the given roles.
+     */
+    public Collection<GrantedAuthority> getAuthorities(Collection<String> roles) {
+        Collection<String> key = roles instanceof Set || roles instanceof List ? roles : new HashSet<>(roles);
+        Collection<GrantedAuthority> authorities = authoritiesByRoles.get(key);
+        if (authorities != null) {
+            return authorities;
+        }
+
+        authorities = createAuthorities(key);
+        if (authoritiesByRoles.size() >= maximumRoleSets) {
+            return authorities;
+        }
+        Collection<GrantedAuthority> existing = authoritiesByRoles.putIfAbsent(copyOf(key), authorities);
+        return existing != null ? existing : authorities;
+    }
+
+    /**
+     * Returns the shared authority for a single role, or a new one once the maximum
+     * number of roles is interned.
+     */
+    public GrantedAuthority getAuthority(String role) {
+        GrantedAuthority authority = authoritiesByRole.get(role);
+        if (authority == null) {
+            if (authoritiesByRole.size() >= maximumRoles) {
+                return new SimpleGrantedAuthority(ROLE_PREFIX + role);
+            }
+            authority = authoritiesByRole.computeIfAbsent(role, r -> new SimpleGrantedAuthority(ROLE_PREFIX + r));
+        }
+        return authority;
+    }
+
+    private Collection<GrantedAuthority> createAuthorities(Collection<String> roles) {
+        if (roles.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<GrantedAuthority> authorities = new LinkedHashSet<>();
+        for (String role : roles) {
+            authorities.add(getAuthority(role));
+        }
+        return Collections.unmodifiableSet(authorities);
+    }
+
+    /**
+     * Keys are copied so that a mutable collection of the caller could not
+     * corrupt the registry. The copy keeps the equality semantics of the original.
+     */
+    private static Collection<String> copyOf(Collection<String> roles) {
+        if (roles instanceof Set) {
+            return Collections.unmodifiableSet(new HashSet<>(roles));
+        }
+        return Collections.unmodifiableList(new ArrayList<>(roles));
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.Key;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.JWSVerifierFactory;
+import com.nimbusds.jose.proc.SecurityContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Set of HMAC keys which are valid at the same time, so that the keys can be rotated
+ * without rejecting tokens signed with the previous one.
+ * <p>
+ * Tokens select their key by the <em>kid</em> header, and tokens without one are
+ * verified with the default key. The keys are read from a JWK set file with keys of
+ * type {@code oct}, which is checked for modifications periodically, see {@link FileReloader},
+ * and swapped in atomically.
+ * <p>
+ * It serves as both the {@link JWSKeySelector} and the {@link JWSVerifierFactory} of
+ * a Nimbus JWT processor. Every key comes with a {@link PooledMacVerifier} created
+ * once when the key is loaded, so verifying a token neither looks up nor initializes
+ * a {@code Mac}.
+ */
+public class HmacKeyRing implements JWSKeySelector<SecurityContext>, JWSVerifierFactory, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HmacKeyRing.class);
+
+    private final List<Key> defaultKey;
+    private final Path keyFile;
+    private final FileReloader reloader;
+    private final JWSVerifierFactory fallbackVerifierFactory = new DefaultJWSVerifierFactory();
+
+    private volatile Map<String, List<Key>> keysById = Collections.emptyMap();
+
+    public HmacKeyRing(SecretKey defaultKey) {
+        this(defaultKey, null, null);
+    }
+
+    /**
+     * @param keyFile JWK set file with the keys selected by <em>kid</em>, or {@code null}
+     * to use the default key only
+     */
+    public HmacKeyRing(SecretKey defaultKey, Path keyFile, Duration reloadInterval) {
+        this.defaultKey = Collections.singletonList(new VerifyingKey(defaultKey.getEncoded()));
+        this.keyFile = keyFile;
+        if (keyFile == null) {
+            this.reloader = null;
+            return;
+        }
+        try {
+            this.reloader = new FileReloader(keyFile, "HMAC keys", reloadInterval, this::load);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to load HMAC keys " + keyFile, e);
+        }
+    }
+
+    @Override
+    public List<? extends Key> selectJWSKeys(JWSHeader header, SecurityContext context) {
+        if (!JWSAlgorithm.Family.HMAC_SHA.contains(header.getAlgorithm())) {
+            return Collections.emptyList();
+        }
+        String keyId = header.getKeyID();
+        if (keyId == null) {
+            return defaultKey;
+        }
+        return keysById.getOrDefault(keyId, Collections.emptyList());
+    }
+
+    @Override
+    public JWSVerifier createJWSVerifier(JWSHeader header, Key key) throws JOSEException {
+        if (key instanceof VerifyingKey) {
+            return ((VerifyingKey) key).verifier;
+        }
+        return fallbackVerifierFactory.createJWSVerifier(header, key);
+    }
+
+    @Override
+    public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+        return fallbackVerifierFactory.supportedJWSAlgorithms();
+    }
+
+    @Override
+    public JCAContext getJCAContext() {
+        return fallbackVerifierFactory.getJCAContext();
+    }
+
+    /**
+     * Reads the current version of the key file and makes its keys visible to new
+     * verifications.
+     */
+    public void reload() throws IOException {
+        reloader.reload();
+    }
+
+    @Override
+    public void close() {
+        if (reloader != null) {
+            reloader.close();
+        }
+    }
+
+    private void load() throws IOException {
+        Map<String, List<Key>> keys = new HashMap<>();
+        for (JWK jwk : loadJwkSet().getKeys()) {
+            if (!(jwk instanceof OctetSequenceKey) || jwk.getKeyID() == null) {
+                log.warn("Ignoring key {} of {}, only keys of type oct with kid are supported",
+                        jwk.getKeyID(), keyFile);
+                continue;
+            }
+            byte[] secret = ((OctetSequenceKey) jwk).toByteArray();
+            if (secret.length < 32) {
+                log.warn("Ignoring key {} of {}, HMAC keys must have at least 256 bits", jwk.getKeyID(), keyFile);
+                continue;
+            }
+            keys.put(jwk.getKeyID(), Collections.singletonList(new VerifyingKey(secret)));
+        }
+        keysById = keys;
+    }
+
+    private JWKSet loadJwkSet() throws IOException {
+        try {
+            return JWKSet.load(keyFile.toFile());
+        } catch (ParseException e) {
+            throw new IOException("Malformed JWK set " + keyFile, e);
+        }
+    }
+
+    /**
+     * Key which carries its own verifier, so that the verifier does not have to be
+     * looked up for every token.
+     */
+    private static final class VerifyingKey extends SecretKeySpec {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient PooledMacVerifier verifier;
+
+        VerifyingKey(byte[] secret) {
+            super(secret, "HmacSHA256");
+            this.verifier = new PooledMacVerifier(this);
+        }
+    }
+}
@@ -23,6 +23,7 @@ public class InMemorySubjectRolesResolver implements SubjectRolesResolver {
         repository.put("dGVzdEBleGFtcGxlLmNvbQ==", Collections.singleton("USER"));
         repository.put("YWRtaW5AZXhhbXBsZS5jb20=", Collections.singleton("ADMIN"));
         repository.put("admin", Collections.singleton("ADMIN"));
+        repository.put("gateway", Collections.singleton("TOKEN_VALIDATOR"));
     }
 
     @Override
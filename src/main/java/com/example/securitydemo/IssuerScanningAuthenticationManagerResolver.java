@@ -0,0 +1,80 @@
+package com.example.securitydemo;
+
+import java.util.function.UnaryOperator;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationManagerResolver;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.server.resource.BearerTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
+import org.springframework.security.oauth2.server.resource.authentication.JwtIssuerAuthenticationManagerResolver;
+import org.springframework.util.Assert;
+
+/**
+ * Drop-in replacement for {@link JwtIssuerAuthenticationManagerResolver} that
+ * routes bearer tokens to issuer-specific {@link AuthenticationManager}s.
+ * <p>
+ * Spring's resolver fully parses the token only to read the <em>iss</em> claim,
+ * and then the selected decoder parses it once again. This implementation finds
+ * the issuer with the {@link JwtIssuerScanner} instead, so the token is parsed only
+ * by the decoder that verifies it.
+ */
+public class IssuerScanningAuthenticationManagerResolver implements AuthenticationManagerResolver<HttpServletRequest> {
+
+    private final AuthenticationManager authenticationManager;
+
+    public IssuerScanningAuthenticationManagerResolver(
+            AuthenticationManagerResolver<String> issuerAuthenticationManagerResolver) {
+        this(issuerAuthenticationManagerResolver, UnaryOperator.identity());
+    }
+
+    /**
+     * @param decorator applied once to the authentication manager that routes the tokens,
+     * so that it sees all decisions, including the ones about tokens of unknown issuers
+     */
+    public IssuerScanningAuthenticationManagerResolver(
+            AuthenticationManagerResolver<String> issuerAuthenticationManagerResolver,
+            UnaryOperator<AuthenticationManager> decorator) {
+        Assert.notNull(issuerAuthenticationManagerResolver, "issuerAuthenticationManagerResolver cannot be null");
+        this.authenticationManager = decorator.apply(
+                new ResolvingAuthenticationManager(issuerAuthenticationManagerResolver));
+    }
+
+    @Override
+    public AuthenticationManager resolve(HttpServletRequest request) {
+        return authenticationManager;
+    }
+
+    private static class ResolvingAuthenticationManager implements AuthenticationManager {
+
+        private final AuthenticationManagerResolver<String> issuerAuthenticationManagerResolver;
+
+        ResolvingAuthenticationManager(AuthenticationManagerResolver<String> issuerAuthenticationManagerResolver) {
+            this.issuerAuthenticationManagerResolver = issuerAuthenticationManagerResolver;
+        }
+
+        @Override
+        public Authentication authenticate(Authentication authentication) {
+            Assert.isTrue(authentication instanceof BearerTokenAuthenticationToken,
+                    "Authentication must be of type BearerTokenAuthenticationToken");
+            String token = ((BearerTokenAuthenticationToken) authentication).getToken();
+            String issuer;
+            try {
+                issuer = JwtIssuerScanner.issuerOf(token);
+            } catch (BadJwtException e) {
+                throw new InvalidBearerTokenException(e.getMessage(), e);
+            }
+            if (issuer == null) {
+                throw new InvalidBearerTokenException("Missing issuer");
+            }
+            AuthenticationManager authenticationManager = issuerAuthenticationManagerResolver.resolve(issuer);
+            if (authenticationManager == null) {
+                throw new InvalidBearerTokenException("Invalid issuer");
+            }
+            return authenticationManager.authenticate(authentication);
+        }
+    }
+}
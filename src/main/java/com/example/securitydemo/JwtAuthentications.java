@@ -0,0 +1,44 @@
+package com.example.securitydemo;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+/**
+ * Access to the issuer and subject of the authentication of a bearer token,
+ * regardless of whether it is a full {@link JwtAuthenticationToken} or a
+ * {@link CompactJwtAuthenticationToken}.
+ */
+final class JwtAuthentications {
+
+    private JwtAuthentications() {
+    }
+
+    /**
+     * @return issuer of the token, or {@code null} if the authentication is not one of a token
+     */
+    static String issuerOf(Authentication authentication) {
+        if (authentication instanceof CompactJwtAuthenticationToken) {
+            return ((CompactJwtAuthenticationToken) authentication).getIssuer();
+        }
+        if (authentication instanceof JwtAuthenticationToken) {
+            return ((JwtAuthenticationToken) authentication).getToken().getClaimAsString(JwtClaimNames.ISS);
+        }
+        return null;
+    }
+
+    /**
+     * Same subject as used by the {@link SubjectBasedGrantedAuthoritiesConverter}.
+     *
+     * @return subject of the token, or {@code null} if the authentication is not one of a token
+     */
+    static String subjectOf(Authentication authentication) {
+        if (authentication instanceof CompactJwtAuthenticationToken) {
+            return ((CompactJwtAuthenticationToken) authentication).getSubject();
+        }
+        if (authentication instanceof JwtAuthenticationToken) {
+            return ((JwtAuthenticationToken) authentication).getToken().getSubject();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.securitydemo;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+
+/**
+ * Creates the decoders of the {@link SupportedJwtTokenIssuer}s for both the servlet and
+ * the reactive security chain, so that tokens are verified the same way in either mode.
+ * <p>
+ * The decoder of the issuer is timed by the {@link ServerTimingRecorder}, wrapped with a
+ * {@link CachingJwtDecoder} when enabled via {@link SecurityDemoProperties.JwtCache},
+ * checked against the {@link TokenRevocationList}, if any, and timed by the
+ * {@link SecurityPipelineMetrics}, which also report the hits and misses of the cache.
+ */
+public class JwtDecoderFactory {
+
+    private final SecurityDemoProperties.JwtCache cache;
+    private final SecurityPipelineMetrics metrics;
+    private final ServerTimingRecorder serverTiming;
+    private final TokenRevocationList revocationList;
+
+    /**
+     * @param revocationList may be {@code null} when revocation is disabled
+     */
+    public JwtDecoderFactory(SecurityDemoProperties.JwtCache cache, SecurityPipelineMetrics metrics,
+            ServerTimingRecorder serverTiming, TokenRevocationList revocationList) {
+        this.cache = cache;
+        this.metrics = metrics;
+        this.serverTiming = serverTiming;
+        this.revocationList = revocationList;
+    }
+
+    public JwtDecoder createJwtDecoder(SupportedJwtTokenIssuer issuer) {
+        // Innermost, so that only the actual verification is timed
+        JwtDecoder decoder = serverTiming.timeVerification(issuer.getJwtDecoder());
+        if (cache.isEnabled()) {
+            CachingJwtDecoder cachingDecoder = new CachingJwtDecoder(decoder, cache.getMaximumSize(),
+                    cache.getMaximumTtl());
+            metrics.monitorJwtCache(issuer.getIssuerName(), cachingDecoder);
+            decoder = cachingDecoder;
+        }
+        if (revocationList != null) {
+            // Outside of the cache, so that cached tokens can be revoked as well
+            decoder = revocationList.decorate(issuer.getIssuerName(), decoder);
+        }
+        return metrics.timeDecoding(issuer.getIssuerName(), decoder);
+    }
+
+    /**
+     * Adapts the decoder of {@link #createJwtDecoder} by running it on the given scheduler,
+     * since the JWK set of an issuer may have to be fetched before a token can be verified.
+     */
+    public ReactiveJwtDecoder createReactiveJwtDecoder(SupportedJwtTokenIssuer issuer, Scheduler scheduler) {
+        JwtDecoder decoder = createJwtDecoder(issuer);
+        return token -> Mono.fromCallable(() -> decoder.decode(token))
+                .subscribeOn(scheduler);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.securitydemo;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+
+/**
+ * Replaces the {@link JwtTimestampValidator} of the default validators, reporting
+ * expired tokens with their own error code so that the {@link SecurityPipelineMetrics}
+ * can tell them apart from other invalid claims. Clients see the same response either
+ * way, since JwtAuthenticationProvider translates all validation errors to
+ * {@code invalid_token}.
+ */
+final class JwtExpiryValidator implements OAuth2TokenValidator<Jwt> {
+
+    static final String EXPIRED_TOKEN = "expired_token";
+
+    // Same as the default of JwtTimestampValidator
+    private static final Duration CLOCK_SKEW = Duration.ofSeconds(60);
+
+    private final Clock clock;
+    private final JwtTimestampValidator timestampValidator = new JwtTimestampValidator(CLOCK_SKEW);
+
+    JwtExpiryValidator() {
+        this(Clock.systemUTC());
+    }
+
+    JwtExpiryValidator(Clock clock) {
+        this.clock = clock;
+        this.timestampValidator.setClock(clock);
+    }
+
+    @Override
+    public OAuth2TokenValidatorResult validate(Jwt jwt) {
+        Instant expiresAt = jwt.getExpiresAt();
+        if (expiresAt != null && clock.instant().minus(CLOCK_SKEW).isAfter(expiresAt)) {
+            return OAuth2TokenValidatorResult.failure(new OAuth2Error(EXPIRED_TOKEN, "Jwt expired at " + expiresAt,
+                    null));
+        }
+        // Checks the not before claim
+        return timestampValidator.validate(jwt);
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.AuthenticationManagerResolver;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
+
+/**
+ * Registry of the supported issuers by issuer name, see {@link SupportedJwtTokenIssuer}.
+ * It resolves the decoder and the {@link AuthenticationManager} of the issuer of a token,
+ * so that all consumers of a verified token share the same per-issuer state.
+ * <p>
+ * Issuers can be added and removed at any time. Registering an issuer is cheap: its
+ * decoder and authentication manager are created on the first token of the issuer.
+ * Issuers registered with a factory are released again once they have not seen any
+ * token for the idle timeout, and are recreated on demand. Their decoders and
+ * authentication managers keep track of the tokens they are working on, so that a
+ * released issuer is only closed once the last of them is done. Lookups of issuers
+ * in use do not take any locks.
+ * <p>
+ * If an issuer or its decoder cannot be created, e.g. because of a malformed JWK set URI,
+ * its tokens fail with an {@link AuthenticationServiceException}, and the creation is
+ * only tried again after a delay.
+ * <p>
+ * Issuers registered as instances, e.g. the issuer beans, cannot be replaced or
+ * removed by issuers registered with a factory, so that a tenant cannot take over
+ * the name of a built-in issuer.
+ */
+public class JwtIssuerRegistry implements AuthenticationManagerResolver<String>, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtIssuerRegistry.class);
+
+    // Last use is tracked with this granularity, so that busy issuers are not written on every token
+    private static final long TOUCH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Tokens of an issuer which could not be created fail fast for this long before it is tried again
+    private static final long CREATION_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final Function<SupportedJwtTokenIssuer, JwtDecoder> decoderFactory;
+    private final BiFunction<SupportedJwtTokenIssuer, JwtDecoder, AuthenticationManager> authenticationManagerFactory;
+    private final long idleTimeoutNanos;
+    private final Consumer<String> releaseListener;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> permanentIssuerNames = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * @param decoderFactory creates the decoder of an issuer
+     * @param authenticationManagerFactory creates the authentication manager of an issuer
+     * from the issuer and its decoder
+     * @param idleTimeout time after which unused issuers registered with a factory are released
+     */
+    public JwtIssuerRegistry(Function<SupportedJwtTokenIssuer, JwtDecoder> decoderFactory,
+            BiFunction<SupportedJwtTokenIssuer, JwtDecoder, AuthenticationManager> authenticationManagerFactory,
+            Duration idleTimeout) {
+        this(decoderFactory, authenticationManagerFactory, idleTimeout, issuerName -> {
+        });
+    }
+
+    /**
+     * @param releaseListener called with the name of an issuer registered with a factory
+     * whenever it is released, before it can be created again, e.g. to remove its meters
+     */
+    public JwtIssuerRegistry(Function<SupportedJwtTokenIssuer, JwtDecoder> decoderFactory,
+            BiFunction<SupportedJwtTokenIssuer, JwtDecoder, AuthenticationManager> authenticationManagerFactory,
+            Duration idleTimeout, Consumer<String> releaseListener) {
+        this.decoderFactory = decoderFactory;
+        this.authenticationManagerFactory = authenticationManagerFactory;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.releaseListener = releaseListener;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwt-issuer-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionInterval = Math.max(idleTimeout.toMillis() / 2, 1);
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers an issuer which stays in use until the registry is closed, e.g. an issuer bean.
+     */
+    public void register(SupportedJwtTokenIssuer issuer) {
+        permanentIssuerNames.add(issuer.getIssuerName());
+        replace(issuer.getIssuerName(), new Entry(issuer.getIssuerName(), () -> issuer, false));
+    }
+
+    /**
+     * Registers an issuer which is created by the factory on demand and released when
+     * idle. If the issuer is {@link Closeable}, it is closed once released and done
+     * with the tokens in progress.
+     *
+     * @return {@code false} if the name belongs to an issuer registered as an instance,
+     * which is left as it is
+     */
+    public boolean register(String issuerName, Supplier<SupportedJwtTokenIssuer> issuerFactory) {
+        if (permanentIssuerNames.contains(issuerName)) {
+            log.warn("Ignoring issuer {}, it is already registered as an instance", issuerName);
+            return false;
+        }
+        replace(issuerName, new Entry(issuerName, issuerFactory, true));
+        return true;
+    }
+
+    /**
+     * Removes an issuer registered with a factory. Issuers registered as instances are
+     * left as they are.
+     */
+    public void unregister(String issuerName) {
+        Entry entry = entries.get(issuerName);
+        if (entry != null && entry.evictable && entries.remove(issuerName, entry)) {
+            entry.remove();
+        }
+    }
+
+    public Set<String> getIssuerNames() {
+        return entries.keySet();
+    }
+
+    /**
+     * @return decoder of the issuer, or {@code null} if the issuer is not supported
+     */
+    public JwtDecoder getDecoder(String issuer) {
+        Entry entry = entries.get(issuer);
+        return entry == null ? null : entry.decoder();
+    }
+
+    /**
+     * @return authority policy of the issuer, or {@code null} if the issuer is not supported
+     */
+    public AuthorityPolicy getAuthorityPolicy(String issuer) {
+        Entry entry = entries.get(issuer);
+        Components components = entry == null ? null : entry.components();
+        return components == null ? null : components.issuer.getAuthorityPolicy();
+    }
+
+    /**
+     * @return authentication manager of the issuer, or {@code null} if the issuer is not supported
+     */
+    @Override
+    public AuthenticationManager resolve(String issuer) {
+        Entry entry = entries.get(issuer);
+        return entry == null ? null : entry.authenticationManager();
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        entries.values().forEach(Entry::remove);
+    }
+
+    private void replace(String issuerName, Entry entry) {
+        Entry previous = entries.put(issuerName, entry);
+        if (previous != null) {
+            previous.remove();
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Entry entry : entries.values()) {
+            if (entry.evictable && now - entry.lastUsedNanos >= idleTimeoutNanos) {
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * Decoder and authentication manager of an issuer, with the number of tokens they
+     * are working on. Once released, they do not accept new tokens and the issuer is
+     * closed by whoever finishes the last token.
+     */
+    private static final class Components {
+
+        // Set in the state once released, next to the number of tokens in progress
+        private static final int RELEASED = 1 << 30;
+
+        private final SupportedJwtTokenIssuer issuer;
+        private final JwtDecoder decoder;
+        private final AuthenticationManager authenticationManager;
+        private final AtomicInteger state = new AtomicInteger();
+
+        Components(SupportedJwtTokenIssuer issuer, JwtDecoder decoder, AuthenticationManager authenticationManager) {
+            this.issuer = issuer;
+            this.decoder = decoder;
+            this.authenticationManager = authenticationManager;
+        }
+
+        /**
+         * @return {@code false} if released, in which case the issuer may be closed already
+         */
+        boolean tryEnter() {
+            while (true) {
+                int current = state.get();
+                if ((current & RELEASED) != 0) {
+                    return false;
+                }
+                if (state.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void exit() {
+            if (state.decrementAndGet() == RELEASED) {
+                close();
+            }
+        }
+
+        void release() {
+            if (state.getAndAdd(RELEASED) == 0) {
+                close();
+            }
+        }
+
+        private void close() {
+            if (issuer instanceof Closeable) {
+                try {
+                    ((Closeable) issuer).close();
+                } catch (IOException e) {
+                    log.warn("Unable to close issuer {}", issuer.getIssuerName(), e);
+                }
+            }
+            log.debug("Closed issuer {}", issuer.getIssuerName());
+        }
+    }
+
+    private final class Entry {
+
+        private final String issuerName;
+        private final Supplier<SupportedJwtTokenIssuer> issuerFactory;
+        private final boolean evictable;
+        // Of evictable issuers, these outlive their components and count the tokens in progress
+        private final JwtDecoder decoder;
+        private final AuthenticationManager authenticationManager;
+
+        private volatile Components components;
+        private volatile boolean removed;
+        private volatile long lastUsedNanos = System.nanoTime();
+        // Guarded by this
+        private RuntimeException creationFailure;
+        private long creationRetryNanos;
+
+        Entry(String issuerName, Supplier<SupportedJwtTokenIssuer> issuerFactory, boolean evictable) {
+            this.issuerName = issuerName;
+            this.issuerFactory = issuerFactory;
+            this.evictable = evictable;
+            if (evictable) {
+                this.decoder = token -> {
+                    Components current = enter();
+                    if (current == null) {
+                        throw new BadJwtException("Invalid issuer");
+                    }
+                    try {
+                        return current.decoder.decode(token);
+                    } finally {
+                        current.exit();
+                    }
+                };
+                this.authenticationManager = authentication -> {
+                    Components current = enter();
+                    if (current == null) {
+                        throw new InvalidBearerTokenException("Invalid issuer");
+                    }
+                    try {
+                        return current.authenticationManager.authenticate(authentication);
+                    } finally {
+                        current.exit();
+                    }
+                };
+            } else {
+                this.decoder = null;
+                this.authenticationManager = null;
+            }
+        }
+
+        JwtDecoder decoder() {
+            Components current = components();
+            if (current == null) {
+                return null;
+            }
+            return evictable ? decoder : current.decoder;
+        }
+
+        AuthenticationManager authenticationManager() {
+            Components current = components();
+            if (current == null) {
+                return null;
+            }
+            return evictable ? authenticationManager : current.authenticationManager;
+        }
+
+        /**
+         * @return current components, created on demand, or {@code null} if the entry was removed
+         */
+        Components components() {
+            Components current = components;
+            if (current == null) {
+                current = create();
+                if (current == null) {
+                    return null;
+                }
+            }
+            long now = System.nanoTime();
+            if (now - lastUsedNanos >= TOUCH_INTERVAL_NANOS) {
+                lastUsedNanos = now;
+            }
+            return current;
+        }
+
+        /**
+         * Returns the current components for one token, which must be given back with
+         * {@link Components#exit()}, or {@code null} if the entry was removed.
+         */
+        private Components enter() {
+            while (true) {
+                Components current = components();
+                if (current == null || current.tryEnter()) {
+                    return current;
+                }
+                // Released in the meantime, the next round creates the components again
+            }
+        }
+
+        /**
+         * @throws AuthenticationServiceException if the issuer cannot be created
+         */
+        private synchronized Components create() {
+            Components current = components;
+            if (current == null && !removed) {
+                if (creationFailure != null && System.nanoTime() - creationRetryNanos < 0) {
+                    throw new AuthenticationServiceException("Issuer " + issuerName + " is not available",
+                            creationFailure);
+                }
+                try {
+                    SupportedJwtTokenIssuer issuer = issuerFactory.get();
+                    JwtDecoder issuerDecoder = decoderFactory.apply(issuer);
+                    current = new Components(issuer, issuerDecoder,
+                            authenticationManagerFactory.apply(issuer, issuerDecoder));
+                } catch (RuntimeException e) {
+                    creationFailure = e;
+                    creationRetryNanos = System.nanoTime() + CREATION_RETRY_DELAY_NANOS;
+                    log.warn("Unable to create decoder of issuer {}", issuerName, e);
+                    throw new AuthenticationServiceException("Issuer " + issuerName + " is not available", e);
+                }
+                creationFailure = null;
+                components = current;
+                log.debug("Created decoder of issuer {}", issuerName);
+            }
+            return current;
+        }
+
+        void remove() {
+            removed = true;
+            release();
+        }
+
+        synchronized void release() {
+            Components current = components;
+            if (current == null) {
+                return;
+            }
+            components = null;
+            if (evictable) {
+                // Under the lock of the entry, so that it does not interfere with the next creation
+                releaseListener.accept(issuerName);
+                current.release();
+            }
+            log.debug("Released decoder of issuer {}", current.issuer.getIssuerName());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.securitydemo;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Base64;
+
+import com.nimbusds.jwt.JWTParser;
+
+import org.springframework.security.oauth2.jwt.BadJwtException;
+
+/**
+ * Extracts the <em>iss</em> claim from a serialized JWS token without parsing
+ * its claims into a map.
+ * <p>
+ * The payload is base64url-decoded and scanned for the top-level <em>iss</em> key.
+ * Only when the scan cannot give a definite answer (escaped characters, duplicate
+ * keys) does it fall back to the full Nimbus parser. This leaves the issuer-specific
+ * {@link org.springframework.security.oauth2.jwt.JwtDecoder} as the only place
+ * where the token is fully parsed.
+ */
+final class JwtIssuerScanner {
+
+    private static final byte[] ISS = "iss".getBytes(StandardCharsets.US_ASCII);
+
+    private JwtIssuerScanner() {
+    }
+
+    /**
+     * Returns the issuer of the token or {@code null} if the token does not have one.
+     *
+     * @throws BadJwtException if the token is not a well-formed JWS
+     */
+    static String issuerOf(String token) {
+        int firstDot = token.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+        if (secondDot < 0 || token.indexOf('.', secondDot + 1) >= 0) {
+            throw new BadJwtException("Malformed token");
+        }
+
+        byte[] payload;
+        try {
+            payload = Base64.getUrlDecoder().decode(token.substring(firstDot + 1, secondDot));
+        } catch (IllegalArgumentException e) {
+            throw new BadJwtException("Malformed payload", e);
+        }
+
+        ScanResult result = scan(payload);
+        return result.conclusive() ? result.issuer() : parseIssuer(token);
+    }
+
+    /**
+     * Walks through the JSON object tracking the nesting depth so that keys of
+     * nested objects are not mistaken for the top-level claim.
+     */
+    private static ScanResult scan(byte[] json) {
+        String issuer = null;
+        int depth = 0;
+        for (int i = 0; i < json.length; i++) {
+            byte b = json[i];
+            if (b == '"') {
+                int end = endOfString(json, i + 1);
+                if (end < 0) {
+                    return ScanResult.INCONCLUSIVE;
+                }
+                int next = skipWhitespace(json, end + 1);
+                boolean isKey = next < json.length && json[next] == ':';
+                if (depth == 1 && isKey) {
+                    if (containsEscape(json, i + 1, end)) {
+                        return ScanResult.INCONCLUSIVE;
+                    }
+                    if (regionEquals(json, i + 1, end, ISS)) {
+                        if (issuer != null) {
+                            // Duplicate keys are resolved by the parser, not by us
+                            return ScanResult.INCONCLUSIVE;
+                        }
+                        int valueStart = skipWhitespace(json, next + 1);
+                        if (valueStart >= json.length || json[valueStart] != '"') {
+                            return ScanResult.INCONCLUSIVE;
+                        }
+                        int valueEnd = endOfString(json, valueStart + 1);
+                        if (valueEnd < 0 || containsEscape(json, valueStart + 1, valueEnd)) {
+                            return ScanResult.INCONCLUSIVE;
+                        }
+                        issuer = new String(json, valueStart + 1, valueEnd - valueStart - 1, StandardCharsets.UTF_8);
+                        i = valueEnd;
+                        continue;
+                    }
+                }
+                i = end;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        }
+        return issuer != null ? ScanResult.of(issuer) : ScanResult.NO_ISSUER;
+    }
+
+    /**
+     * Returns index of the closing quote of a string starting at the given index.
+     */
+    private static int endOfString(byte[] json, int from) {
+        for (int i = from; i < json.length; i++) {
+            if (json[i] == '\\') {
+                i++;
+            } else if (json[i] == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] json, int from) {
+        int i = from;
+        while (i < json.length && (json[i] == ' ' || json[i] == '\t' || json[i] == '\n' || json[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean containsEscape(byte[] json, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (json[i] == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether the bytes between the given indexes are the expected ones.
+     */
+    private static boolean regionEquals(byte[] json, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (json[from + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String parseIssuer(String token) {
+        try {
+            return JWTParser.parse(token).getJWTClaimsSet().getIssuer();
+        } catch (ParseException e) {
+            throw new BadJwtException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Outcome of a scan: either the issuer, {@code null} if the token has none, or
+     * inconclusive if only the parser can tell.
+     */
+    private record ScanResult(boolean conclusive, String issuer) {
+
+        static final ScanResult INCONCLUSIVE = new ScanResult(false, null);
+
+        static final ScanResult NO_ISSUER = new ScanResult(true, null);
+
+        static ScanResult of(String issuer) {
+            return new ScanResult(true, issuer);
+        }
+    }
+}
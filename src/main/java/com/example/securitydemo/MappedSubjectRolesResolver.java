@@ -0,0 +1,57 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Implementation of {@link SubjectRolesResolver} backed by an immutable on-disk
+ * {@link SubjectRolesIndex} that is memory-mapped rather than loaded onto the heap.
+ * This makes it suitable for tens of millions of subjects.
+ * <p>
+ * The index file is checked for modifications periodically, see {@link FileReloader}.
+ * A new version is mapped in the background and swapped in atomically, so requests
+ * never wait for a reload.
+ * Use {@link SubjectRolesIndexBuilder} to produce index files.
+ */
+public class MappedSubjectRolesResolver implements SubjectRolesResolver, Closeable {
+
+    private final Path indexFile;
+    private final FileReloader reloader;
+
+    private volatile SubjectRolesIndex index;
+
+    public MappedSubjectRolesResolver(Path indexFile, Duration reloadInterval) {
+        this.indexFile = indexFile;
+        try {
+            this.reloader = new FileReloader(indexFile, "subject roles index", reloadInterval, this::load);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load subject roles index " + indexFile, e);
+        }
+    }
+
+    @Override
+    public Collection<String> getRolesBySubject(String subject) {
+        return index.getRoles(subject);
+    }
+
+    /**
+     * Maps the current version of the index file and makes it visible to new lookups.
+     * Lookups in progress complete against the previous version.
+     */
+    public void reload() throws IOException {
+        reloader.reload();
+    }
+
+    @Override
+    public void close() {
+        reloader.close();
+    }
+
+    private void load() throws IOException {
+        index = SubjectRolesIndex.open(indexFile);
+    }
+}
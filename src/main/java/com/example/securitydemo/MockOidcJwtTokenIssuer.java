@@ -1,32 +1,33 @@
 package com.example.securitydemo;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.URL;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
 import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.KeySourceException;
-import com.nimbusds.jose.jwk.JWK;
-import com.nimbusds.jose.jwk.JWKMatcher;
-import com.nimbusds.jose.jwk.JWKSelector;
-import com.nimbusds.jose.jwk.KeyType;
-import com.nimbusds.jose.jwk.KeyUse;
-import com.nimbusds.jose.jwk.source.JWKSource;
-import com.nimbusds.jose.jwk.source.RemoteJWKSet;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
 import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
 import org.springframework.security.oauth2.core.OAuth2TokenValidator;
-import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtDecoders;
-import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.JwtIssuerValidator;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
-import org.springframework.util.Assert;
 
 /**
  * Provides decoder for tokens issued by mock OIDC provider.
@@ -40,69 +41,130 @@ import org.springframework.util.Assert;
  * JwtDecoders.fromOidcIssuerLocation("https://some.issuer");
  * }
  * </pre>
+ * Unlike {@link JwtDecoders}, creating the decoder does not contact the issuer.
+ * The JWK set is loaded and refreshed in the background by {@link RefreshingJwkSetSource},
+ * so the application starts regardless of the issuer availability. When a snapshot
+ * directory is configured, the last fetched JWK set is also restored from there on start.
+ * <p>
+ * The number, failures and duration of the JWK set fetches are reported as
+ * {@code security.jwks.refresh} meters, which Spring Boot binds automatically for the
+ * issuer bean. They are removed again when the issuer is closed, so that a tenant
+ * issuer recreated after it was idle reports its own fetches.
  */
-public class MockOidcJwtTokenIssuer implements SupportedJwtTokenIssuer {
+public class MockOidcJwtTokenIssuer
+        implements SupportedJwtTokenIssuer, MeterBinder, Closeable {
     public static final String ISSUER_NAME = "https://oauth.mocklab.io";
     public static final String JWK_SET_URI = "https://oauth.mocklab.io/.well-known/jwks.json";
 
+    private final String issuerName;
+    private final String jwkSetUri;
+    private final SecurityDemoProperties.Jwks jwksProperties;
+    private final BlockingExecutors blockingExecutors;
+
+    private final List<Meter> meters = new CopyOnWriteArrayList<>();
+
+    private volatile RefreshingJwkSetSource jwkSource;
+    private volatile MeterRegistry meterRegistry;
+    private JwtDecoder jwtDecoder;
+
+    public MockOidcJwtTokenIssuer() {
+        this(new SecurityDemoProperties.Jwks(), BlockingExecutors.platform());
+    }
+
+    public MockOidcJwtTokenIssuer(SecurityDemoProperties.Jwks jwksProperties, BlockingExecutors blockingExecutors) {
+        this(ISSUER_NAME, JWK_SET_URI, jwksProperties, blockingExecutors);
+    }
+
+    /**
+     * Decoder for another provider with the same deficiencies as the mock OIDC provider,
+     * e.g. a local stand-in used for load testing.
+     */
+    public MockOidcJwtTokenIssuer(String issuerName, String jwkSetUri, SecurityDemoProperties.Jwks jwksProperties,
+            BlockingExecutors blockingExecutors) {
+        this.issuerName = issuerName;
+        this.jwkSetUri = jwkSetUri;
+        this.jwksProperties = jwksProperties;
+        this.blockingExecutors = blockingExecutors;
+    }
+
     @Override
     public String getIssuerName() {
-        return ISSUER_NAME;
+        return issuerName;
     }
 
     @Override
-    public JwtDecoder getJwtDecoder() {
-        return oidcServerJwtDecoder();
+    public synchronized JwtDecoder getJwtDecoder() {
+        if (jwtDecoder == null) {
+            jwtDecoder = oidcServerJwtDecoder();
+        }
+        return jwtDecoder;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+        meters.add(FunctionTimer.builder("security.jwks.refresh", this,
+                        issuer -> issuer.jwkSourceStatistic(RefreshingJwkSetSource::getFetchCount),
+                        issuer -> issuer.jwkSourceStatistic(RefreshingJwkSetSource::getFetchTimeNanos),
+                        TimeUnit.NANOSECONDS)
+                .description("Fetches of the JWK set of the issuer")
+                .tag("issuer", issuerName)
+                .register(registry));
+        meters.add(FunctionCounter.builder("security.jwks.refresh.failures", this,
+                        issuer -> issuer.jwkSourceStatistic(RefreshingJwkSetSource::getFetchFailureCount))
+                .description("Failed fetches of the JWK set of the issuer")
+                .tag("issuer", issuerName)
+                .register(registry));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (jwkSource != null) {
+            jwkSource.close();
+        }
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            meters.forEach(registry::remove);
+            meters.clear();
+        }
     }
 
     /**
      * See JwtDecoders#withProviderConfiguration(Map, String)
      * <p>
-     * Adjusted implementation to use preconfigured URLs instead of dynamic configuration
+     * Adjusted implementation to use preconfigured URLs instead of dynamic configuration.
+     * The original implementation restricts the algorithms to the ones found in the
+     * JWK set, which requires fetching it upfront. Here all RSA and EC algorithms are
+     * accepted instead, which is what the original ends up with for keys that do not
+     * declare an algorithm. Keys that do declare one are still matched against the
+     * algorithm of the token.
      */
-    private static JwtDecoder oidcServerJwtDecoder() {
-        OAuth2TokenValidator<Jwt> jwtValidator = JwtValidators.createDefaultWithIssuer(ISSUER_NAME);
-        RemoteJWKSet<SecurityContext> jwkSource = new RemoteJWKSet<>(url(JWK_SET_URI));
-        Set<SignatureAlgorithm> signatureAlgorithms = getSignatureAlgorithms(jwkSource);
-        NimbusJwtDecoder jwtDecoder = NimbusJwtDecoder.withJwkSetUri(JWK_SET_URI)
-                .jwsAlgorithms((algs) -> algs.addAll(signatureAlgorithms)).build();
+    private JwtDecoder oidcServerJwtDecoder() {
+        // As JwtValidators#createDefaultWithIssuer(String), but reporting expired tokens apart
+        OAuth2TokenValidator<Jwt> jwtValidator = new DelegatingOAuth2TokenValidator<>(new JwtExpiryValidator(),
+                new JwtIssuerValidator(issuerName));
+        URL jwkSetUrl = url(jwkSetUri);
+        jwkSource = new RefreshingJwkSetSource(jwkSetUrl, jwksProperties.getRefreshInterval(),
+                jwksProperties.getUnknownKeyCooldown(), jwksProperties.getFetchTimeout(),
+                jwksProperties.snapshotFileFor(jwkSetUrl), blockingExecutors);
+
+        Set<JWSAlgorithm> jwsAlgorithms = new HashSet<>();
+        jwsAlgorithms.addAll(JWSAlgorithm.Family.RSA);
+        jwsAlgorithms.addAll(JWSAlgorithm.Family.EC);
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(jwsAlgorithms, jwkSource));
+        // Spring Security validates the claims set on its own, see NimbusJwtDecoder.JwkSetUriJwtDecoderBuilder
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+
+        NimbusJwtDecoder jwtDecoder = new NimbusJwtDecoder(jwtProcessor);
         jwtDecoder.setJwtValidator(jwtValidator);
         return jwtDecoder;
     }
 
-    /**
-     * Copied from package-private JwtDecoderProviderConfigurationUtils class.
-     */
-    private static Set<SignatureAlgorithm> getSignatureAlgorithms(JWKSource<SecurityContext> jwkSource) {
-        JWKMatcher jwkMatcher = new JWKMatcher.Builder().publicOnly(true).keyUses(KeyUse.SIGNATURE, null)
-                .keyTypes(KeyType.RSA, KeyType.EC).build();
-        Set<JWSAlgorithm> jwsAlgorithms = new HashSet<>();
-        try {
-            List<? extends JWK> jwks = jwkSource.get(new JWKSelector(jwkMatcher), null);
-            for (JWK jwk : jwks) {
-                if (jwk.getAlgorithm() != null) {
-                    JWSAlgorithm jwsAlgorithm = JWSAlgorithm.parse(jwk.getAlgorithm().getName());
-                    jwsAlgorithms.add(jwsAlgorithm);
-                } else {
-                    if (jwk.getKeyType() == KeyType.RSA) {
-                        jwsAlgorithms.addAll(JWSAlgorithm.Family.RSA);
-                    } else if (jwk.getKeyType() == KeyType.EC) {
-                        jwsAlgorithms.addAll(JWSAlgorithm.Family.EC);
-                    }
-                }
-            }
-        } catch (KeySourceException ex) {
-            throw new IllegalStateException(ex);
-        }
-        Set<SignatureAlgorithm> signatureAlgorithms = new HashSet<>();
-        for (JWSAlgorithm jwsAlgorithm : jwsAlgorithms) {
-            SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.from(jwsAlgorithm.getName());
-            if (signatureAlgorithm != null) {
-                signatureAlgorithms.add(signatureAlgorithm);
-            }
-        }
-        Assert.notEmpty(signatureAlgorithms, "Failed to find any algorithms from the JWK set");
-        return signatureAlgorithms;
+    private long jwkSourceStatistic(ToLongFunction<RefreshingJwkSetSource> statistic) {
+        RefreshingJwkSetSource source = jwkSource;
+        return source == null ? 0 : statistic.applyAsLong(source);
     }
 
     /**
@@ -0,0 +1,57 @@
+package com.example.securitydemo;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Small lock-free pool of instances which are expensive to create and cannot be
+ * shared between threads, such as initialized {@code Mac}s. A pool is used rather
+ * than thread-locals, because with virtual threads every request runs on a new thread.
+ * <p>
+ * Threads probe the slots starting at a position derived from their id, so they rarely
+ * compete for the same slot. When all slots are taken, a new instance is created, and
+ * surplus instances are dropped on release.
+ */
+final class ObjectPool<T> {
+
+    // Power of two, so that slots can be probed with a mask
+    private static final int POOL_SIZE = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 4;
+
+    private final Supplier<T> factory;
+    private final AtomicReferenceArray<T> slots = new AtomicReferenceArray<>(POOL_SIZE);
+
+    /**
+     * @param factory creates a new instance whenever the pool is empty
+     */
+    ObjectPool(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Takes an instance from the pool, or creates a new one if there is none.
+     */
+    T borrow() {
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int slot = (start + i) & (POOL_SIZE - 1);
+            T instance = slots.get(slot);
+            if (instance != null && slots.compareAndSet(slot, instance, null)) {
+                return instance;
+            }
+        }
+        return factory.get();
+    }
+
+    /**
+     * Returns an instance, which must be ready for the next borrower, to the pool.
+     */
+    void release(T instance) {
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int slot = (start + i) & (POOL_SIZE - 1);
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, instance)) {
+                return;
+            }
+        }
+    }
+}
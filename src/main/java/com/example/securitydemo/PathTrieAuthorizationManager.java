@@ -0,0 +1,246 @@
+package com.example.securitydemo;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.util.Assert;
+
+/**
+ * {@link AuthorizationManager} that evaluates a fixed set of path rules without ant
+ * pattern matching or SpEL expressions.
+ * <p>
+ * The rules are compiled into a trie of path segments when the manager is built, so a
+ * request is routed by walking its path once. Patterns consist of literal segments,
+ * {@code *} for exactly one segment and a trailing {@code **} for any number of them,
+ * and like with {@code antMatchers} the rule declared first wins when several match.
+ * Like with {@code mvcMatchers}, a path with a trailing slash matches the same rules
+ * as the path without it, so that {@code /admin/} is not a way around {@code /admin}.
+ * Role checks are plain comparisons with the few authorities of the request.
+ */
+public class PathTrieAuthorizationManager implements AuthorizationManager<RequestAuthorizationContext> {
+
+    private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+    private static final AuthenticationTrustResolver TRUST_RESOLVER = new AuthenticationTrustResolverImpl();
+
+    private final Node root;
+    private final Rule anyRequest;
+
+    private PathTrieAuthorizationManager(Node root, Rule anyRequest) {
+        this.root = root;
+        this.anyRequest = anyRequest;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        Rule rule = match(root, requestPath(context.getRequest()), 1, null);
+        return (rule != null ? rule : anyRequest).check(authentication);
+    }
+
+    /**
+     * Same path as matched by AntPathRequestMatcher.
+     */
+    private static String requestPath(HttpServletRequest request) {
+        String servletPath = request.getServletPath();
+        String pathInfo = request.getPathInfo();
+        if (pathInfo == null) {
+            return servletPath;
+        }
+        return servletPath.isEmpty() ? pathInfo : servletPath + pathInfo;
+    }
+
+    /**
+     * Finds the earliest declared rule matching the path from the given position on.
+     * Does not allocate, segments are compared in place.
+     */
+    private static Rule match(Node node, String path, int start, Rule best) {
+        best = earliest(best, node.remainderRule);
+        if (start > path.length()) {
+            return earliest(best, node.rule);
+        }
+        if (start == path.length() && start > 1) {
+            // Trailing slash, the path matches the rules without it, too
+            best = earliest(best, node.rule);
+        }
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        int length = end - start;
+        for (Node child : node.children) {
+            if (child.segment.length() == length && path.startsWith(child.segment, start)) {
+                best = match(child, path, end + 1, best);
+                break;
+            }
+        }
+        if (node.wildcard != null) {
+            best = match(node.wildcard, path, end + 1, best);
+        }
+        return best;
+    }
+
+    private static Rule earliest(Rule best, Rule candidate) {
+        if (candidate == null) {
+            return best;
+        }
+        return best == null || candidate.order < best.order ? candidate : best;
+    }
+
+    private enum Access {
+        PERMIT_ALL, AUTHENTICATED, HAS_AUTHORITY, DENY_ALL
+    }
+
+    private static final class Rule {
+
+        private final int order;
+        private final Access access;
+        private final String authority;
+
+        Rule(int order, Access access, String authority) {
+            this.order = order;
+            this.access = access;
+            this.authority = authority;
+        }
+
+        AuthorizationDecision check(Supplier<Authentication> supplier) {
+            switch (access) {
+                case PERMIT_ALL:
+                    return GRANTED;
+                case DENY_ALL:
+                    return DENIED;
+                case AUTHENTICATED:
+                    Authentication authentication = supplier.get();
+                    return authentication != null && !TRUST_RESOLVER.isAnonymous(authentication)
+                            && authentication.isAuthenticated() ? GRANTED : DENIED;
+                default:
+                    return checkAuthority(supplier.get());
+            }
+        }
+
+        private AuthorizationDecision checkAuthority(Authentication authentication) {
+            if (authentication == null || !authentication.isAuthenticated()) {
+                return DENIED;
+            }
+            for (GrantedAuthority grantedAuthority : authentication.getAuthorities()) {
+                if (authority.equals(grantedAuthority.getAuthority())) {
+                    return GRANTED;
+                }
+            }
+            return DENIED;
+        }
+    }
+
+    private static final class Node {
+
+        private final String segment;
+        private Node[] children = new Node[0];
+        private Node wildcard;
+        private Rule rule;
+        private Rule remainderRule;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        Node child(String segment) {
+            if ("*".equals(segment)) {
+                if (wildcard == null) {
+                    wildcard = new Node(segment);
+                }
+                return wildcard;
+            }
+            for (Node child : children) {
+                if (child.segment.equals(segment)) {
+                    return child;
+                }
+            }
+            Node child = new Node(segment);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+            return child;
+        }
+    }
+
+    /**
+     * Collects the rules in the order of precedence, like the {@code authorizeRequests}
+     * DSL does. Requests not matched by any rule are denied unless
+     * {@link #anyRequestAuthenticated()} is set.
+     */
+    public static final class Builder {
+
+        private final Node root = new Node("");
+        private Rule anyRequest = new Rule(Integer.MAX_VALUE, Access.DENY_ALL, null);
+        private int order;
+
+        private Builder() {
+        }
+
+        public Builder permitAll(String pattern) {
+            return add(pattern, Access.PERMIT_ALL, null);
+        }
+
+        public Builder authenticated(String pattern) {
+            return add(pattern, Access.AUTHENTICATED, null);
+        }
+
+        /**
+         * @param role role without the {@code ROLE_} prefix, as with {@code hasRole}
+         */
+        public Builder hasRole(String pattern, String role) {
+            Assert.isTrue(!role.startsWith("ROLE_"), () -> "role should not start with 'ROLE_', but is " + role);
+            return add(pattern, Access.HAS_AUTHORITY, "ROLE_" + role);
+        }
+
+        public Builder denyAll(String pattern) {
+            return add(pattern, Access.DENY_ALL, null);
+        }
+
+        public Builder anyRequestAuthenticated() {
+            anyRequest = new Rule(Integer.MAX_VALUE, Access.AUTHENTICATED, null);
+            return this;
+        }
+
+        public PathTrieAuthorizationManager build() {
+            return new PathTrieAuthorizationManager(root, anyRequest);
+        }
+
+        private Builder add(String pattern, Access access, String authority) {
+            Assert.isTrue(pattern.startsWith("/"), () -> "pattern should start with '/', but is " + pattern);
+            Rule rule = new Rule(order++, access, authority);
+            String[] segments = pattern.substring(1).split("/", -1);
+            Node node = root;
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if ("**".equals(segment)) {
+                    Assert.isTrue(i == segments.length - 1, () -> "'**' is only supported at the end of " + pattern);
+                    if (node.remainderRule == null) {
+                        node.remainderRule = rule;
+                    }
+                    return this;
+                }
+                Assert.isTrue("*".equals(segment) || segment.indexOf('*') < 0,
+                        () -> "Partial wildcards are not supported in " + pattern);
+                node = node.child(segment);
+            }
+            // The first declared rule wins, as with antMatchers
+            if (node.rule == null) {
+                node.rule = rule;
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.securitydemo;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * {@link JWSVerifier} for HMAC signatures made with a single key.
+ * <p>
+ * Unlike the Nimbus {@code MACVerifier}, which looks up and initializes a new {@link Mac}
+ * for every signature, initialized instances are kept in an {@link ObjectPool} per
+ * algorithm and reused.
+ */
+class PooledMacVerifier implements JWSVerifier {
+
+    private final SecretKey key;
+    private final Set<JWSAlgorithm> supportedAlgorithms;
+    private final ObjectPool<Mac> hs256;
+    private final ObjectPool<Mac> hs384;
+    private final ObjectPool<Mac> hs512;
+    private final JCAContext jcaContext = new JCAContext();
+
+    PooledMacVerifier(SecretKey key) {
+        this.key = key;
+        int keyBits = key.getEncoded().length * 8;
+        // Same minimum key lengths as enforced by the Nimbus MACSigner
+        this.hs256 = keyBits >= 256 ? macPool("HmacSHA256") : null;
+        this.hs384 = keyBits >= 384 ? macPool("HmacSHA384") : null;
+        this.hs512 = keyBits >= 512 ? macPool("HmacSHA512") : null;
+        Set<JWSAlgorithm> algorithms = new LinkedHashSet<>();
+        if (hs256 != null) {
+            algorithms.add(JWSAlgorithm.HS256);
+        }
+        if (hs384 != null) {
+            algorithms.add(JWSAlgorithm.HS384);
+        }
+        if (hs512 != null) {
+            algorithms.add(JWSAlgorithm.HS512);
+        }
+        this.supportedAlgorithms = Collections.unmodifiableSet(algorithms);
+    }
+
+    @Override
+    public boolean verify(JWSHeader header, byte[] signingInput, Base64URL signature) throws JOSEException {
+        // No critical header parameters are understood, same as MACVerifier by default
+        if (header.getCriticalParams() != null && !header.getCriticalParams().isEmpty()) {
+            return false;
+        }
+        ObjectPool<Mac> pool = poolFor(header.getAlgorithm());
+        if (pool == null) {
+            throw new JOSEException("Unsupported JWS algorithm " + header.getAlgorithm()
+                    + ", must be one of " + supportedAlgorithms);
+        }
+        Mac mac;
+        try {
+            mac = pool.borrow();
+        } catch (IllegalArgumentException e) {
+            throw new JOSEException(e.getMessage(), e.getCause());
+        }
+        byte[] expected = mac.doFinal(signingInput);
+        pool.release(mac);
+        return MessageDigest.isEqual(expected, signature.decode());
+    }
+
+    @Override
+    public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+        return supportedAlgorithms;
+    }
+
+    @Override
+    public JCAContext getJCAContext() {
+        return jcaContext;
+    }
+
+    private ObjectPool<Mac> poolFor(JWSAlgorithm algorithm) {
+        if (JWSAlgorithm.HS256.equals(algorithm)) {
+            return hs256;
+        }
+        if (JWSAlgorithm.HS384.equals(algorithm)) {
+            return hs384;
+        }
+        if (JWSAlgorithm.HS512.equals(algorithm)) {
+            return hs512;
+        }
+        return null;
+    }
+
+    /**
+     * Initialized {@link Mac} instances of one algorithm, eagerly created so that an
+     * unusable key fails early.
+     */
+    private ObjectPool<Mac> macPool(String algorithm) {
+        ObjectPool<Mac> pool = new ObjectPool<>(() -> newMac(algorithm));
+        pool.release(newMac(algorithm));
+        return pool;
+    }
+
+    private Mac newMac(String algorithm) {
+        try {
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Unable to initialize " + algorithm, e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.securitydemo;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Collections;
+import java.util.Set;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * {@link JWSVerifier} for ES256 or EdDSA signatures made with a single public key.
+ * <p>
+ * Signatures are verified with the JDK providers: ES256 with {@code SHA256withECDSA}
+ * in the P1363 format, which is the R || S concatenation used by JWS, and EdDSA with
+ * {@code Ed25519}, which the Nimbus {@code Ed25519Verifier} only supports with Tink.
+ * Like {@link PooledMacVerifier}, initialized {@link Signature} instances are kept in
+ * an {@link ObjectPool} and reused.
+ */
+class PooledSignatureVerifier implements JWSVerifier {
+
+    // Both R || S of P-256 and Ed25519 signatures have 64 bytes
+    private static final int SIGNATURE_LENGTH = 64;
+
+    private final PublicKey key;
+    private final JWSAlgorithm algorithm;
+    private final String signatureAlgorithm;
+    private final ObjectPool<Signature> pool = new ObjectPool<>(this::newSignature);
+    private final JCAContext jcaContext = new JCAContext();
+
+    /**
+     * @param algorithm either {@link JWSAlgorithm#ES256} for a P-256 key or
+     * {@link JWSAlgorithm#EdDSA} for an Ed25519 key
+     */
+    PooledSignatureVerifier(PublicKey key, JWSAlgorithm algorithm) {
+        if (JWSAlgorithm.ES256.equals(algorithm)) {
+            this.signatureAlgorithm = "SHA256withECDSAinP1363Format";
+        } else if (JWSAlgorithm.EdDSA.equals(algorithm)) {
+            this.signatureAlgorithm = "Ed25519";
+        } else {
+            throw new IllegalArgumentException("Unsupported JWS algorithm " + algorithm);
+        }
+        this.key = key;
+        this.algorithm = algorithm;
+        // Fails early if the key does not fit the algorithm
+        pool.release(newSignature());
+    }
+
+    @Override
+    public boolean verify(JWSHeader header, byte[] signingInput, Base64URL signature) throws JOSEException {
+        // No critical header parameters are understood, same as the Nimbus verifiers by default
+        if (header.getCriticalParams() != null && !header.getCriticalParams().isEmpty()) {
+            return false;
+        }
+        if (!algorithm.equals(header.getAlgorithm())) {
+            throw new JOSEException("Unsupported JWS algorithm " + header.getAlgorithm() + ", must be " + algorithm);
+        }
+        byte[] signatureBytes = signature.decode();
+        if (signatureBytes.length != SIGNATURE_LENGTH) {
+            return false;
+        }
+        Signature verifier = borrow();
+        boolean valid;
+        try {
+            verifier.update(signingInput);
+            valid = verifier.verify(signatureBytes);
+        } catch (GeneralSecurityException e) {
+            // The instance is left in an unknown state, so it is not returned to the pool
+            return false;
+        }
+        // A verified instance is reset to its initialized state
+        pool.release(verifier);
+        return valid;
+    }
+
+    @Override
+    public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+        return Collections.singleton(algorithm);
+    }
+
+    @Override
+    public JCAContext getJCAContext() {
+        return jcaContext;
+    }
+
+    private Signature borrow() throws JOSEException {
+        try {
+            return pool.borrow();
+        } catch (IllegalArgumentException e) {
+            throw new JOSEException(e.getMessage(), e.getCause());
+        }
+    }
+
+    private Signature newSignature() {
+        try {
+            Signature signature = Signature.getInstance(signatureAlgorithm);
+            signature.initVerify(key);
+            return signature;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Unable to initialize " + signatureAlgorithm, e);
+        }
+    }
+}
@@ -1,11 +1,25 @@
 package com.example.securitydemo;
 
+import java.io.Closeable;
+import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.List;
+import java.util.Set;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.JWSVerifierFactory;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+
 import org.springframework.context.ApplicationContextException;
 import org.springframework.security.oauth2.jose.jws.JwsAlgorithms;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
@@ -13,13 +27,58 @@ import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 
 /**
  * Provides decoder for tokens issued by custom Authorization Server.
+ * <p>
+ * Tokens without a <em>kid</em> header are verified with the {@link #PRIVATE_AUTH_SERVER_KEY}.
+ * Additional keys, selected by <em>kid</em>, can be rotated through the key file
+ * configured via {@link SecurityDemoProperties.PrivateServer}, see {@link HmacKeyRing}.
+ * <p>
+ * Tokens signed with ES256 or EdDSA are verified with the public keys of the file
+ * configured as {@code public-key-file}, see {@link PublicKeyRing}, so that resource
+ * servers do not need to share a secret with the authorization server.
+ * <p>
+ * The decoders are created once and verify signatures with pooled {@code Mac} and
+ * {@code Signature} instances. The roles of the tokens can be taken from a token claim,
+ * see {@link #getAuthorityPolicy()}.
  */
-public class PrivateServerJwtTokenIssuer implements SupportedJwtTokenIssuer {
+public class PrivateServerJwtTokenIssuer implements SupportedJwtTokenIssuer, Closeable {
     // Use only for sample. In production scenarios it is better to
     // either use public key of the authorization server or jwkSetUri
     public static final SecretKey PRIVATE_AUTH_SERVER_KEY = new SecretKeySpec(randomKeyValue(), JwsAlgorithms.HS256);
     public static final String ISSUER_NAME = "https://private-server.local";
 
+    private final HmacKeyRing keyRing;
+    private final PublicKeyRing publicKeyRing;
+    private final AuthorityPolicy authorityPolicy;
+    private final JwtDecoder jwtDecoder;
+
+    public PrivateServerJwtTokenIssuer() {
+        this(new SecurityDemoProperties.PrivateServer());
+    }
+
+    public PrivateServerJwtTokenIssuer(SecurityDemoProperties.PrivateServer properties) {
+        this.authorityPolicy = AuthorityPolicy.of(properties.getAuthoritySource(), properties.getRolesClaim());
+        this.keyRing = new HmacKeyRing(PRIVATE_AUTH_SERVER_KEY, properties.getKeyFile(),
+                properties.getKeyReloadInterval());
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        if (properties.getPublicKeyFile() == null) {
+            this.publicKeyRing = null;
+            jwtProcessor.setJWSKeySelector(keyRing);
+            jwtProcessor.setJWSVerifierFactory(keyRing);
+        } else {
+            this.publicKeyRing = new PublicKeyRing(properties.getPublicKeyFile(), properties.getKeyReloadInterval());
+            KeyRings keyRings = new KeyRings(keyRing, publicKeyRing);
+            jwtProcessor.setJWSKeySelector(keyRings);
+            jwtProcessor.setJWSVerifierFactory(keyRings);
+        }
+        // Spring Security validates the claims set on its own, see NimbusJwtDecoder.SecretKeyJwtDecoderBuilder
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+        NimbusJwtDecoder nimbusJwtDecoder = new NimbusJwtDecoder(jwtProcessor);
+        // As the default validator, but reporting expired tokens apart
+        nimbusJwtDecoder.setJwtValidator(new JwtExpiryValidator());
+        this.jwtDecoder = nimbusJwtDecoder;
+    }
+
     @Override
     public String getIssuerName() {
         return ISSUER_NAME;
@@ -27,8 +86,24 @@ public class PrivateServerJwtTokenIssuer implements SupportedJwtTokenIssuer {
 
     @Override
     public JwtDecoder getJwtDecoder() {
-        return NimbusJwtDecoder.withSecretKey(PRIVATE_AUTH_SERVER_KEY)
-                .build();
+        return jwtDecoder;
+    }
+
+    /**
+     * As configured via {@link SecurityDemoProperties.PrivateServer}. Applies to the
+     * servlet mode only.
+     */
+    @Override
+    public AuthorityPolicy getAuthorityPolicy() {
+        return authorityPolicy;
+    }
+
+    @Override
+    public void close() {
+        keyRing.close();
+        if (publicKeyRing != null) {
+            publicKeyRing.close();
+        }
     }
 
     private static byte[] randomKeyValue() {
@@ -41,4 +116,45 @@ public class PrivateServerJwtTokenIssuer implements SupportedJwtTokenIssuer {
         }
         return result;
     }
+
+    /**
+     * Selects the key ring by the algorithm family of the token, so that HMAC tokens
+     * never reach the public keys and vice versa.
+     */
+    private static final class KeyRings implements JWSKeySelector<SecurityContext>, JWSVerifierFactory {
+
+        private final HmacKeyRing hmacKeys;
+        private final PublicKeyRing publicKeys;
+
+        KeyRings(HmacKeyRing hmacKeys, PublicKeyRing publicKeys) {
+            this.hmacKeys = hmacKeys;
+            this.publicKeys = publicKeys;
+        }
+
+        @Override
+        public List<? extends Key> selectJWSKeys(JWSHeader header, SecurityContext context) {
+            if (JWSAlgorithm.Family.HMAC_SHA.contains(header.getAlgorithm())) {
+                return hmacKeys.selectJWSKeys(header, context);
+            }
+            return publicKeys.selectJWSKeys(header, context);
+        }
+
+        @Override
+        public JWSVerifier createJWSVerifier(JWSHeader header, Key key) throws JOSEException {
+            if (JWSAlgorithm.Family.HMAC_SHA.contains(header.getAlgorithm())) {
+                return hmacKeys.createJWSVerifier(header, key);
+            }
+            return publicKeys.createJWSVerifier(header, key);
+        }
+
+        @Override
+        public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+            return hmacKeys.supportedJWSAlgorithms();
+        }
+
+        @Override
+        public JCAContext getJCAContext() {
+            return hmacKeys.getJCAContext();
+        }
+    }
 }
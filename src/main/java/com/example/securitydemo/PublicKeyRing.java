@@ -0,0 +1,200 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.JWSVerifierFactory;
+import com.nimbusds.jose.proc.SecurityContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Set of public keys of the private authorization server, for tokens signed with ES256
+ * or EdDSA instead of a shared HMAC key.
+ * <p>
+ * Tokens select their key by the <em>kid</em> header. The keys are read from a JWK set
+ * file with keys of type {@code EC} on curve {@code P-256} and of type {@code OKP} on
+ * curve {@code Ed25519}, which is checked for modifications periodically and swapped
+ * in atomically, same as the {@link HmacKeyRing}.
+ * <p>
+ * It serves as both the {@link JWSKeySelector} and the {@link JWSVerifierFactory} of
+ * a Nimbus JWT processor. Every key comes with a {@link PooledSignatureVerifier}
+ * created once when the key is loaded, so verifying a token neither creates a verifier
+ * nor converts the key.
+ */
+public class PublicKeyRing implements JWSKeySelector<SecurityContext>, JWSVerifierFactory, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PublicKeyRing.class);
+
+    // DER prefix of the X.509 encoding of an Ed25519 public key, followed by its 32 bytes
+    private static final byte[] ED25519_X509_PREFIX = HexFormat.of().parseHex("302a300506032b6570032100");
+
+    private final Path keyFile;
+    private final FileReloader reloader;
+    private final JWSVerifierFactory fallbackVerifierFactory = new DefaultJWSVerifierFactory();
+
+    private volatile Map<String, List<Key>> keysById = Collections.emptyMap();
+
+    /**
+     * @param keyFile JWK set file with the public keys selected by <em>kid</em>
+     */
+    public PublicKeyRing(Path keyFile, Duration reloadInterval) {
+        this.keyFile = keyFile;
+        try {
+            this.reloader = new FileReloader(keyFile, "public keys", reloadInterval, this::load);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to load public keys " + keyFile, e);
+        }
+    }
+
+    @Override
+    public List<? extends Key> selectJWSKeys(JWSHeader header, SecurityContext context) {
+        String keyId = header.getKeyID();
+        if (keyId == null) {
+            return Collections.emptyList();
+        }
+        List<Key> keys = keysById.getOrDefault(keyId, Collections.emptyList());
+        // A key is only ever used with the algorithm of its type
+        if (!keys.isEmpty() && !((VerifyingKey) keys.get(0)).algorithm.equals(header.getAlgorithm())) {
+            return Collections.emptyList();
+        }
+        return keys;
+    }
+
+    @Override
+    public JWSVerifier createJWSVerifier(JWSHeader header, Key key) throws JOSEException {
+        if (key instanceof VerifyingKey) {
+            return ((VerifyingKey) key).verifier;
+        }
+        return fallbackVerifierFactory.createJWSVerifier(header, key);
+    }
+
+    @Override
+    public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+        return fallbackVerifierFactory.supportedJWSAlgorithms();
+    }
+
+    @Override
+    public JCAContext getJCAContext() {
+        return fallbackVerifierFactory.getJCAContext();
+    }
+
+    /**
+     * Reads the current version of the key file and makes its keys visible to new
+     * verifications.
+     */
+    public void reload() throws IOException {
+        reloader.reload();
+    }
+
+    @Override
+    public void close() {
+        reloader.close();
+    }
+
+    private void load() throws IOException {
+        Map<String, List<Key>> keys = new HashMap<>();
+        for (JWK jwk : loadJwkSet().getKeys()) {
+            VerifyingKey key = null;
+            if (jwk.getKeyID() != null) {
+                try {
+                    key = toVerifyingKey(jwk);
+                } catch (JOSEException | GeneralSecurityException | IllegalArgumentException e) {
+                    log.warn("Ignoring key {} of {}, unable to convert it", jwk.getKeyID(), keyFile, e);
+                    continue;
+                }
+            }
+            if (key == null) {
+                log.warn("Ignoring key {} of {}, only public keys of type EC on P-256 or OKP on Ed25519 with kid "
+                        + "are supported", jwk.getKeyID(), keyFile);
+                continue;
+            }
+            keys.put(jwk.getKeyID(), Collections.singletonList(key));
+        }
+        keysById = keys;
+    }
+
+    private JWKSet loadJwkSet() throws IOException {
+        try {
+            return JWKSet.load(keyFile.toFile());
+        } catch (ParseException e) {
+            throw new IOException("Malformed JWK set " + keyFile, e);
+        }
+    }
+
+    private static VerifyingKey toVerifyingKey(JWK jwk) throws JOSEException, GeneralSecurityException {
+        if (jwk instanceof ECKey && Curve.P_256.equals(((ECKey) jwk).getCurve())) {
+            return new VerifyingKey(((ECKey) jwk).toECPublicKey(), JWSAlgorithm.ES256);
+        }
+        if (jwk instanceof OctetKeyPair && Curve.Ed25519.equals(((OctetKeyPair) jwk).getCurve())) {
+            byte[] x = ((OctetKeyPair) jwk).getDecodedX();
+            byte[] encoded = new byte[ED25519_X509_PREFIX.length + x.length];
+            System.arraycopy(ED25519_X509_PREFIX, 0, encoded, 0, ED25519_X509_PREFIX.length);
+            System.arraycopy(x, 0, encoded, ED25519_X509_PREFIX.length, x.length);
+            PublicKey publicKey = KeyFactory.getInstance("Ed25519").generatePublic(new X509EncodedKeySpec(encoded));
+            return new VerifyingKey(publicKey, JWSAlgorithm.EdDSA);
+        }
+        return null;
+    }
+
+    /**
+     * Key which carries its own verifier, so that the verifier does not have to be
+     * looked up for every token.
+     */
+    private static final class VerifyingKey implements PublicKey {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PublicKey key;
+        private final JWSAlgorithm algorithm;
+        private final transient PooledSignatureVerifier verifier;
+
+        VerifyingKey(PublicKey key, JWSAlgorithm algorithm) {
+            this.key = key;
+            this.algorithm = algorithm;
+            this.verifier = new PooledSignatureVerifier(key, algorithm);
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return key.getAlgorithm();
+        }
+
+        @Override
+        public String getFormat() {
+            return key.getFormat();
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return key.getEncoded();
+        }
+    }
+}
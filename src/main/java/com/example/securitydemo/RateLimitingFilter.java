@@ -0,0 +1,83 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Enforces request budgets of the authenticated token's subject and issuer, so that a
+ * few clients with valid tokens cannot saturate the application. Requests over budget
+ * are rejected with 429 Too Many Requests and a Retry-After header.
+ * <p>
+ * It is meant to run right after the {@code BearerTokenAuthenticationFilter}, before
+ * any controller. Requests without a bearer token authentication pass unchecked. The
+ * subject budget is checked first, so that the requests of a client exceeding its own
+ * budget do not count against its issuer. A request rejected by the issuer budget
+ * gives its subject permit back, so that it counts against neither. Subjects are
+ * tracked per issuer, which avoids composing a key per request.
+ */
+public class RateLimitingFilter extends OncePerRequestFilter {
+
+    private final SecurityDemoProperties.RateLimit properties;
+    private final GcraRateLimiter issuerLimiter;
+    private final Map<String, GcraRateLimiter> subjectLimiters = new ConcurrentHashMap<>();
+
+    public RateLimitingFilter(SecurityDemoProperties.RateLimit properties) {
+        this.properties = properties;
+        this.issuerLimiter = properties.getIssuerRequestsPerSecond() > 0
+                ? new GcraRateLimiter(properties.getIssuerRequestsPerSecond(), properties.getIssuerBurst())
+                : null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String issuer = JwtAuthentications.issuerOf(authentication);
+        if (issuer != null) {
+            long now = System.nanoTime();
+            long wait = 0;
+            String subject = JwtAuthentications.subjectOf(authentication);
+            GcraRateLimiter subjectLimiter = null;
+            if (subject != null && properties.getSubjectRequestsPerSecond() > 0) {
+                subjectLimiter = subjectLimiter(issuer);
+                wait = subjectLimiter.tryAcquire(subject, now);
+            }
+            if (wait == 0 && issuerLimiter != null) {
+                wait = issuerLimiter.tryAcquire(issuer, now);
+                if (wait > 0 && subjectLimiter != null) {
+                    subjectLimiter.release(subject);
+                }
+            }
+            if (wait > 0) {
+                response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                // Whole seconds, rounded up so that a retry is not rejected again
+                long second = TimeUnit.SECONDS.toNanos(1);
+                response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString((wait + second - 1) / second));
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    private GcraRateLimiter subjectLimiter(String issuer) {
+        GcraRateLimiter limiter = subjectLimiters.get(issuer);
+        if (limiter == null) {
+            limiter = subjectLimiters.computeIfAbsent(issuer, i -> new GcraRateLimiter(
+                    properties.getSubjectRequestsPerSecond(), properties.getSubjectBurst()));
+        }
+        return limiter;
+    }
+}
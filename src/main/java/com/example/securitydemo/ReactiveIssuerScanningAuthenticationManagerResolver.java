@@ -0,0 +1,67 @@
+package com.example.securitydemo;
+
+import reactor.core.publisher.Mono;
+
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManagerResolver;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.server.resource.BearerTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
+import org.springframework.util.Assert;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Reactive counterpart of {@link IssuerScanningAuthenticationManagerResolver} that
+ * routes bearer tokens to issuer-specific {@link ReactiveAuthenticationManager}s.
+ * The issuer is found with the {@link JwtIssuerScanner}, which does not block.
+ */
+public class ReactiveIssuerScanningAuthenticationManagerResolver
+        implements ReactiveAuthenticationManagerResolver<ServerWebExchange> {
+
+    private final Mono<ReactiveAuthenticationManager> authenticationManager;
+
+    public ReactiveIssuerScanningAuthenticationManagerResolver(
+            ReactiveAuthenticationManagerResolver<String> issuerAuthenticationManagerResolver) {
+        Assert.notNull(issuerAuthenticationManagerResolver, "issuerAuthenticationManagerResolver cannot be null");
+        this.authenticationManager = Mono.just(new ResolvingAuthenticationManager(issuerAuthenticationManagerResolver));
+    }
+
+    @Override
+    public Mono<ReactiveAuthenticationManager> resolve(ServerWebExchange exchange) {
+        return authenticationManager;
+    }
+
+    private static class ResolvingAuthenticationManager implements ReactiveAuthenticationManager {
+
+        private final ReactiveAuthenticationManagerResolver<String> issuerAuthenticationManagerResolver;
+
+        ResolvingAuthenticationManager(ReactiveAuthenticationManagerResolver<String> issuerAuthenticationManagerResolver) {
+            this.issuerAuthenticationManagerResolver = issuerAuthenticationManagerResolver;
+        }
+
+        @Override
+        public Mono<Authentication> authenticate(Authentication authentication) {
+            Assert.isTrue(authentication instanceof BearerTokenAuthenticationToken,
+                    "Authentication must be of type BearerTokenAuthenticationToken");
+            String token = ((BearerTokenAuthenticationToken) authentication).getToken();
+            return Mono.fromCallable(() -> issuerOf(token))
+                    .flatMap(issuerAuthenticationManagerResolver::resolve)
+                    .switchIfEmpty(Mono.error(() -> new InvalidBearerTokenException("Invalid issuer")))
+                    .flatMap(authenticationManager -> authenticationManager.authenticate(authentication));
+        }
+
+        private static String issuerOf(String token) {
+            String issuer;
+            try {
+                issuer = JwtIssuerScanner.issuerOf(token);
+            } catch (BadJwtException e) {
+                throw new InvalidBearerTokenException(e.getMessage(), e);
+            }
+            if (issuer == null) {
+                throw new InvalidBearerTokenException("Missing issuer");
+            }
+            return issuer;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.securitydemo;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManagerResolver;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtReactiveAuthenticationManager;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverter;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Reactive counterpart of {@link DefaultSecurityConfiguration} that is used when the
+ * application runs on WebFlux, e.g. with {@code spring.main.web-application-type=reactive}.
+ * <p>
+ * It enforces the same authorization rules, verifies tokens with the decoders of the
+ * same {@link JwtDecoderFactory} and grants authorities by the same {@link AuthorityPolicy}
+ * of each issuer, but neither token validation nor role lookups hold
+ * event loop threads: both run on the scheduler for blocking work, since decoders may
+ * have to fetch a JWK set and {@link SubjectRolesResolver}s may query a backend.
+ */
+@Configuration
+@EnableWebFluxSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSecurityConfiguration {
+
+    @Bean
+    public SecurityWebFilterChain reactiveSecurityChain(ServerHttpSecurity http, SecurityDemoProperties properties) {
+        return http
+                // Same authorization rules as in DefaultSecurityConfiguration
+                .authorizeExchange(exchange -> exchange
+                        .pathMatchers("/public").permitAll()
+                        .pathMatchers("/admin/**").hasRole("ADMIN")
+                        .pathMatchers("/tokens/validate").hasRole(properties.getBatchValidation().getRole())
+                        .anyExchange().authenticated()
+                )
+                .oauth2ResourceServer(oauth -> oauth
+                        .authenticationManagerResolver(reactiveAuthenticationManagerResolver(null, null, null, null,
+                                null))
+                )
+                .build();
+    }
+
+    /**
+     * Non-blocking view of the {@link SubjectRolesResolver} shared with the servlet mode.
+     * Lookups run on virtual threads in the virtual-thread mode and on the bounded
+     * elastic scheduler otherwise.
+     */
+    @Bean
+    public ReactiveSubjectRolesResolver reactiveSubjectRolesResolver(SubjectRolesResolver roleProvider,
+            SecurityDemoProperties properties, BlockingExecutors blockingExecutors) {
+        return ReactiveSubjectRolesResolver.fromBlocking(
+                CachingSubjectRolesResolver.decorate(roleProvider, properties.getRolesCache(), blockingExecutors),
+                blockingScheduler(blockingExecutors));
+    }
+
+    @Bean
+    public ReactiveSubjectBasedGrantedAuthoritiesConverter reactiveGrantedAuthoritiesConverter(
+            ReactiveSubjectRolesResolver roleProvider) {
+        return new ReactiveSubjectBasedGrantedAuthoritiesConverter(roleProvider);
+    }
+
+    @Bean
+    public ReactiveJwtAuthenticationConverter reactiveJwtAuthenticationConverter(
+            ReactiveSubjectBasedGrantedAuthoritiesConverter grantedAuthoritiesConverter) {
+        ReactiveJwtAuthenticationConverter jwtAuthenticationConverter = new ReactiveJwtAuthenticationConverter();
+        jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(grantedAuthoritiesConverter);
+        return jwtAuthenticationConverter;
+    }
+
+    /**
+     * Reactive counterpart of {@link DefaultSecurityConfiguration#authenticationManagerResolver}
+     * which maps issuers to the decoders of all available {@link SupportedJwtTokenIssuer}.
+     * Like there, the decoders are created by the {@link JwtDecoderFactory}, and issuers
+     * with their own {@link AuthorityPolicy} get their own authentication converter.
+     */
+    @Bean
+    public ReactiveAuthenticationManagerResolver<ServerWebExchange> reactiveAuthenticationManagerResolver(
+            Collection<SupportedJwtTokenIssuer> supportedIssuers,
+            ReactiveJwtAuthenticationConverter jwtAuthenticationConverter,
+            ReactiveSubjectBasedGrantedAuthoritiesConverter grantedAuthoritiesConverter,
+            JwtDecoderFactory jwtDecoderFactory, BlockingExecutors blockingExecutors) {
+        Map<String, ReactiveAuthenticationManager> authenticationManagers = new ConcurrentHashMap<>();
+        Scheduler scheduler = blockingScheduler(blockingExecutors);
+
+        for (SupportedJwtTokenIssuer issuer : supportedIssuers) {
+            ReactiveJwtDecoder decoder = jwtDecoderFactory.createReactiveJwtDecoder(issuer, scheduler);
+            JwtReactiveAuthenticationManager authenticationManager = new JwtReactiveAuthenticationManager(decoder);
+            authenticationManager.setJwtAuthenticationConverter(createAuthenticationConverterForIssuer(issuer,
+                    jwtAuthenticationConverter, grantedAuthoritiesConverter));
+            authenticationManagers.put(issuer.getIssuerName(), authenticationManager);
+        }
+
+        return new ReactiveIssuerScanningAuthenticationManagerResolver(
+                issuer -> Mono.justOrEmpty(authenticationManagers.get(issuer)));
+    }
+
+    private static ReactiveJwtAuthenticationConverter createAuthenticationConverterForIssuer(
+            SupportedJwtTokenIssuer issuer, ReactiveJwtAuthenticationConverter jwtAuthenticationConverter,
+            ReactiveSubjectBasedGrantedAuthoritiesConverter grantedAuthoritiesConverter) {
+        AuthorityPolicy authorityPolicy = issuer.getAuthorityPolicy();
+        if (authorityPolicy.getSource() == AuthorityPolicy.Source.RESOLVER) {
+            return jwtAuthenticationConverter;
+        }
+        ReactiveJwtAuthenticationConverter converter = new ReactiveJwtAuthenticationConverter();
+        converter.setJwtGrantedAuthoritiesConverter(grantedAuthoritiesConverter.withAuthorityPolicy(authorityPolicy));
+        return converter;
+    }
+
+    /**
+     * Virtual threads in the virtual-thread mode and the bounded elastic scheduler otherwise.
+     */
+    private static Scheduler blockingScheduler(BlockingExecutors blockingExecutors) {
+        return blockingExecutors.isVirtualThreads()
+                ? Schedulers.fromExecutor(blockingExecutors.executor())
+                : Schedulers.boundedElastic();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.securitydemo;
+
+import java.util.Collection;
+
+import reactor.core.publisher.Flux;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Reactive counterpart of {@link SubjectBasedGrantedAuthoritiesConverter} that
+ * resolves the roles with a {@link ReactiveSubjectRolesResolver}. It follows the
+ * {@link AuthorityPolicy} of an issuer the same way, so tokens whose roles come from a
+ * claim only do not wait for a lookup.
+ */
+public class ReactiveSubjectBasedGrantedAuthoritiesConverter implements Converter<Jwt, Flux<GrantedAuthority>> {
+
+    private final ReactiveSubjectRolesResolver roleProvider;
+    private final GrantedAuthorityRegistry authorityRegistry;
+
+    public ReactiveSubjectBasedGrantedAuthoritiesConverter(ReactiveSubjectRolesResolver roleProvider) {
+        this(roleProvider, new GrantedAuthorityRegistry());
+    }
+
+    public ReactiveSubjectBasedGrantedAuthoritiesConverter(ReactiveSubjectRolesResolver roleProvider,
+            GrantedAuthorityRegistry authorityRegistry) {
+        this.roleProvider = roleProvider;
+        this.authorityRegistry = authorityRegistry;
+    }
+
+    /**
+     * Returns a converter that follows the given policy, while sharing the resolver and
+     * the authority registry of this one.
+     */
+    public Converter<Jwt, Flux<GrantedAuthority>> withAuthorityPolicy(AuthorityPolicy policy) {
+        if (policy.getSource() == AuthorityPolicy.Source.RESOLVER) {
+            return this;
+        }
+        return jwt -> convert(jwt, policy);
+    }
+
+    @Override
+    public Flux<GrantedAuthority> convert(Jwt source) {
+        return roleProvider.getRolesBySubject(source.getSubject())
+                .flatMapIterable(authorityRegistry::getAuthorities);
+    }
+
+    public Flux<GrantedAuthority> convert(Jwt source, AuthorityPolicy policy) {
+        switch (policy.getSource()) {
+            case CLAIM:
+                return Flux.fromIterable(authorityRegistry.getAuthorities(
+                        SubjectBasedGrantedAuthoritiesConverter.claimRoles(source, policy.getClaimName())));
+            case MERGED:
+                Collection<String> claimRoles = SubjectBasedGrantedAuthoritiesConverter.claimRoles(source,
+                        policy.getClaimName());
+                return roleProvider.getRolesBySubject(source.getSubject())
+                        .flatMapIterable(resolvedRoles -> authorityRegistry.getAuthorities(
+                                SubjectBasedGrantedAuthoritiesConverter.mergeRoles(resolvedRoles, claimRoles)));
+            default:
+                return convert(source);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.securitydemo;
+
+import java.util.Collection;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Non-blocking variant of {@link SubjectRolesResolver} used when the application
+ * runs on WebFlux.
+ */
+public interface ReactiveSubjectRolesResolver {
+
+    /**
+     * Returns collection of roles that should be granted to a token with the
+     * specified subject.
+     */
+    Mono<Collection<String>> getRolesBySubject(String subject);
+
+    /**
+     * Adapts a blocking {@link SubjectRolesResolver} by running its lookups on the
+     * given scheduler, so that they never occupy event loop threads.
+     */
+    static ReactiveSubjectRolesResolver fromBlocking(SubjectRolesResolver resolver, Scheduler scheduler) {
+        return subject -> Mono.fromCallable(() -> resolver.getRolesBySubject(subject))
+                .subscribeOn(scheduler);
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.RemoteKeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.DefaultResourceRetriever;
+import com.nimbusds.jose.util.ResourceRetriever;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link JWKSource} that keeps the JWK set of a remote issuer up to date in the
+ * background instead of fetching it on the request path.
+ * <p>
+ * Creating the source does not block: the first fetch starts asynchronously and
+ * the set is refreshed on a fixed schedule afterwards. Once a set has been loaded
+ * it is served even when later refreshes fail (stale-while-revalidate).
+ * <p>
+ * A token signed with an unknown key triggers an immediate refresh, since it may
+ * be the first token signed after a key rotation. All concurrent callers share the
+ * same fetch, and unknown keys do not trigger another fetch until the cooldown
+ * elapses, so a burst of such tokens cannot overload the issuer.
+ * <p>
+ * Optionally, every successfully fetched set is persisted to a snapshot file. On
+ * the next start the snapshot is served right away while the set is revalidated
+ * in the background, so a new instance can verify tokens before its first fetch
+ * completes. Only the public parts of the keys are persisted.
+ */
+public class RefreshingJwkSetSource implements JWKSource<SecurityContext>, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshingJwkSetSource.class);
+
+    // Same limit as used by the Nimbus RemoteJWKSet
+    private static final int JWK_SET_SIZE_LIMIT = 50 * 1024;
+
+    private final URL jwkSetUrl;
+    private final Path snapshotFile;
+    private final ResourceRetriever resourceRetriever;
+    private final Duration fetchTimeout;
+    private final long unknownKeyCooldownNanos;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicReference<CompletableFuture<JWKSet>> inFlightFetch = new AtomicReference<>();
+    private final AtomicLong fetchCount = new AtomicLong();
+    private final AtomicLong fetchFailureCount = new AtomicLong();
+    private final AtomicLong fetchTimeNanos = new AtomicLong();
+
+    private volatile JWKSet jwkSet;
+    private volatile long lastFetchStartedNanos;
+
+    public RefreshingJwkSetSource(URL jwkSetUrl, Duration refreshInterval, Duration unknownKeyCooldown,
+            Duration fetchTimeout) {
+        this(jwkSetUrl, refreshInterval, unknownKeyCooldown, fetchTimeout, null);
+    }
+
+    /**
+     * @param snapshotFile file to persist the last fetched JWK set to, or {@code null}
+     * to keep it in memory only
+     */
+    public RefreshingJwkSetSource(URL jwkSetUrl, Duration refreshInterval, Duration unknownKeyCooldown,
+            Duration fetchTimeout, Path snapshotFile) {
+        this(jwkSetUrl, refreshInterval, unknownKeyCooldown, fetchTimeout, snapshotFile, BlockingExecutors.platform());
+    }
+
+    /**
+     * @param snapshotFile file to persist the last fetched JWK set to, or {@code null}
+     * to keep it in memory only
+     * @param blockingExecutors provider of the thread that fetches the JWK set
+     */
+    public RefreshingJwkSetSource(URL jwkSetUrl, Duration refreshInterval, Duration unknownKeyCooldown,
+            Duration fetchTimeout, Path snapshotFile, BlockingExecutors blockingExecutors) {
+        this(jwkSetUrl, refreshInterval, unknownKeyCooldown, fetchTimeout, snapshotFile, blockingExecutors,
+                new DefaultResourceRetriever((int) fetchTimeout.toMillis(), (int) fetchTimeout.toMillis(),
+                        JWK_SET_SIZE_LIMIT));
+    }
+
+    RefreshingJwkSetSource(URL jwkSetUrl, Duration refreshInterval, Duration unknownKeyCooldown,
+            Duration fetchTimeout, Path snapshotFile, BlockingExecutors blockingExecutors,
+            ResourceRetriever resourceRetriever) {
+        this.jwkSetUrl = jwkSetUrl;
+        this.snapshotFile = snapshotFile;
+        this.jwkSet = loadSnapshot();
+        this.fetchTimeout = fetchTimeout;
+        this.unknownKeyCooldownNanos = unknownKeyCooldown.toNanos();
+        this.resourceRetriever = resourceRetriever;
+        this.lastFetchStartedNanos = System.nanoTime() - unknownKeyCooldownNanos;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                blockingExecutors.threadFactory("jwks-refresh-" + jwkSetUrl.getHost()));
+        this.scheduler.scheduleWithFixedDelay(this::scheduledRefresh,
+                0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+        JWKSet current = jwkSet;
+        if (current != null) {
+            List<JWK> matches = jwkSelector.select(current);
+            if (!matches.isEmpty()) {
+                return matches;
+            }
+            // Joining a fetch which is already in progress does not add any load to the issuer
+            if (inFlightFetch.get() == null && !unknownKeyCooldownElapsed()) {
+                return matches;
+            }
+        }
+        return jwkSelector.select(awaitFetch(current));
+    }
+
+    /**
+     * Starts fetching the JWK set in the background unless a fetch is already
+     * in progress, in which case the pending fetch is returned.
+     */
+    public CompletableFuture<JWKSet> refresh() {
+        while (true) {
+            CompletableFuture<JWKSet> fetch = inFlightFetch.get();
+            if (fetch != null) {
+                return fetch;
+            }
+            CompletableFuture<JWKSet> newFetch = new CompletableFuture<>();
+            if (inFlightFetch.compareAndSet(null, newFetch)) {
+                lastFetchStartedNanos = System.nanoTime();
+                scheduler.execute(() -> fetchInto(newFetch));
+                return newFetch;
+            }
+        }
+    }
+
+    /**
+     * Number of fetches of the JWK set, including the failed ones.
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    public long getFetchFailureCount() {
+        return fetchFailureCount.get();
+    }
+
+    /**
+     * Total time spent fetching the JWK set.
+     */
+    public long getFetchTimeNanos() {
+        return fetchTimeNanos.get();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void scheduledRefresh() {
+        CompletableFuture<JWKSet> fetch = new CompletableFuture<>();
+        if (inFlightFetch.compareAndSet(null, fetch)) {
+            lastFetchStartedNanos = System.nanoTime();
+            fetchInto(fetch);
+        }
+    }
+
+    private void fetchInto(CompletableFuture<JWKSet> fetch) {
+        long start = System.nanoTime();
+        try {
+            JWKSet fetched = JWKSet.parse(resourceRetriever.retrieveResource(jwkSetUrl).getContent());
+            JWKSet previous = jwkSet;
+            if (previous == null || !previous.toJSONObject().equals(fetched.toJSONObject())) {
+                saveSnapshot(fetched);
+            }
+            jwkSet = fetched;
+            fetch.complete(fetched);
+        } catch (IOException | ParseException | RuntimeException e) {
+            log.warn("Unable to refresh JWK set from {}", jwkSetUrl, e);
+            fetchFailureCount.incrementAndGet();
+            fetch.completeExceptionally(e);
+        } finally {
+            fetchTimeNanos.addAndGet(System.nanoTime() - start);
+            fetchCount.incrementAndGet();
+            inFlightFetch.compareAndSet(fetch, null);
+        }
+    }
+
+    private JWKSet loadSnapshot() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return null;
+        }
+        try {
+            return JWKSet.load(snapshotFile.toFile());
+        } catch (IOException | ParseException e) {
+            log.warn("Ignoring unreadable JWK set snapshot {}", snapshotFile, e);
+            return null;
+        }
+    }
+
+    private void saveSnapshot(JWKSet fetched) {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            Path directory = snapshotFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+            // JWKSet#toString() includes only the public parameters of the keys
+            Files.write(temporary, fetched.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Unable to save JWK set snapshot {}", snapshotFile, e);
+        }
+    }
+
+    private boolean unknownKeyCooldownElapsed() {
+        return System.nanoTime() - lastFetchStartedNanos >= unknownKeyCooldownNanos;
+    }
+
+    /**
+     * Waits for a fetch performed on the scheduler thread, so that request threads
+     * never make the HTTP call themselves. Falls back to the stale set if the
+     * fetch fails.
+     */
+    private JWKSet awaitFetch(JWKSet stale) throws KeySourceException {
+        CompletableFuture<JWKSet> fetch = refresh();
+        try {
+            return fetch.get(fetchTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteKeySourceException("Interrupted while fetching JWK set from " + jwkSetUrl, e);
+        } catch (ExecutionException | TimeoutException e) {
+            if (stale != null) {
+                return stale;
+            }
+            throw new RemoteKeySourceException("Couldn't retrieve remote JWK set: " + e.getMessage(), e);
+        }
+    }
+}
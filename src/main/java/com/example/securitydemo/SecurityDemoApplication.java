@@ -2,8 +2,10 @@ package com.example.securitydemo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 @SpringBootApplication
+@EnableConfigurationProperties(SecurityDemoProperties.class)
 public class SecurityDemoApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,909 @@
+package com.example.securitydemo;
+
+import java.net.URL;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Tuning options of the security pipeline. All of them are optional and
+ * default to the plain behavior of Spring Security.
+ */
+@ConfigurationProperties("security-demo")
+public class SecurityDemoProperties {
+
+    private final JwtCache jwtCache = new JwtCache();
+
+    private final RolesCache rolesCache = new RolesCache();
+
+    private final RolesIndex rolesIndex = new RolesIndex();
+
+    private final Jwks jwks = new Jwks();
+
+    private final VirtualThreads virtualThreads = new VirtualThreads();
+
+    private final Metrics metrics = new Metrics();
+
+    private final BatchValidation batchValidation = new BatchValidation();
+
+    private final PrivateServer privateServer = new PrivateServer();
+
+    private final Issuers issuers = new Issuers();
+
+    private final CompactAuthentication compactAuthentication = new CompactAuthentication();
+
+    private final Revocation revocation = new Revocation();
+
+    private final RateLimit rateLimit = new RateLimit();
+
+    private final Audit audit = new Audit();
+
+    private final ServerTiming serverTiming = new ServerTiming();
+
+    private final ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+
+    public JwtCache getJwtCache() {
+        return jwtCache;
+    }
+
+    public RolesCache getRolesCache() {
+        return rolesCache;
+    }
+
+    public RolesIndex getRolesIndex() {
+        return rolesIndex;
+    }
+
+    public Jwks getJwks() {
+        return jwks;
+    }
+
+    public VirtualThreads getVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public BatchValidation getBatchValidation() {
+        return batchValidation;
+    }
+
+    public PrivateServer getPrivateServer() {
+        return privateServer;
+    }
+
+    public Issuers getIssuers() {
+        return issuers;
+    }
+
+    public CompactAuthentication getCompactAuthentication() {
+        return compactAuthentication;
+    }
+
+    public Revocation getRevocation() {
+        return revocation;
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    public Audit getAudit() {
+        return audit;
+    }
+
+    public ServerTiming getServerTiming() {
+        return serverTiming;
+    }
+
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Settings of the per-issuer cache of already verified tokens,
+     * see {@link CachingJwtDecoder}.
+     */
+    public static class JwtCache {
+
+        /**
+         * Maximum number of verified tokens kept per issuer. Zero disables the cache.
+         */
+        private long maximumSize = 0;
+
+        /**
+         * Upper bound for how long a verified token stays in the cache. Tokens are
+         * always evicted no later than their expiry time.
+         */
+        private Duration maximumTtl = Duration.ofMinutes(5);
+
+        public boolean isEnabled() {
+            return maximumSize > 0;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getMaximumTtl() {
+            return maximumTtl;
+        }
+
+        public void setMaximumTtl(Duration maximumTtl) {
+            this.maximumTtl = maximumTtl;
+        }
+    }
+
+    /**
+     * Settings of the cache in front of the {@link SubjectRolesResolver},
+     * see {@link CachingSubjectRolesResolver}.
+     */
+    public static class RolesCache {
+
+        /**
+         * Maximum number of subjects kept in the cache. Zero disables the cache.
+         */
+        private long maximumSize = 0;
+
+        /**
+         * How long the roles of a known subject stay in the cache.
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+
+        /**
+         * Age after which an accessed entry is reloaded in the background.
+         * Should be shorter than the TTL.
+         */
+        private Duration refreshAfter = Duration.ofMinutes(1);
+
+        /**
+         * How long a subject without roles stays in the cache.
+         */
+        private Duration negativeTtl = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return maximumSize > 0;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Duration getRefreshAfter() {
+            return refreshAfter;
+        }
+
+        public void setRefreshAfter(Duration refreshAfter) {
+            this.refreshAfter = refreshAfter;
+        }
+
+        public Duration getNegativeTtl() {
+            return negativeTtl;
+        }
+
+        public void setNegativeTtl(Duration negativeTtl) {
+            this.negativeTtl = negativeTtl;
+        }
+    }
+
+    /**
+     * Settings of the memory-mapped subject roles index,
+     * see {@link MappedSubjectRolesResolver}.
+     */
+    public static class RolesIndex {
+
+        /**
+         * Index file produced by {@link SubjectRolesIndexBuilder}. When set, it replaces
+         * the in-memory demo resolver.
+         */
+        private Path file;
+
+        /**
+         * How often the index file is checked for a new version.
+         */
+        private Duration reloadInterval = Duration.ofSeconds(30);
+
+        public Path getFile() {
+            return file;
+        }
+
+        public void setFile(Path file) {
+            this.file = file;
+        }
+
+        public Duration getReloadInterval() {
+            return reloadInterval;
+        }
+
+        public void setReloadInterval(Duration reloadInterval) {
+            this.reloadInterval = reloadInterval;
+        }
+    }
+
+    /**
+     * Settings of the JWK sets fetched from remote issuers,
+     * see {@link RefreshingJwkSetSource}.
+     */
+    public static class Jwks {
+
+        /**
+         * How often the JWK set is refreshed in the background.
+         */
+        private Duration refreshInterval = Duration.ofMinutes(5);
+
+        /**
+         * Minimum time between two fetches triggered by tokens signed with an unknown key.
+         */
+        private Duration unknownKeyCooldown = Duration.ofSeconds(30);
+
+        /**
+         * Connect and read timeout of a fetch. Also bounds how long a request waits
+         * for a fetch triggered by an unknown key.
+         */
+        private Duration fetchTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Directory to persist the last fetched JWK set of every issuer to, so that
+         * it is available right after a restart. Disabled when not set.
+         */
+        private Path snapshotDirectory;
+
+        /**
+         * Returns the snapshot file for the JWK set at the given URL, or {@code null}
+         * if snapshots are disabled.
+         */
+        public Path snapshotFileFor(URL jwkSetUrl) {
+            if (snapshotDirectory == null) {
+                return null;
+            }
+            String name = (jwkSetUrl.getHost() + jwkSetUrl.getPath()).replaceAll("[^A-Za-z0-9.-]", "_");
+            return snapshotDirectory.resolve(name);
+        }
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+
+        public Duration getUnknownKeyCooldown() {
+            return unknownKeyCooldown;
+        }
+
+        public void setUnknownKeyCooldown(Duration unknownKeyCooldown) {
+            this.unknownKeyCooldown = unknownKeyCooldown;
+        }
+
+        public Duration getFetchTimeout() {
+            return fetchTimeout;
+        }
+
+        public void setFetchTimeout(Duration fetchTimeout) {
+            this.fetchTimeout = fetchTimeout;
+        }
+
+        public Path getSnapshotDirectory() {
+            return snapshotDirectory;
+        }
+
+        public void setSnapshotDirectory(Path snapshotDirectory) {
+            this.snapshotDirectory = snapshotDirectory;
+        }
+    }
+
+    /**
+     * Settings of the virtual-thread mode, see {@link VirtualThreadsConfiguration}.
+     */
+    public static class VirtualThreads {
+
+        /**
+         * Whether requests and blocking background work run on virtual threads.
+         */
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Settings of the authentication pipeline metrics, see {@link SecurityPipelineMetrics}.
+     */
+    public static class Metrics {
+
+        /**
+         * Whether the stages of the authentication pipeline are timed and failures are
+         * counted. JWK set fetches are reported regardless.
+         */
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Settings of the batch token validation, see {@link BatchTokenValidator}.
+     */
+    public static class BatchValidation {
+
+        /**
+         * Number of threads verifying tokens, shared by all batches.
+         */
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Maximum number of tokens in a batch. Further tokens are not validated.
+         */
+        private int maximumTokens = 10_000;
+
+        /**
+         * Maximum length of a token in characters. Longer tokens are not validated.
+         */
+        private int maximumTokenLength = 8192;
+
+        /**
+         * Role required to validate token batches, without the ROLE_ prefix, e.g. the
+         * role of the gateway sidecar.
+         */
+        private String role = "TOKEN_VALIDATOR";
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getMaximumTokens() {
+            return maximumTokens;
+        }
+
+        public void setMaximumTokens(int maximumTokens) {
+            this.maximumTokens = maximumTokens;
+        }
+
+        public int getMaximumTokenLength() {
+            return maximumTokenLength;
+        }
+
+        public void setMaximumTokenLength(int maximumTokenLength) {
+            this.maximumTokenLength = maximumTokenLength;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public void setRole(String role) {
+            this.role = role;
+        }
+    }
+
+    /**
+     * Settings of the keys of the private authorization server, see {@link PrivateServerJwtTokenIssuer}.
+     */
+    public static class PrivateServer {
+
+        /**
+         * JWK set file with HMAC keys of type oct, selected by the kid header of the
+         * tokens. Tokens without kid are always verified with the built-in key.
+         */
+        private Path keyFile;
+
+        /**
+         * JWK set file with public keys of type EC on P-256 and OKP on Ed25519, selected
+         * by the kid header of tokens signed with ES256 or EdDSA. Without it, only HMAC
+         * tokens are accepted.
+         */
+        private Path publicKeyFile;
+
+        /**
+         * How often the key files are checked for modifications.
+         */
+        private Duration keyReloadInterval = Duration.ofSeconds(30);
+
+        /**
+         * Where the roles of the tokens come from: the subject roles resolver, the
+         * roles claim of the token, or both merged.
+         */
+        private AuthorityPolicy.Source authoritySource = AuthorityPolicy.Source.RESOLVER;
+
+        /**
+         * Claim with the role names, used unless the authority source is the resolver.
+         */
+        private String rolesClaim = "roles";
+
+        public Path getKeyFile() {
+            return keyFile;
+        }
+
+        public void setKeyFile(Path keyFile) {
+            this.keyFile = keyFile;
+        }
+
+        public Path getPublicKeyFile() {
+            return publicKeyFile;
+        }
+
+        public void setPublicKeyFile(Path publicKeyFile) {
+            this.publicKeyFile = publicKeyFile;
+        }
+
+        public Duration getKeyReloadInterval() {
+            return keyReloadInterval;
+        }
+
+        public void setKeyReloadInterval(Duration keyReloadInterval) {
+            this.keyReloadInterval = keyReloadInterval;
+        }
+
+        public AuthorityPolicy.Source getAuthoritySource() {
+            return authoritySource;
+        }
+
+        public void setAuthoritySource(AuthorityPolicy.Source authoritySource) {
+            this.authoritySource = authoritySource;
+        }
+
+        public String getRolesClaim() {
+            return rolesClaim;
+        }
+
+        public void setRolesClaim(String rolesClaim) {
+            this.rolesClaim = rolesClaim;
+        }
+    }
+
+    /**
+     * Settings of the issuers added at runtime, see {@link JwtIssuerRegistry} and
+     * {@link TenantIssuersFile}.
+     */
+    public static class Issuers {
+
+        /**
+         * File with one tenant issuer per line, as the issuer name followed by a comma
+         * and the JWK set URI. Lines starting with # are ignored.
+         */
+        private Path file;
+
+        /**
+         * How often the file is checked for modifications.
+         */
+        private Duration reloadInterval = Duration.ofSeconds(30);
+
+        /**
+         * Time without tokens after which the decoder of a tenant issuer is released.
+         */
+        private Duration idleTimeout = Duration.ofMinutes(30);
+
+        public Path getFile() {
+            return file;
+        }
+
+        public void setFile(Path file) {
+            this.file = file;
+        }
+
+        public Duration getReloadInterval() {
+            return reloadInterval;
+        }
+
+        public void setReloadInterval(Duration reloadInterval) {
+            this.reloadInterval = reloadInterval;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+    }
+
+    /**
+     * Settings of the authentication produced for verified tokens,
+     * see {@link CompactJwtAuthenticationToken}.
+     */
+    public static class CompactAuthentication {
+
+        /**
+         * Whether authenticated requests carry a compact authentication instead of the
+         * full token. Applies to the servlet mode only.
+         */
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Settings of the token revocation check, see {@link TokenRevocationList}.
+     */
+    public static class Revocation {
+
+        /**
+         * Whether verified tokens are checked against the revoked token ids and subjects,
+         * and revocations are accepted at {@code /admin/revocations}.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Append-only file with one revocation per line, as jti:<issuer> <token id> or
+         * sub:<issuer> <revoked at in epoch seconds> <subject>. Without it, revocations
+         * are kept in memory only.
+         */
+        private Path file;
+
+        /**
+         * How often the file is checked for appended revocations.
+         */
+        private Duration reloadInterval = Duration.ofSeconds(5);
+
+        /**
+         * Initial capacity of the Bloom filter, it is rebuilt with twice the capacity
+         * when exceeded.
+         */
+        private int expectedRevocations = 100_000;
+
+        /**
+         * False positive rate of the Bloom filter at its capacity. False positives are
+         * only a cost, they are ruled out by the exact lookup.
+         */
+        private double falsePositiveRate = 0.01;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public void setFile(Path file) {
+            this.file = file;
+        }
+
+        public Duration getReloadInterval() {
+            return reloadInterval;
+        }
+
+        public void setReloadInterval(Duration reloadInterval) {
+            this.reloadInterval = reloadInterval;
+        }
+
+        public int getExpectedRevocations() {
+            return expectedRevocations;
+        }
+
+        public void setExpectedRevocations(int expectedRevocations) {
+            this.expectedRevocations = expectedRevocations;
+        }
+
+        public double getFalsePositiveRate() {
+            return falsePositiveRate;
+        }
+
+        public void setFalsePositiveRate(double falsePositiveRate) {
+            this.falsePositiveRate = falsePositiveRate;
+        }
+    }
+
+    /**
+     * Settings of the request budgets of authenticated clients, see {@link RateLimitingFilter}.
+     */
+    public static class RateLimit {
+
+        /**
+         * Whether requests with bearer tokens are rate limited. Applies to the servlet mode only.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Sustained requests per second of each subject, 0 to not limit subjects.
+         */
+        private double subjectRequestsPerSecond = 50;
+
+        /**
+         * Requests of a subject admitted at once after a pause.
+         */
+        private int subjectBurst = 100;
+
+        /**
+         * Sustained requests per second of all subjects of an issuer together, 0 to not
+         * limit issuers.
+         */
+        private double issuerRequestsPerSecond = 0;
+
+        /**
+         * Requests of an issuer admitted at once after a pause.
+         */
+        private int issuerBurst = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getSubjectRequestsPerSecond() {
+            return subjectRequestsPerSecond;
+        }
+
+        public void setSubjectRequestsPerSecond(double subjectRequestsPerSecond) {
+            this.subjectRequestsPerSecond = subjectRequestsPerSecond;
+        }
+
+        public int getSubjectBurst() {
+            return subjectBurst;
+        }
+
+        public void setSubjectBurst(int subjectBurst) {
+            this.subjectBurst = subjectBurst;
+        }
+
+        public double getIssuerRequestsPerSecond() {
+            return issuerRequestsPerSecond;
+        }
+
+        public void setIssuerRequestsPerSecond(double issuerRequestsPerSecond) {
+            this.issuerRequestsPerSecond = issuerRequestsPerSecond;
+        }
+
+        public int getIssuerBurst() {
+            return issuerBurst;
+        }
+
+        public void setIssuerBurst(int issuerBurst) {
+            this.issuerBurst = issuerBurst;
+        }
+    }
+
+    /**
+     * Settings of the audit trail of authentication decisions, see {@link AuthenticationAuditLog}.
+     */
+    public static class Audit {
+
+        /**
+         * Whether authentication decisions are written to the audit log. Applies to the
+         * servlet mode only.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of audit.log and its rolled over predecessors.
+         */
+        private Path directory = Path.of("audit");
+
+        /**
+         * Number of events buffered for the writer, rounded up to a power of two.
+         */
+        private int bufferSize = 65536;
+
+        /**
+         * What happens to events when the buffer is full.
+         */
+        private AuthenticationAuditLog.OverflowPolicy overflowPolicy = AuthenticationAuditLog.OverflowPolicy.DROP;
+
+        /**
+         * Maximum number of events written between two flushes.
+         */
+        private int batchSize = 1024;
+
+        /**
+         * Size after which audit.log is rolled over.
+         */
+        private DataSize maximumFileSize = DataSize.ofMegabytes(100);
+
+        /**
+         * Number of rolled over files kept.
+         */
+        private int maximumHistory = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(Path directory) {
+            this.directory = directory;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public AuthenticationAuditLog.OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(AuthenticationAuditLog.OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public DataSize getMaximumFileSize() {
+            return maximumFileSize;
+        }
+
+        public void setMaximumFileSize(DataSize maximumFileSize) {
+            this.maximumFileSize = maximumFileSize;
+        }
+
+        public int getMaximumHistory() {
+            return maximumHistory;
+        }
+
+        public void setMaximumHistory(int maximumHistory) {
+            this.maximumHistory = maximumHistory;
+        }
+    }
+
+    /**
+     * Settings of the per-request breakdown of the security pipeline, see {@link ServerTimingRecorder}.
+     */
+    public static class ServerTiming {
+
+        /**
+         * Whether sampled requests get a Server-Timing header. Applies to the servlet
+         * mode only.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Fraction of the requests whose stages are timed, between 0 and 1.
+         */
+        private double sampleRate = 0.01;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getSampleRate() {
+            return sampleRate;
+        }
+
+        public void setSampleRate(double sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+    }
+
+    /**
+     * Settings of the per-issuer limit of concurrent authentications, see
+     * {@link AdaptiveConcurrencyLimiter}.
+     */
+    public static class ConcurrencyLimit {
+
+        /**
+         * Whether authentications over the limit of their issuer are rejected with 503.
+         * Applies to the servlet mode only.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Limit of each issuer until enough latencies have been observed.
+         */
+        private int initialLimit = 20;
+
+        /**
+         * Lower bound of the limit of each issuer.
+         */
+        private int minimumLimit = 4;
+
+        /**
+         * Upper bound of the limit of each issuer.
+         */
+        private int maximumLimit = 200;
+
+        /**
+         * Ratio of the recent to the long-term latency up to which the limit is not
+         * reduced.
+         */
+        private double latencyTolerance = 1.5;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinimumLimit() {
+            return minimumLimit;
+        }
+
+        public void setMinimumLimit(int minimumLimit) {
+            this.minimumLimit = minimumLimit;
+        }
+
+        public int getMaximumLimit() {
+            return maximumLimit;
+        }
+
+        public void setMaximumLimit(int maximumLimit) {
+            this.maximumLimit = maximumLimit;
+        }
+
+        public double getLatencyTolerance() {
+            return latencyTolerance;
+        }
+
+        public void setLatencyTolerance(double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+        }
+    }
+}
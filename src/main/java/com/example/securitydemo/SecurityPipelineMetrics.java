@@ -0,0 +1,284 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.search.Search;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenResolver;
+import org.springframework.security.oauth2.server.resource.web.DefaultBearerTokenResolver;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+
+/**
+ * Instruments the stages of the servlet authentication pipeline with Micrometer meters
+ * tagged by the issuer name:
+ * <ul>
+ * <li>{@code security.jwt.decode} - decoding and verification of the token</li>
+ * <li>{@code cache.*} with {@code cache=security.jwt.cache} - hits, misses and evictions of the
+ * {@link CachingJwtDecoder}</li>
+ * <li>{@code security.authorities.conversion} - mapping of the token to granted authorities</li>
+ * <li>{@code security.roles.resolution} - the {@link SubjectRolesResolver} lookup part of it</li>
+ * <li>{@code security.authentication.failures} - rejected tokens, additionally tagged by reason</li>
+ * </ul>
+ * The timers are registered upfront, so recording a request does not allocate. The meters
+ * of an issuer are removed again by {@link #removeIssuer} once a tenant issuer is released,
+ * so that the registry does not keep the tenants that come and go. When the metrics are
+ * disabled, all methods return the given components as they are and the pipeline runs
+ * without any instrumentation.
+ * <p>
+ * JWK set refreshes are reported by {@link MockOidcJwtTokenIssuer} on its own, since they
+ * do not happen on the request path.
+ */
+public class SecurityPipelineMetrics {
+
+    static final String UNKNOWN_ISSUER = "unknown";
+
+    private static final String JWT_CACHE = "security.jwt.cache";
+    private static final Set<String> PIPELINE_METERS = Set.of("security.jwt.decode",
+            "security.authorities.conversion", "security.roles.resolution", "security.authentication.failures");
+
+    private final MeterRegistry registry;
+    private final Set<String> issuers = ConcurrentHashMap.newKeySet();
+    private final BearerTokenResolver bearerTokenResolver = new DefaultBearerTokenResolver();
+
+    /**
+     * @param registry registry to report to, or {@code null} to disable the metrics
+     */
+    public SecurityPipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public boolean isEnabled() {
+        return registry != null;
+    }
+
+    /**
+     * Times the decoding of tokens of the given issuer. Only issuers registered this way
+     * are used as tag values of the failure counter, other ones are reported as unknown.
+     */
+    public JwtDecoder timeDecoding(String issuer, JwtDecoder decoder) {
+        if (!isEnabled()) {
+            return decoder;
+        }
+        issuers.add(issuer);
+        return new TimedJwtDecoder(decoder, Timer.builder("security.jwt.decode")
+                .description("Time to decode and verify a bearer token")
+                .tag("issuer", issuer)
+                .register(registry));
+    }
+
+    /**
+     * Reports the statistics of the token cache of the given issuer.
+     */
+    public void monitorJwtCache(String issuer, CachingJwtDecoder decoder) {
+        if (!isEnabled()) {
+            return;
+        }
+        CaffeineCacheMetrics.monitor(registry, decoder.cache(), JWT_CACHE, "issuer", issuer);
+    }
+
+    /**
+     * Removes the meters of the given issuer, whose failures are reported as unknown
+     * until its decoding is timed again.
+     */
+    public void removeIssuer(String issuer) {
+        if (!isEnabled()) {
+            return;
+        }
+        issuers.remove(issuer);
+        for (Meter meter : Search.in(registry).tag("issuer", issuer).meters()) {
+            Meter.Id id = meter.getId();
+            // Leaves the meters of other components tagged by issuer, e.g. the JWK set refreshes
+            if (PIPELINE_METERS.contains(id.getName()) || JWT_CACHE.equals(id.getTag("cache"))) {
+                registry.remove(meter);
+            }
+        }
+    }
+
+    public Converter<Jwt, Collection<GrantedAuthority>> timeAuthorityConversion(String issuer,
+            Converter<Jwt, Collection<GrantedAuthority>> converter) {
+        if (!isEnabled()) {
+            return converter;
+        }
+        return new TimedAuthoritiesConverter(converter, Timer.builder("security.authorities.conversion")
+                .description("Time to map a verified token to granted authorities")
+                .tag("issuer", issuer)
+                .register(registry));
+    }
+
+    public SubjectRolesResolver timeRoleResolution(String issuer, SubjectRolesResolver resolver) {
+        if (!isEnabled()) {
+            return resolver;
+        }
+        return new TimedSubjectRolesResolver(resolver, Timer.builder("security.roles.resolution")
+                .description("Time to look up the roles of a token subject")
+                .tag("issuer", issuer)
+                .register(registry));
+    }
+
+    /**
+     * Counts the failures handled by the given handler. The counting happens only on the
+     * failure path, where the token is scanned once more to find out the issuer.
+     */
+    public AuthenticationFailureHandler countFailures(AuthenticationFailureHandler failureHandler) {
+        if (!isEnabled()) {
+            return failureHandler;
+        }
+        return new CountingFailureHandler(failureHandler);
+    }
+
+    private void countFailure(HttpServletRequest request, AuthenticationException exception) {
+        String issuer = UNKNOWN_ISSUER;
+        String reason;
+        try {
+            String token = bearerTokenResolver.resolve(request);
+            String tokenIssuer = token == null ? null : JwtIssuerScanner.issuerOf(token);
+            if (tokenIssuer == null) {
+                reason = "missing_issuer";
+            } else if (!issuers.contains(tokenIssuer)) {
+                reason = "unknown_issuer";
+            } else {
+                issuer = tokenIssuer;
+                reason = reasonOf(exception);
+            }
+        } catch (BadJwtException | OAuth2AuthenticationException e) {
+            reason = "malformed";
+        }
+        Counter.builder("security.authentication.failures")
+                .description("Bearer tokens rejected by the authentication pipeline")
+                .tag("issuer", issuer)
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * See JwtAuthenticationProvider for how the decoder exceptions are translated.
+     */
+    private static String reasonOf(AuthenticationException exception) {
+        if (exception instanceof ConcurrencyLimitExceededException) {
+            return "concurrency_limited";
+        }
+        if (exception instanceof AuthenticationServiceException) {
+            return "service_error";
+        }
+        Throwable cause = exception.getCause();
+        if (cause instanceof JwtValidationException) {
+            for (OAuth2Error error : ((JwtValidationException) cause).getErrors()) {
+                if (JwtExpiryValidator.EXPIRED_TOKEN.equals(error.getErrorCode())) {
+                    return "expired";
+                }
+                if (TokenRevocationList.REVOKED_TOKEN.equals(error.getErrorCode())) {
+                    return "revoked";
+                }
+            }
+            return "invalid_claims";
+        }
+        if (cause instanceof BadJwtException) {
+            return "invalid_token";
+        }
+        return "other";
+    }
+
+    private static class TimedJwtDecoder implements JwtDecoder {
+
+        private final JwtDecoder delegate;
+        private final Timer timer;
+
+        TimedJwtDecoder(JwtDecoder delegate, Timer timer) {
+            this.delegate = delegate;
+            this.timer = timer;
+        }
+
+        @Override
+        public Jwt decode(String token) throws JwtException {
+            long start = System.nanoTime();
+            try {
+                return delegate.decode(token);
+            } finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static class TimedAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
+
+        private final Converter<Jwt, Collection<GrantedAuthority>> delegate;
+        private final Timer timer;
+
+        TimedAuthoritiesConverter(Converter<Jwt, Collection<GrantedAuthority>> delegate, Timer timer) {
+            this.delegate = delegate;
+            this.timer = timer;
+        }
+
+        @Override
+        public Collection<GrantedAuthority> convert(Jwt source) {
+            long start = System.nanoTime();
+            try {
+                return delegate.convert(source);
+            } finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static class TimedSubjectRolesResolver implements SubjectRolesResolver {
+
+        private final SubjectRolesResolver delegate;
+        private final Timer timer;
+
+        TimedSubjectRolesResolver(SubjectRolesResolver delegate, Timer timer) {
+            this.delegate = delegate;
+            this.timer = timer;
+        }
+
+        @Override
+        public Collection<String> getRolesBySubject(String subject) {
+            long start = System.nanoTime();
+            try {
+                return delegate.getRolesBySubject(subject);
+            } finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private class CountingFailureHandler implements AuthenticationFailureHandler {
+
+        private final AuthenticationFailureHandler delegate;
+
+        CountingFailureHandler(AuthenticationFailureHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onAuthenticationFailure(HttpServletRequest request, HttpServletResponse response,
+                AuthenticationException exception) throws IOException, ServletException {
+            countFailure(request, exception);
+            delegate.onAuthenticationFailure(request, response, exception);
+        }
+    }
+}
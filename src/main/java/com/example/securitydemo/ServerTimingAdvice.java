@@ -0,0 +1,41 @@
+package com.example.securitydemo;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Adds the {@code Server-Timing} header recorded by the {@link ServerTimingRecorder} to
+ * the responses of the {@link AppController}. The header is added right before the body
+ * is written, when authentication and authorization are complete and the response is
+ * not committed yet.
+ */
+@ControllerAdvice(assignableTypes = AppController.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty("security-demo.server-timing.enabled")
+public class ServerTimingAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+            Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+            ServerHttpResponse response) {
+        String serverTiming = ServerTimingRecorder.headerValue(
+                ((ServletServerHttpRequest) request).getServletRequest());
+        if (serverTiming != null) {
+            response.getHeaders().add(ServerTimingRecorder.HEADER_NAME, serverTiming);
+        }
+        return body;
+    }
+}
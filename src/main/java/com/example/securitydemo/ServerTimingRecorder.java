@@ -0,0 +1,298 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationManagerResolver;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenResolver;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Times the stages of the servlet security pipeline of individual requests, so that
+ * a slow request can be explained by its own {@code Server-Timing} header:
+ * <ul>
+ * <li>{@code extract} - extraction of the bearer token from the request</li>
+ * <li>{@code issuer} - scanning the token for its issuer and finding its authentication manager</li>
+ * <li>{@code verify} - signature verification, absent when the token was cached</li>
+ * <li>{@code roles} - the {@link SubjectRolesResolver} lookup</li>
+ * <li>{@code authorities} - mapping of the token to granted authorities, including the lookup</li>
+ * <li>{@code authz} - the authorization decision</li>
+ * </ul>
+ * Only a sample of the requests is timed, selected by the {@link #createFilter() filter}.
+ * The durations are accumulated in a recording created for each sampled request and
+ * kept in its attributes, where the decorated components find it through the
+ * {@link RequestContextHolder}. Requests outside the sample neither allocate nor look
+ * for a recording while no request is sampled: the decorated components only read a
+ * shared counter on top of their own work. When disabled, all methods return the given
+ * components as they are, same as {@link SecurityPipelineMetrics}.
+ */
+public class ServerTimingRecorder {
+
+    public static final String HEADER_NAME = "Server-Timing";
+
+    private static final String[] STAGE_NAMES = {"extract", "issuer", "verify", "roles", "authorities", "authz"};
+    private static final int EXTRACT = 0;
+    private static final int ISSUER = 1;
+    private static final int VERIFY = 2;
+    private static final int ROLES = 3;
+    private static final int AUTHORITIES = 4;
+    private static final int AUTHZ = 5;
+
+    private static final String RECORDING_ATTRIBUTE = ServerTimingRecorder.class.getName() + ".RECORDING";
+
+    private final boolean enabled;
+    private final double sampleRate;
+    // Number of requests being timed, so that the others do not even look for a recording
+    private final AtomicInteger activeRecordings = new AtomicInteger();
+
+    /**
+     * @param sampleRate fraction of the requests to time, between 0 and 1
+     */
+    public ServerTimingRecorder(boolean enabled, double sampleRate) {
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the {@code Server-Timing} header value of the request, or {@code null} if
+     * the request was not sampled.
+     */
+    public static String headerValue(HttpServletRequest request) {
+        Recording recording = (Recording) request.getAttribute(RECORDING_ATTRIBUTE);
+        return recording != null ? recording.format() : null;
+    }
+
+    /**
+     * Filter which decides whether a request is timed. It is meant to run before the
+     * {@code BearerTokenAuthenticationFilter}, and the request is timed until it
+     * leaves the filter.
+     */
+    public Filter createFilter() {
+        return new SamplingFilter();
+    }
+
+    public BearerTokenResolver timeExtraction(BearerTokenResolver resolver) {
+        if (!enabled) {
+            return resolver;
+        }
+        return request -> {
+            Recording recording = activeRecording();
+            if (recording == null) {
+                return resolver.resolve(request);
+            }
+            long start = System.nanoTime();
+            try {
+                return resolver.resolve(request);
+            } finally {
+                recording.add(EXTRACT, start);
+            }
+        };
+    }
+
+    /**
+     * Marks the start of the issuer resolution, to be applied to the authentication
+     * manager which routes the tokens to their issuers.
+     */
+    public AuthenticationManager startIssuerResolution(AuthenticationManager authenticationManager) {
+        if (!enabled) {
+            return authenticationManager;
+        }
+        return authentication -> {
+            Recording recording = activeRecording();
+            if (recording != null) {
+                recording.issuerResolutionStart = System.nanoTime();
+            }
+            return authenticationManager.authenticate(authentication);
+        };
+    }
+
+    /**
+     * Marks the end of the issuer resolution, once the routing authentication manager
+     * found the authentication manager of the issuer.
+     */
+    public AuthenticationManagerResolver<String> endIssuerResolution(AuthenticationManagerResolver<String> resolver) {
+        if (!enabled) {
+            return resolver;
+        }
+        return issuer -> {
+            AuthenticationManager authenticationManager = resolver.resolve(issuer);
+            Recording recording = activeRecording();
+            if (recording != null && recording.issuerResolutionStart != 0) {
+                recording.add(ISSUER, recording.issuerResolutionStart);
+                recording.issuerResolutionStart = 0;
+            }
+            return authenticationManager;
+        };
+    }
+
+    public JwtDecoder timeVerification(JwtDecoder decoder) {
+        if (!enabled) {
+            return decoder;
+        }
+        return token -> {
+            Recording recording = activeRecording();
+            if (recording == null) {
+                return decoder.decode(token);
+            }
+            long start = System.nanoTime();
+            try {
+                return decoder.decode(token);
+            } finally {
+                recording.add(VERIFY, start);
+            }
+        };
+    }
+
+    public SubjectRolesResolver timeRoleResolution(SubjectRolesResolver resolver) {
+        if (!enabled) {
+            return resolver;
+        }
+        return subject -> {
+            Recording recording = activeRecording();
+            if (recording == null) {
+                return resolver.getRolesBySubject(subject);
+            }
+            long start = System.nanoTime();
+            try {
+                return resolver.getRolesBySubject(subject);
+            } finally {
+                recording.add(ROLES, start);
+            }
+        };
+    }
+
+    public Converter<Jwt, Collection<GrantedAuthority>> timeAuthorityConversion(
+            Converter<Jwt, Collection<GrantedAuthority>> converter) {
+        if (!enabled) {
+            return converter;
+        }
+        return jwt -> {
+            Recording recording = activeRecording();
+            if (recording == null) {
+                return converter.convert(jwt);
+            }
+            long start = System.nanoTime();
+            try {
+                return converter.convert(jwt);
+            } finally {
+                recording.add(AUTHORITIES, start);
+            }
+        };
+    }
+
+    public <T> AuthorizationManager<T> timeAuthorization(AuthorizationManager<T> authorizationManager) {
+        if (!enabled) {
+            return authorizationManager;
+        }
+        return (authentication, object) -> {
+            Recording recording = activeRecording();
+            if (recording == null) {
+                return authorizationManager.check(authentication, object);
+            }
+            long start = System.nanoTime();
+            try {
+                return authorizationManager.check(authentication, object);
+            } finally {
+                recording.add(AUTHZ, start);
+            }
+        };
+    }
+
+    private Recording activeRecording() {
+        if (activeRecordings.get() == 0) {
+            return null;
+        }
+        // Null outside of requests, e.g. on the threads of the BatchTokenValidator
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null
+                ? (Recording) attributes.getAttribute(RECORDING_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                : null;
+    }
+
+    private class SamplingFilter extends OncePerRequestFilter {
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                throws ServletException, IOException {
+            if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+                chain.doFilter(request, response);
+                return;
+            }
+            request.setAttribute(RECORDING_ATTRIBUTE, new Recording());
+            activeRecordings.incrementAndGet();
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                activeRecordings.decrementAndGet();
+                request.removeAttribute(RECORDING_ATTRIBUTE);
+            }
+        }
+    }
+
+    /**
+     * Durations of the stages of a sampled request.
+     */
+    private static final class Recording {
+
+        private final long[] durations = new long[STAGE_NAMES.length];
+        private int recordedStages;
+        private long issuerResolutionStart;
+
+        void add(int stage, long start) {
+            long duration = System.nanoTime() - start;
+            if ((recordedStages & (1 << stage)) == 0) {
+                recordedStages |= 1 << stage;
+                durations[stage] = duration;
+            } else {
+                durations[stage] += duration;
+            }
+        }
+
+        /**
+         * Formats the durations in milliseconds with microsecond precision, e.g.
+         * {@code verify;dur=0.215}.
+         */
+        String format() {
+            StringBuilder header = new StringBuilder(128);
+            for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+                if ((recordedStages & (1 << stage)) == 0) {
+                    continue;
+                }
+                if (header.length() > 0) {
+                    header.append(", ");
+                }
+                long micros = durations[stage] / 1000;
+                long fraction = micros % 1000;
+                header.append(STAGE_NAMES[stage]).append(";dur=").append(micros / 1000).append('.');
+                if (fraction < 100) {
+                    header.append('0');
+                }
+                if (fraction < 10) {
+                    header.append('0');
+                }
+                header.append(fraction);
+            }
+            return header.toString();
+        }
+    }
+}
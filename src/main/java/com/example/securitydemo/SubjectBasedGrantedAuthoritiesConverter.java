@@ -1,11 +1,16 @@
 package com.example.securitydemo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.stream.Collectors;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
 
 /**
@@ -13,7 +18,12 @@ import org.springframework.security.oauth2.jwt.Jwt;
  * based on the subject claim of the provided JWT token.
  * <p>
  * The implementation relies on {@link SubjectRolesResolver} to perform the actual
- * mapping of the roles.
+ * mapping of the roles. The resulting authorities are shared between requests via
+ * {@link GrantedAuthorityRegistry}, so the conversion does not allocate.
+ * <p>
+ * Issuers can take the roles from a token claim instead, or in addition, see
+ * {@link AuthorityPolicy}. Roles of an array claim map onto the interned authorities
+ * without a lookup by subject and without copying the claim.
  * <p>
  * For more details see
  * <a href="https://docs.spring.io/spring-security/site/docs/5.5.3/reference/html5/#oauth2resourceserver-jwt-authorization">Spring Security documentation</a>
@@ -21,18 +31,100 @@ import org.springframework.security.oauth2.jwt.Jwt;
 public class SubjectBasedGrantedAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
 
     private final SubjectRolesResolver roleProvider;
+    private final GrantedAuthorityRegistry authorityRegistry;
 
     public SubjectBasedGrantedAuthoritiesConverter(SubjectRolesResolver roleProvider) {
+        this(roleProvider, new GrantedAuthorityRegistry());
+    }
+
+    public SubjectBasedGrantedAuthoritiesConverter(SubjectRolesResolver roleProvider,
+            GrantedAuthorityRegistry authorityRegistry) {
         this.roleProvider = roleProvider;
+        this.authorityRegistry = authorityRegistry;
+    }
+
+    /**
+     * Returns a converter that looks the roles up through the decorated resolver of this
+     * one, while sharing the same authority registry.
+     */
+    public SubjectBasedGrantedAuthoritiesConverter withRoleProvider(UnaryOperator<SubjectRolesResolver> decorator) {
+        return new SubjectBasedGrantedAuthoritiesConverter(decorator.apply(roleProvider), authorityRegistry);
+    }
+
+    /**
+     * Returns a converter that follows the given policy, while sharing the resolver and
+     * the authority registry of this one.
+     */
+    public Converter<Jwt, Collection<GrantedAuthority>> withAuthorityPolicy(AuthorityPolicy policy) {
+        if (policy.getSource() == AuthorityPolicy.Source.RESOLVER) {
+            return this;
+        }
+        return jwt -> convert(jwt, policy);
     }
 
     @Override
     public Collection<GrantedAuthority> convert(Jwt source) {
-        return roleProvider.getRolesBySubject(source.getSubject())
-                .stream()
-                // Match default Spring Security expectations about role names used in authorization rules
-                .map(role -> "ROLE_" + role)
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toSet());
+        return authorityRegistry.getAuthorities(roleProvider.getRolesBySubject(source.getSubject()));
+    }
+
+    public Collection<GrantedAuthority> convert(Jwt source, AuthorityPolicy policy) {
+        switch (policy.getSource()) {
+            case CLAIM:
+                return authorityRegistry.getAuthorities(claimRoles(source, policy.getClaimName()));
+            case MERGED:
+                return authorityRegistry.getAuthorities(mergeRoles(roleProvider.getRolesBySubject(source.getSubject()),
+                        claimRoles(source, policy.getClaimName())));
+            default:
+                return convert(source);
+        }
+    }
+
+    /**
+     * Returns the union of the roles, one of them as is if the other one is empty.
+     */
+    static Collection<String> mergeRoles(Collection<String> resolvedRoles, Collection<String> claimRoles) {
+        if (claimRoles.isEmpty()) {
+            return resolvedRoles;
+        }
+        if (resolvedRoles.isEmpty()) {
+            return claimRoles;
+        }
+        Set<String> roles = new LinkedHashSet<>(resolvedRoles);
+        roles.addAll(claimRoles);
+        return roles;
+    }
+
+    /**
+     * Returns the roles of the claim, as is if it is an array of strings as parsed
+     * from the token.
+     */
+    @SuppressWarnings("unchecked")
+    static Collection<String> claimRoles(Jwt jwt, String claimName) {
+        Object claim = jwt.getClaims().get(claimName);
+        if (claim instanceof String) {
+            String roles = ((String) claim).trim();
+            return roles.isEmpty() ? Collections.emptyList() : Arrays.asList(roles.split("\\s+"));
+        }
+        if (!(claim instanceof Collection)) {
+            return Collections.emptyList();
+        }
+        Collection<?> values = (Collection<?>) claim;
+        boolean strings = true;
+        for (Object value : values) {
+            if (!(value instanceof String)) {
+                strings = false;
+                break;
+            }
+        }
+        if (strings && (values instanceof List || values instanceof Set)) {
+            return (Collection<String>) values;
+        }
+        List<String> roles = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value != null) {
+                roles.add(value.toString());
+            }
+        }
+        return roles;
     }
 }
@@ -0,0 +1,254 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Immutable subject-to-roles index memory-mapped from a file produced by
+ * {@link SubjectRolesIndexBuilder}.
+ * <p>
+ * The file consists of three parts:
+ * <ul>
+ *     <li>a header with the role names and the distinct role sets encoded as bitmasks
+ *     (bit {@code i} stands for the role {@code i});</li>
+ *     <li>an open-addressing hash table of 16-byte slots, each holding the 64-bit hash of
+ *     a subject, and the offset of the subject in the data section packed with the
+ *     index of its role set;</li>
+ *     <li>the data section with length-prefixed UTF-8 encoded subjects.</li>
+ * </ul>
+ * A single mapping is limited to 2 GB, which the hash table alone exceeds at about
+ * 33 million subjects. Both sections are therefore mapped as segments of equal size,
+ * recorded in the header. Slots never cross a segment boundary, and the builder pads
+ * the data section so that subjects do not either, so every read stays within one
+ * segment.
+ * <p>
+ * Subjects are compared in full after a hash match, so hash collisions cannot grant
+ * roles of one subject to another. Lookups do not allocate: they read the mapped
+ * memory directly and return collections precomputed per role set.
+ */
+final class SubjectRolesIndex {
+
+    static final int MAGIC = 0x53524958; // "SRIX"
+    static final int VERSION = 2;
+    static final int SLOT_SIZE = 16;
+    static final int MAXIMUM_ROLES = Long.SIZE;
+    static final int MAXIMUM_SLOTS = 1 << 30;
+
+    // Segments of 1 GB by default, the smallest segments must still hold the longest subject
+    static final int DEFAULT_SEGMENT_SHIFT = 30;
+    static final int MINIMUM_SEGMENT_SHIFT = 5;
+
+    // The data offset takes the upper bits of a slot's second long, the role set index the lower ones
+    static final int ROLE_SET_BITS = 24;
+    static final int MAXIMUM_ROLE_SETS = 1 << ROLE_SET_BITS;
+    static final long MAXIMUM_DATA_LENGTH = 1L << (Long.SIZE - ROLE_SET_BITS);
+
+    private final Collection<String>[] roleSets;
+    private final ByteBuffer[] slots;
+    private final ByteBuffer[] data;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final int slotMask;
+
+    private SubjectRolesIndex(Collection<String>[] roleSets, ByteBuffer[] slots, ByteBuffer[] data,
+            int segmentShift, int slotCount) {
+        this.roleSets = roleSets;
+        this.slots = slots;
+        this.data = data;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1 << segmentShift) - 1;
+        this.slotMask = slotCount - 1;
+    }
+
+    /**
+     * Maps the index file into memory. The file must not be modified afterwards; new
+     * versions should replace it atomically (e.g. by renaming) so that the existing
+     * mapping remains valid.
+     */
+    static SubjectRolesIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), Integer.MAX_VALUE));
+            if (header.remaining() < 8 || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Unsupported subject roles index format: " + file);
+            }
+            try {
+                return open(file, channel, header);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Corrupted subject roles index: " + file, e);
+            }
+        }
+    }
+
+    private static SubjectRolesIndex open(Path file, FileChannel channel, ByteBuffer header) throws IOException {
+        int segmentShift = header.getInt();
+        int roleCount = header.getInt();
+        if (segmentShift < MINIMUM_SEGMENT_SHIFT || segmentShift > DEFAULT_SEGMENT_SHIFT
+                || roleCount < 0 || roleCount > MAXIMUM_ROLES) {
+            throw new IOException("Corrupted subject roles index: " + file);
+        }
+        String[] roles = new String[roleCount];
+        for (int i = 0; i < roles.length; i++) {
+            byte[] name = new byte[header.getShort() & 0xFFFF];
+            header.get(name);
+            roles[i] = new String(name, StandardCharsets.UTF_8);
+        }
+
+        int roleSetCount = header.getInt();
+        if (roleSetCount < 0 || roleSetCount > MAXIMUM_ROLE_SETS || roleSetCount > header.remaining() / 8) {
+            throw new IOException("Corrupted subject roles index: " + file);
+        }
+        @SuppressWarnings("unchecked")
+        Collection<String>[] roleSets = new Collection[roleSetCount];
+        for (int i = 0; i < roleSets.length; i++) {
+            roleSets[i] = toRoleSet(header.getLong(), roles);
+        }
+
+        int slotCount = header.getInt();
+        long dataLength = header.getLong();
+        long slotsOffset = alignedSlotsOffset(header.position());
+        long slotsLength = (long) slotCount * SLOT_SIZE;
+        if (Integer.bitCount(slotCount) != 1 || slotCount > MAXIMUM_SLOTS
+                || dataLength < 0 || dataLength > MAXIMUM_DATA_LENGTH
+                || slotsOffset + slotsLength + dataLength != channel.size()) {
+            throw new IOException("Corrupted subject roles index: " + file);
+        }
+
+        ByteBuffer[] slots = map(channel, FileChannel.MapMode.READ_ONLY, slotsOffset, slotsLength, segmentShift);
+        ByteBuffer[] data = map(channel, FileChannel.MapMode.READ_ONLY, slotsOffset + slotsLength, dataLength,
+                segmentShift);
+        // The mappings stay valid after the channel is closed
+        return new SubjectRolesIndex(roleSets, slots, data, segmentShift, slotCount);
+    }
+
+    /**
+     * Returns the roles of the subject or an empty collection for unknown subjects.
+     */
+    Collection<String> getRoles(String subject) {
+        long hash = hash(subject);
+        int slot = firstSlot(hash, slotMask);
+        // Bounded, so that even a corrupted table without empty slots cannot loop forever
+        for (int probes = 0; probes <= slotMask; probes++) {
+            long position = (long) slot * SLOT_SIZE;
+            ByteBuffer segment = slots[(int) (position >>> segmentShift)];
+            int offset = (int) position & segmentMask;
+            long slotHash = segment.getLong(offset);
+            if (slotHash == 0) {
+                return Collections.emptySet();
+            }
+            long entry = segment.getLong(offset + 8);
+            if (slotHash == hash && subjectEquals(entry >>> ROLE_SET_BITS, subject)) {
+                return roleSets[(int) entry & (MAXIMUM_ROLE_SETS - 1)];
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return Collections.emptySet();
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units of the subject. Zero is reserved
+     * for empty slots.
+     */
+    static long hash(String subject) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < subject.length(); i++) {
+            char c = subject.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    static int firstSlot(long hash, int slotMask) {
+        return (int) (hash ^ (hash >>> 32)) & slotMask;
+    }
+
+    static long alignedSlotsOffset(long headerLength) {
+        return (headerLength + 7) & ~7L;
+    }
+
+    /**
+     * Returns the position at which an entry of the given length starts when written
+     * at the given position, which is the start of the next segment if the entry would
+     * cross a segment boundary otherwise.
+     */
+    static long entryPosition(long position, int length, int segmentShift) {
+        long remaining = (1L << segmentShift) - (position & ((1L << segmentShift) - 1));
+        return length > remaining ? position + remaining : position;
+    }
+
+    /**
+     * Maps a section of the file as consecutive segments of {@code 1 << segmentShift} bytes,
+     * the last one possibly shorter.
+     */
+    static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long offset, long length,
+            int segmentShift) throws IOException {
+        long segmentSize = 1L << segmentShift;
+        MappedByteBuffer[] segments = new MappedByteBuffer[(int) Math.max(1, (length + segmentSize - 1) / segmentSize)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * segmentSize;
+            segments[i] = channel.map(mode, offset + start, Math.min(segmentSize, length - start));
+        }
+        return segments;
+    }
+
+    /**
+     * Compares the UTF-8 encoded subject stored at the position of the data section
+     * with the given one decoding it on the fly.
+     */
+    private boolean subjectEquals(long dataPosition, String subject) {
+        ByteBuffer segment = data[(int) (dataPosition >>> segmentShift)];
+        int offset = (int) dataPosition & segmentMask;
+        int length = segment.getShort(offset) & 0xFFFF;
+        int position = offset + 2;
+        int end = position + length;
+        int index = 0;
+        while (position < end) {
+            int b = segment.get(position) & 0xFF;
+            int codePoint;
+            if (b < 0x80) {
+                codePoint = b;
+                position += 1;
+            } else if (b < 0xE0) {
+                codePoint = (b & 0x1F) << 6 | segment.get(position + 1) & 0x3F;
+                position += 2;
+            } else if (b < 0xF0) {
+                codePoint = (b & 0x0F) << 12 | (segment.get(position + 1) & 0x3F) << 6
+                        | segment.get(position + 2) & 0x3F;
+                position += 3;
+            } else {
+                codePoint = (b & 0x07) << 18 | (segment.get(position + 1) & 0x3F) << 12
+                        | (segment.get(position + 2) & 0x3F) << 6 | segment.get(position + 3) & 0x3F;
+                position += 4;
+            }
+            if (index >= subject.length() || subject.codePointAt(index) != codePoint) {
+                return false;
+            }
+            index += Character.charCount(codePoint);
+        }
+        return index == subject.length();
+    }
+
+    private static Collection<String> toRoleSet(long mask, String[] roles) {
+        if (mask == 0) {
+            return Collections.emptySet();
+        }
+        Set<String> roleSet = new LinkedHashSet<>();
+        for (int i = 0; i < roles.length; i++) {
+            if ((mask & (1L << i)) != 0) {
+                roleSet.add(roles[i]);
+            }
+        }
+        return Collections.unmodifiableSet(roleSet);
+    }
+}
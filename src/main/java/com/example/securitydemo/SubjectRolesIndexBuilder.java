@@ -0,0 +1,224 @@
+package com.example.securitydemo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Command line tool that turns a CSV file of {@code subject,role} pairs into the
+ * index format read by {@link MappedSubjectRolesResolver}.
+ * <p>
+ * A subject may appear on multiple lines, one per role. Empty lines and lines
+ * starting with {@code #} are ignored. The index is written to a temporary file
+ * first and then moved over the target, so a running application never sees
+ * a partially written index.
+ * <pre>
+ * {@code
+ * java -cp security-demo.jar -Dloader.main=com.example.securitydemo.SubjectRolesIndexBuilder \
+ *     org.springframework.boot.loader.PropertiesLauncher roles.csv roles.idx
+ * }
+ * </pre>
+ */
+public class SubjectRolesIndexBuilder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: SubjectRolesIndexBuilder <subject-roles.csv> <index-file>");
+            System.exit(1);
+        }
+        int subjects = build(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.printf("Indexed %d subjects into %s%n", subjects, args[1]);
+    }
+
+    /**
+     * Builds the index and returns the number of indexed subjects.
+     */
+    public static int build(Path csv, Path index) throws IOException {
+        return build(csv, index, SubjectRolesIndex.DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * Builds the index mapped in segments of {@code 1 << segmentShift} bytes, e.g. small
+     * ones to exercise the segment boundaries with a small file.
+     */
+    static int build(Path csv, Path index, int segmentShift) throws IOException {
+        if (segmentShift < SubjectRolesIndex.MINIMUM_SEGMENT_SHIFT
+                || segmentShift > SubjectRolesIndex.DEFAULT_SEGMENT_SHIFT) {
+            throw new IllegalArgumentException("Segment shift must be between "
+                    + SubjectRolesIndex.MINIMUM_SEGMENT_SHIFT + " and " + SubjectRolesIndex.DEFAULT_SEGMENT_SHIFT);
+        }
+        Map<String, List<String>> rolesBySubject = readCsv(csv);
+
+        List<String> roles = new ArrayList<>(distinctRoles(rolesBySubject));
+        if (roles.size() > SubjectRolesIndex.MAXIMUM_ROLES) {
+            throw new IllegalArgumentException("At most " + SubjectRolesIndex.MAXIMUM_ROLES
+                    + " distinct roles are supported, found " + roles.size());
+        }
+        Map<String, Integer> bitByRole = new HashMap<>();
+        for (int i = 0; i < roles.size(); i++) {
+            bitByRole.put(roles.get(i), i);
+        }
+
+        Map<Long, Integer> roleSetIndexByMask = new LinkedHashMap<>();
+        Map<String, Integer> roleSetIndexBySubject = new HashMap<>();
+        long dataLength = 0;
+        for (Map.Entry<String, List<String>> entry : rolesBySubject.entrySet()) {
+            long mask = 0;
+            for (String role : entry.getValue()) {
+                mask |= 1L << bitByRole.get(role);
+            }
+            Integer roleSetIndex = roleSetIndexByMask.computeIfAbsent(mask, m -> roleSetIndexByMask.size());
+            roleSetIndexBySubject.put(entry.getKey(), roleSetIndex);
+            // Same layout as written below, including the padding at segment boundaries
+            int length = entryLength(entry.getKey(), segmentShift);
+            dataLength = SubjectRolesIndex.entryPosition(dataLength, length, segmentShift) + length;
+        }
+        if (roleSetIndexByMask.size() > SubjectRolesIndex.MAXIMUM_ROLE_SETS) {
+            throw new IllegalArgumentException("At most " + SubjectRolesIndex.MAXIMUM_ROLE_SETS
+                    + " distinct role sets are supported, found " + roleSetIndexByMask.size());
+        }
+        if (dataLength > SubjectRolesIndex.MAXIMUM_DATA_LENGTH) {
+            throw new IllegalArgumentException("At most " + SubjectRolesIndex.MAXIMUM_DATA_LENGTH
+                    + " bytes of subjects are supported, found " + dataLength);
+        }
+        // Keep the load factor at or below 0.5 so that probe sequences stay short
+        long slotCount = Long.highestOneBit(Math.max(16, rolesBySubject.size() * 2L - 1)) << 1;
+        if (slotCount > SubjectRolesIndex.MAXIMUM_SLOTS) {
+            throw new IllegalArgumentException("At most " + SubjectRolesIndex.MAXIMUM_SLOTS / 2
+                    + " subjects are supported, found " + rolesBySubject.size());
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerLength(roles, roleSetIndexByMask.size()));
+        header.putInt(SubjectRolesIndex.MAGIC).putInt(SubjectRolesIndex.VERSION).putInt(segmentShift)
+                .putInt(roles.size());
+        for (String role : roles) {
+            byte[] name = utf8(role);
+            header.putShort((short) name.length).put(name);
+        }
+        header.putInt(roleSetIndexByMask.size());
+        for (Long mask : roleSetIndexByMask.keySet()) {
+            header.putLong(mask);
+        }
+        header.putInt((int) slotCount).putLong(dataLength);
+        header.flip();
+
+        long slotsOffset = SubjectRolesIndex.alignedSlotsOffset(header.limit());
+        long slotsLength = slotCount * SubjectRolesIndex.SLOT_SIZE;
+        int segmentMask = (1 << segmentShift) - 1;
+
+        Path temporary = Files.createTempFile(index.toAbsolutePath().getParent(), index.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(header, 0);
+            MappedByteBuffer[] slots = SubjectRolesIndex.map(channel, FileChannel.MapMode.READ_WRITE, slotsOffset,
+                    slotsLength, segmentShift);
+            MappedByteBuffer[] data = SubjectRolesIndex.map(channel, FileChannel.MapMode.READ_WRITE,
+                    slotsOffset + slotsLength, dataLength, segmentShift);
+            int slotMask = (int) slotCount - 1;
+            long dataPosition = 0;
+            for (Map.Entry<String, Integer> entry : roleSetIndexBySubject.entrySet()) {
+                String subject = entry.getKey();
+                byte[] encoded = utf8(subject);
+                dataPosition = SubjectRolesIndex.entryPosition(dataPosition, 2 + encoded.length, segmentShift);
+                MappedByteBuffer dataSegment = data[(int) (dataPosition >>> segmentShift)];
+                int dataOffset = (int) dataPosition & segmentMask;
+                dataSegment.putShort(dataOffset, (short) encoded.length).put(dataOffset + 2, encoded);
+
+                long hash = SubjectRolesIndex.hash(subject);
+                int slot = SubjectRolesIndex.firstSlot(hash, slotMask);
+                while (true) {
+                    long position = (long) slot * SubjectRolesIndex.SLOT_SIZE;
+                    MappedByteBuffer slotSegment = slots[(int) (position >>> segmentShift)];
+                    int slotOffset = (int) position & segmentMask;
+                    if (slotSegment.getLong(slotOffset) == 0) {
+                        slotSegment.putLong(slotOffset, hash);
+                        slotSegment.putLong(slotOffset + 8,
+                                dataPosition << SubjectRolesIndex.ROLE_SET_BITS | entry.getValue());
+                        break;
+                    }
+                    slot = (slot + 1) & slotMask;
+                }
+                dataPosition += 2 + encoded.length;
+            }
+            for (MappedByteBuffer segment : slots) {
+                segment.force();
+            }
+            for (MappedByteBuffer segment : data) {
+                segment.force();
+            }
+        }
+        Files.move(temporary, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rolesBySubject.size();
+    }
+
+    private static Map<String, List<String>> readCsv(Path csv) throws IOException {
+        Map<String, List<String>> rolesBySubject = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int comma = line.indexOf(',');
+                if (comma <= 0 || comma == line.length() - 1) {
+                    throw new IllegalArgumentException("Expected subject,role at line " + lineNumber + " of " + csv);
+                }
+                String subject = line.substring(0, comma).trim();
+                String role = line.substring(comma + 1).trim();
+                List<String> roles = rolesBySubject.computeIfAbsent(subject, s -> new ArrayList<>(1));
+                if (!roles.contains(role)) {
+                    roles.add(role);
+                }
+            }
+        }
+        return rolesBySubject;
+    }
+
+    private static TreeSet<String> distinctRoles(Map<String, List<String>> rolesBySubject) {
+        TreeSet<String> roles = new TreeSet<>();
+        for (List<String> subjectRoles : rolesBySubject.values()) {
+            roles.addAll(subjectRoles);
+        }
+        return roles;
+    }
+
+    private static int entryLength(String subject, int segmentShift) {
+        int length = 2 + utf8(subject).length;
+        if (length > 1 << segmentShift) {
+            throw new IllegalArgumentException("Subject is longer than a segment: " + subject);
+        }
+        return length;
+    }
+
+    private static int headerLength(List<String> roles, int roleSets) {
+        int length = 4 + 4 + 4 + 4 + 4 + roleSets * 8 + 4 + 8;
+        for (String role : roles) {
+            length += 2 + utf8(role).length;
+        }
+        return length;
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length > 0xFFFF) {
+            throw new IllegalArgumentException("Value is too long: " + value.substring(0, 64) + "...");
+        }
+        return encoded;
+    }
+}
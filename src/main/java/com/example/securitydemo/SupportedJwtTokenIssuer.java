@@ -22,4 +22,12 @@ public interface SupportedJwtTokenIssuer {
      */
     JwtDecoder getJwtDecoder();
 
+    /**
+     * Where the roles of the tokens of this issuer come from. By default they are
+     * looked up by subject with the {@link SubjectRolesResolver}.
+     */
+    default AuthorityPolicy getAuthorityPolicy() {
+        return AuthorityPolicy.resolver();
+    }
+
 }
@@ -0,0 +1,106 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Source of tenant issuers added to a {@link JwtIssuerRegistry} at runtime.
+ * <p>
+ * The file lists one issuer per line as {@code issuer,jwkSetUri}. It is checked for
+ * modifications periodically, see {@link FileReloader}, and the registry is updated with the issuers which
+ * were added, removed or got another JWK set URI. Only the registration happens
+ * here, the decoders are created by the registry on the first token of an issuer.
+ * Lines with a malformed JWK set URI are skipped with a warning.
+ * Lines with the name of a built-in issuer are ignored by the registry, see
+ * {@link JwtIssuerRegistry#register(String, java.util.function.Supplier)}.
+ */
+public class TenantIssuersFile implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantIssuersFile.class);
+
+    private final Path file;
+    private final JwtIssuerRegistry registry;
+    private final BiFunction<String, String, SupportedJwtTokenIssuer> issuerFactory;
+    private final FileReloader reloader;
+
+    private Map<String, String> jwkSetUris = Collections.emptyMap();
+
+    /**
+     * @param issuerFactory creates an issuer from its name and JWK set URI
+     */
+    public TenantIssuersFile(Path file, Duration reloadInterval, JwtIssuerRegistry registry,
+            BiFunction<String, String, SupportedJwtTokenIssuer> issuerFactory) {
+        this.file = file;
+        this.registry = registry;
+        this.issuerFactory = issuerFactory;
+        try {
+            this.reloader = new FileReloader(file, "tenant issuers", reloadInterval, this::load);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load tenant issuers " + file, e);
+        }
+    }
+
+    /**
+     * Reads the current version of the file and applies the differences to the registry.
+     */
+    public void reload() throws IOException {
+        reloader.reload();
+    }
+
+    @Override
+    public void close() {
+        reloader.close();
+    }
+
+    private synchronized void load() throws IOException {
+        Map<String, String> current = read(file);
+        for (String issuerName : jwkSetUris.keySet()) {
+            if (!current.containsKey(issuerName)) {
+                registry.unregister(issuerName);
+            }
+        }
+        current.forEach((issuerName, jwkSetUri) -> {
+            if (!jwkSetUri.equals(jwkSetUris.get(issuerName))) {
+                registry.register(issuerName, () -> issuerFactory.apply(issuerName, jwkSetUri));
+            }
+        });
+        jwkSetUris = current;
+    }
+
+    private static Map<String, String> read(Path file) throws IOException {
+        Map<String, String> jwkSetUris = new HashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.indexOf(',');
+            if (separator < 0) {
+                throw new IOException("Expected issuer,jwkSetUri in " + file + " but got " + line);
+            }
+            String issuerName = line.substring(0, separator).trim();
+            String jwkSetUri = line.substring(separator + 1).trim();
+            try {
+                new URL(jwkSetUri);
+            } catch (MalformedURLException e) {
+                log.warn("Ignoring issuer {} of {}, its JWK set URI {} is malformed", issuerName, file, jwkSetUri);
+                continue;
+            }
+            jwkSetUris.put(issuerName, jwkSetUri);
+        }
+        return jwkSetUris;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Revokes tokens of an issuer by their <em>jti</em> claim or all tokens issued to a
+ * subject so far, see {@link TokenRevocationList}. Like all endpoints under
+ * {@code /admin} it requires the ADMIN role.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty("security-demo.revocation.enabled")
+public class TokenRevocationController {
+
+    private final TokenRevocationList revocationList;
+
+    public TokenRevocationController(TokenRevocationList revocationList) {
+        this.revocationList = revocationList;
+    }
+
+    @PostMapping("/admin/revocations")
+    public ResponseEntity<Void> revoke(@RequestBody Revocation revocation) throws IOException {
+        if (isBlank(revocation.issuer()) || isBlank(revocation.jti()) && isBlank(revocation.subject())) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            if (!isBlank(revocation.jti())) {
+                revocationList.revokeToken(revocation.issuer(), revocation.jti());
+            }
+            if (!isBlank(revocation.subject())) {
+                revocationList.revokeSubject(revocation.issuer(), revocation.subject());
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * Token id, subject or both to revoke, of the given issuer.
+     */
+    public record Revocation(String issuer, String jti, String subject) {
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+
+/**
+ * Deny list of tokens revoked by their <em>jti</em> claim or by their subject. Both
+ * are only unique within their issuer, so every revocation applies to one issuer.
+ * Revoking a subject rejects the tokens issued to it until then, i.e. with an
+ * <em>iat</em> claim at or before the revocation, or without one. Tokens issued
+ * afterwards, e.g. after the subject logged in again, are accepted.
+ * <p>
+ * Every verified token is checked against a {@link BloomFilter} first, so tokens
+ * which were not revoked, i.e. almost all of them, are accepted without touching the
+ * exact sets. Only when the filter reports a possible match the revocation is
+ * confirmed by the exact set, which rules out the false positives of the filter.
+ * <p>
+ * Revocations are read from an append-only file with one revocation per line, as
+ * {@code jti:<issuer> <token id>} or {@code sub:<issuer> <revoked at> <subject>} with
+ * the time of the revocation in epoch seconds. The file is checked periodically, see
+ * {@link FileReloader}, and only the lines appended since the last check are read and added to the
+ * existing structures. If the file was replaced or truncated, e.g. to drop the
+ * revocations of expired tokens, the structures are rebuilt from scratch and swapped
+ * in atomically. Revocations made via {@link #revokeToken} and {@link #revokeSubject}
+ * are appended to the file, so that they survive restarts.
+ */
+public class TokenRevocationList implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private static final char TOKEN_ID = 'j';
+    private static final char SUBJECT = 's';
+    private static final String TOKEN_ID_PREFIX = "jti:";
+    private static final String SUBJECT_PREFIX = "sub:";
+
+    static final String REVOKED_TOKEN = "revoked_token";
+
+    // Translated to invalid_token by JwtAuthenticationProvider, like all validation errors
+    private static final OAuth2Error REVOKED = new OAuth2Error(REVOKED_TOKEN, "Token has been revoked", null);
+
+    private final Path file;
+    private final int expectedRevocations;
+    private final double falsePositiveRate;
+    private final FileReloader reloader;
+
+    private volatile Revocations revocations;
+    private Object fileKey;
+    private long fileOffset;
+
+    public TokenRevocationList(int expectedRevocations, double falsePositiveRate) {
+        this(null, null, expectedRevocations, falsePositiveRate);
+    }
+
+    /**
+     * @param file append-only file of revocations, or {@code null} to keep the
+     * revocations in memory only
+     * @param expectedRevocations initial capacity of the filter, it grows with the
+     * number of revocations
+     */
+    public TokenRevocationList(Path file, Duration reloadInterval, int expectedRevocations,
+            double falsePositiveRate) {
+        this.file = file;
+        this.expectedRevocations = expectedRevocations;
+        this.falsePositiveRate = falsePositiveRate;
+        this.revocations = new Revocations(new BloomFilter(expectedRevocations, falsePositiveRate));
+        if (file == null) {
+            this.reloader = null;
+            return;
+        }
+        try {
+            if (Files.notExists(file)) {
+                Files.createFile(file);
+            }
+            this.reloader = new FileReloader(file, "token revocations", reloadInterval, this::load);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load token revocations " + file, e);
+        }
+    }
+
+    /**
+     * Revokes the token of the issuer with the given <em>jti</em> claim.
+     */
+    public void revokeToken(String issuer, String tokenId) throws IOException {
+        validate(issuer, tokenId);
+        revoke(TOKEN_ID_PREFIX + issuer + ' ' + tokenId, TOKEN_ID, issuer, tokenId, 0);
+    }
+
+    /**
+     * Revokes all tokens the issuer has issued to the subject so far.
+     */
+    public void revokeSubject(String issuer, String subject) throws IOException {
+        validate(issuer, subject);
+        long revokedAt = Instant.now().getEpochSecond();
+        revoke(SUBJECT_PREFIX + issuer + ' ' + revokedAt + ' ' + subject, SUBJECT, issuer, subject, revokedAt);
+    }
+
+    /**
+     * @param issuer issuer of the token
+     * @param tokenId <em>jti</em> claim of the token, may be {@code null}
+     * @param subject subject of the token, may be {@code null}
+     * @param issuedAt <em>iat</em> claim of the token, may be {@code null}
+     */
+    public boolean isRevoked(String issuer, String tokenId, String subject, Instant issuedAt) {
+        Revocations current = revocations;
+        if (tokenId != null && current.filter.mightContain(TOKEN_ID, issuer, tokenId)
+                && current.tokenIds.contains(new Key(issuer, tokenId))) {
+            return true;
+        }
+        if (subject == null || !current.filter.mightContain(SUBJECT, issuer, subject)) {
+            return false;
+        }
+        Long revokedAt = current.subjects.get(new Key(issuer, subject));
+        return revokedAt != null && (issuedAt == null || issuedAt.getEpochSecond() <= revokedAt);
+    }
+
+    /**
+     * Rejects the revoked tokens among the ones the decoder verified for the issuer.
+     * Since the check is cheap, it is meant to be applied outside of a {@link CachingJwtDecoder}
+     * so that cached tokens are checked as well.
+     */
+    public JwtDecoder decorate(String issuer, JwtDecoder decoder) {
+        return token -> check(issuer, decoder.decode(token));
+    }
+
+    /**
+     * Reads the lines appended to the file since the last call, or the whole file if
+     * it was replaced or truncated in the meantime.
+     */
+    public void reload() throws IOException {
+        reloader.reload();
+    }
+
+    @Override
+    public void close() {
+        if (reloader != null) {
+            reloader.close();
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!Objects.equals(attributes.fileKey(), fileKey) || attributes.size() < fileOffset) {
+            // Applied to a new instance, so that lookups never see a partially read file
+            Revocations reloaded = new Revocations(new BloomFilter(expectedRevocations, falsePositiveRate));
+            fileOffset = read(0, attributes.size(), reloaded);
+            while (reloaded.size() > reloaded.filter.capacity()) {
+                reloaded = reloaded.grow(falsePositiveRate);
+            }
+            fileKey = attributes.fileKey();
+            revocations = reloaded;
+        } else if (attributes.size() > fileOffset) {
+            fileOffset = read(fileOffset, attributes.size(), null);
+        }
+    }
+
+    private Jwt check(String issuer, Jwt jwt) {
+        if (isRevoked(issuer, jwt.getId(), jwt.getSubject(), jwt.getIssuedAt())) {
+            throw new JwtValidationException(REVOKED.getDescription(), Set.of(REVOKED));
+        }
+        return jwt;
+    }
+
+    private static void validate(String issuer, String value) {
+        if (issuer == null || issuer.isEmpty() || issuer.chars().anyMatch(Character::isWhitespace)) {
+            throw new IllegalArgumentException("Invalid issuer " + issuer);
+        }
+        if (value == null || value.isEmpty() || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Invalid revocation " + value);
+        }
+    }
+
+    private synchronized void revoke(String line, char namespace, String issuer, String value, long revokedAt)
+            throws IOException {
+        if (file != null) {
+            Files.writeString(file, line + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        // Also read again by the next reload, which is harmless since additions are idempotent
+        add(null, namespace, issuer, value, revokedAt);
+    }
+
+    /**
+     * Applies the complete lines between the given positions of the file.
+     *
+     * @param target revocations to add to, or {@code null} to add to the live ones
+     * @return position after the last complete line
+     */
+    private long read(long from, long to, Revocations target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(to - from));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, from + buffer.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        int end = buffer.position();
+        while (end > 0 && buffer.get(end - 1) != '\n') {
+            // A line still being appended is read by the next reload
+            end--;
+        }
+        String lines = new String(buffer.array(), 0, end, StandardCharsets.UTF_8);
+        for (String line : lines.split("\n")) {
+            line = line.trim();
+            if (!line.isEmpty() && !apply(line, target)) {
+                log.warn("Ignoring revocation {} of {}, expected jti:<issuer> <token id> or "
+                        + "sub:<issuer> <revoked at> <subject>", line, file);
+            }
+        }
+        return from + end;
+    }
+
+    /**
+     * @return {@code false} if the line is malformed
+     */
+    private boolean apply(String line, Revocations target) {
+        if (line.startsWith(TOKEN_ID_PREFIX)) {
+            String[] parts = line.substring(TOKEN_ID_PREFIX.length()).split(" ", 2);
+            if (parts.length < 2 || parts[0].isEmpty() || parts[1].isEmpty()) {
+                return false;
+            }
+            add(target, TOKEN_ID, parts[0], parts[1], 0);
+            return true;
+        }
+        if (line.startsWith(SUBJECT_PREFIX)) {
+            String[] parts = line.substring(SUBJECT_PREFIX.length()).split(" ", 3);
+            if (parts.length < 3 || parts[0].isEmpty() || parts[2].isEmpty()) {
+                return false;
+            }
+            try {
+                add(target, SUBJECT, parts[0], parts[2], Long.parseLong(parts[1]));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param target revocations to add to, or {@code null} to add to the live ones,
+     * which are looked up for every addition since they are replaced when they grow
+     */
+    private synchronized void add(Revocations target, char namespace, String issuer, String value,
+            long revokedAt) {
+        Revocations current = target == null ? revocations : target;
+        Key key = new Key(issuer, value);
+        // The exact set is updated first, so a match of the filter is always confirmed
+        if (namespace == TOKEN_ID) {
+            if (!current.tokenIds.add(key)) {
+                return;
+            }
+        } else {
+            Long previous = current.subjects.get(key);
+            if (previous != null && previous >= revokedAt) {
+                return;
+            }
+            // A later revocation of the same subject also rejects the tokens issued in between
+            current.subjects.put(key, revokedAt);
+            if (previous != null) {
+                return;
+            }
+        }
+        current.filter.add(namespace, issuer, value);
+        if (target == null && current.size() > current.filter.capacity()) {
+            // Keep the false positive rate, the lookups switch over to the larger filter
+            revocations = current.grow(falsePositiveRate);
+        }
+    }
+
+    /**
+     * Token id or subject within its issuer.
+     */
+    private record Key(String issuer, String value) {
+    }
+
+    private static final class Revocations {
+
+        private final BloomFilter filter;
+        private final Set<Key> tokenIds = ConcurrentHashMap.newKeySet();
+        // Time of the revocation in epoch seconds by subject
+        private final Map<Key, Long> subjects = new ConcurrentHashMap<>();
+
+        Revocations(BloomFilter filter) {
+            this.filter = filter;
+        }
+
+        int size() {
+            return tokenIds.size() + subjects.size();
+        }
+
+        Revocations grow(double falsePositiveRate) {
+            Revocations grown = new Revocations(new BloomFilter(filter.capacity() * 2, falsePositiveRate));
+            for (Key tokenId : tokenIds) {
+                grown.tokenIds.add(tokenId);
+                grown.filter.add(TOKEN_ID, tokenId.issuer(), tokenId.value());
+            }
+            subjects.forEach((subject, revokedAt) -> {
+                grown.subjects.put(subject, revokedAt);
+                grown.filter.add(SUBJECT, subject.issuer(), subject.value());
+            });
+            return grown;
+        }
+    }
+}
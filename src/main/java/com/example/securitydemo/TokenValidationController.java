@@ -0,0 +1,64 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Validates many bearer tokens in a single request, e.g. for a gateway replaying
+ * queued requests.
+ * <p>
+ * The request body contains one token per line. The response is streamed as
+ * newline-delimited JSON with one {@link TokenValidationResult} per token, in the
+ * order of the tokens. It is reserved for clients with the role configured in
+ * {@link SecurityDemoProperties.BatchValidation}, e.g. the gateway sidecar. Batches
+ * which are longer than the limits of the {@link BatchTokenValidator} allow are
+ * rejected with 413 Payload Too Large if they declare their length up front.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class TokenValidationController {
+
+    private final BatchTokenValidator validator;
+    private final ObjectMapper objectMapper;
+
+    public TokenValidationController(BatchTokenValidator validator, ObjectMapper objectMapper) {
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping("/tokens/validate")
+    public void validate(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (request.getContentLengthLong() > validator.getMaximumBatchLength()) {
+            response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        try (JsonGenerator generator = objectMapper.createGenerator(response.getOutputStream())) {
+            // Values are separated by newlines instead
+            generator.setRootValueSeparator(null);
+            validator.validate(request.getReader(), new BatchTokenValidator.ResultWriter() {
+                @Override
+                public void write(TokenValidationResult result) throws IOException {
+                    generator.writeObject(result);
+                    generator.writeRaw('\n');
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    generator.flush();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.securitydemo;
+
+import java.util.Collection;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of validating a single token of a batch, see {@link BatchTokenValidator}.
+ *
+ * @param index position of the token in the batch
+ * @param issuer issuer of the token, if it could be read
+ * @param subject subject of a valid token
+ * @param roles roles of the subject of a valid token
+ * @param error reason why the token is not valid
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TokenValidationResult(int index, boolean valid, String issuer, String subject,
+        Collection<String> roles, String error) {
+
+    static TokenValidationResult valid(int index, String issuer, String subject, Collection<String> roles) {
+        return new TokenValidationResult(index, true, issuer, subject, roles, null);
+    }
+
+    static TokenValidationResult invalid(int index, String issuer, String error) {
+        return new TokenValidationResult(index, false, issuer, null, null, error);
+    }
+}
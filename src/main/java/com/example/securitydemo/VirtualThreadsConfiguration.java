@@ -0,0 +1,45 @@
+package com.example.securitydemo;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.coyote.ProtocolHandler;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables the virtual-thread mode of the servlet stack with
+ * {@code security-demo.virtual-threads.enabled=true}.
+ * <p>
+ * Tomcat then handles every request on a new virtual thread instead of a thread from
+ * its fixed-size pool, so requests blocked in {@link SubjectRolesResolver} lookups or
+ * waiting for a JWK set do not limit the number of concurrently served requests.
+ * The background work of the security pipeline switches to virtual threads as well,
+ * see {@link BlockingExecutors}.
+ * <p>
+ * Tomcat does not shut down an executor it was given, so the executor is shut down
+ * when the context is closed, after the server has stopped.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty("security-demo.virtual-threads.enabled")
+public class VirtualThreadsConfiguration implements DisposableBean {
+
+    // Not a bean, which would replace the auto-configured application task executor
+    private final ExecutorService requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+    }
+
+    @Override
+    public void destroy() {
+        requestExecutor.shutdown();
+    }
+}
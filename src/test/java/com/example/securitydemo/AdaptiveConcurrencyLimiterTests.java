@@ -0,0 +1,77 @@
+package com.example.securitydemo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.oauth2.server.resource.BearerTokenAuthenticationToken;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies that the {@link AdaptiveConcurrencyLimiter} rejects work over its limit and
+ * adapts the limit to the latency, with a simulated clock.
+ */
+public class AdaptiveConcurrencyLimiterTests {
+
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long now = System.nanoTime();
+
+    @Test
+    void rejectsOverLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 1.5);
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+
+        AuthenticationManager authenticationManager = limiter.limit(authentication -> authentication);
+        assertThatThrownBy(() -> authenticationManager.authenticate(new BearerTokenAuthenticationToken("token")))
+                .isInstanceOf(ConcurrencyLimitExceededException.class);
+
+        limiter.release(now, now + MILLISECOND);
+        assertThat(authenticationManager.authenticate(new BearerTokenAuthenticationToken("token"))).isNotNull();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void growsWhileFastAndShrinksWhenSlow() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100, 1.5);
+        for (int i = 0; i < 20; i++) {
+            runWindow(limiter, limiter.getLimit(), MILLISECOND);
+        }
+        int grown = limiter.getLimit();
+        assertThat(grown).isGreaterThan(10);
+
+        for (int i = 0; i < 10; i++) {
+            runWindow(limiter, limiter.getLimit(), 20 * MILLISECOND);
+        }
+        assertThat(limiter.getLimit()).isLessThan(grown * 3 / 4);
+    }
+
+    @Test
+    void doesNotGrowWhileUnused() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100, 1.5);
+        for (int i = 0; i < 20; i++) {
+            runWindow(limiter, 1, MILLISECOND);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    /**
+     * Runs rounds of the given number of concurrent authentications with the given
+     * latency, until the window is closed.
+     */
+    private void runWindow(AdaptiveConcurrencyLimiter limiter, int concurrency, long latency) {
+        now += 100 * MILLISECOND;
+        for (int samples = 0; samples < 10; samples += concurrency) {
+            for (int i = 0; i < concurrency; i++) {
+                assertThat(limiter.tryAcquire()).isTrue();
+            }
+            for (int i = 0; i < concurrency; i++) {
+                limiter.release(now - latency, now);
+            }
+        }
+    }
+}
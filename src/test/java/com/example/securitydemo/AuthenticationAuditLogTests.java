@@ -0,0 +1,124 @@
+package com.example.securitydemo;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.server.resource.BearerTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies that the {@link AuthenticationAuditLog} records the decisions of an
+ * authentication manager and accounts for every event under load.
+ */
+public class AuthenticationAuditLogTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsSuccessesAndFailures() throws Exception {
+        AuthenticationAuditLog auditLog = new AuthenticationAuditLog(directory, 16,
+                AuthenticationAuditLog.OverflowPolicy.BLOCK, 4, Long.MAX_VALUE, 1);
+        String token = SecurityScenarioTests.testPrivateAuthServerToken("admin");
+        AuthenticationManager authenticated = auditLog.audit(authentication -> new CompactJwtAuthenticationToken(
+                token, "admin", PrivateServerJwtTokenIssuer.ISSUER_NAME, Instant.now(),
+                AuthorityUtils.createAuthorityList("ROLE_ADMIN")));
+        AuthenticationManager rejected = auditLog.audit(authentication -> {
+            throw new InvalidBearerTokenException("Invalid issuer");
+        });
+
+        authenticated.authenticate(new BearerTokenAuthenticationToken(token));
+        assertThatThrownBy(() -> rejected.authenticate(new BearerTokenAuthenticationToken(token)))
+                .isInstanceOf(InvalidBearerTokenException.class);
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(directory.resolve("audit.log"));
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).contains("\"outcome\":\"success\"", "\"subject\":\"admin\"",
+                "\"issuer\":\"" + PrivateServerJwtTokenIssuer.ISSUER_NAME + "\"", "\"authorities\":[\"ROLE_ADMIN\"]");
+        assertThat(lines.get(1)).contains("\"outcome\":\"failure\"", "\"reason\":\"Invalid issuer\"",
+                "\"issuer\":\"" + PrivateServerJwtTokenIssuer.ISSUER_NAME + "\"");
+        assertThat(auditLog.getWrittenCount()).isEqualTo(2);
+    }
+
+    @Test
+    void accountsForAllEventsWhenDropping() throws Exception {
+        AuthenticationAuditLog auditLog = new AuthenticationAuditLog(directory, 4,
+                AuthenticationAuditLog.OverflowPolicy.DROP, 2, Long.MAX_VALUE, 1);
+        record(auditLog, 4, 10_000);
+        auditLog.close();
+
+        assertThat(auditLog.getWrittenCount() + auditLog.getDroppedCount()).isEqualTo(40_000);
+        assertThat(Files.readAllLines(directory.resolve("audit.log"))).hasSize((int) auditLog.getWrittenCount());
+    }
+
+    @Test
+    void writesAllEventsWhenBlocking() throws Exception {
+        AuthenticationAuditLog auditLog = new AuthenticationAuditLog(directory, 4,
+                AuthenticationAuditLog.OverflowPolicy.BLOCK, 2, Long.MAX_VALUE, 1);
+        record(auditLog, 4, 10_000);
+        auditLog.close();
+
+        assertThat(auditLog.getDroppedCount()).isZero();
+        assertThat(Files.readAllLines(directory.resolve("audit.log"))).hasSize(40_000);
+    }
+
+    @Test
+    void accountsForEventsRecordedWhileClosing() throws Exception {
+        AuthenticationAuditLog auditLog = new AuthenticationAuditLog(directory, 4,
+                AuthenticationAuditLog.OverflowPolicy.BLOCK, 2, Long.MAX_VALUE, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    auditLog.recordFailure(PrivateServerJwtTokenIssuer.ISSUER_NAME, "Invalid token");
+                }
+            });
+        }
+        auditLog.close();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(auditLog.getWrittenCount() + auditLog.getDroppedCount()).isEqualTo(40_000);
+        assertThat(Files.readAllLines(directory.resolve("audit.log"))).hasSize((int) auditLog.getWrittenCount());
+    }
+
+    @Test
+    void rollsFilesOver() throws Exception {
+        AuthenticationAuditLog auditLog = new AuthenticationAuditLog(directory, 16,
+                AuthenticationAuditLog.OverflowPolicy.BLOCK, 1, 100, 2);
+        record(auditLog, 1, 20);
+        auditLog.close();
+
+        assertThat(directory.resolve("audit.log.1")).exists();
+        assertThat(directory.resolve("audit.log.2")).exists();
+        assertThat(directory.resolve("audit.log.3")).doesNotExist();
+    }
+
+    private static void record(AuthenticationAuditLog auditLog, int threads, int eventsPerThread)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < eventsPerThread; j++) {
+                    auditLog.recordFailure(PrivateServerJwtTokenIssuer.ISSUER_NAME, "Invalid token");
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+    }
+}
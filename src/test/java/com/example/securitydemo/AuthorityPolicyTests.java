@@ -0,0 +1,92 @@
+package com.example.securitydemo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifies that the {@link SubjectBasedGrantedAuthoritiesConverter} and its reactive
+ * counterpart take the roles from where the {@link AuthorityPolicy} of the issuer says.
+ */
+public class AuthorityPolicyTests {
+
+    private final SubjectBasedGrantedAuthoritiesConverter converter = new SubjectBasedGrantedAuthoritiesConverter(
+            subject -> "bob".equals(subject) ? Set.of("USER") : Set.of());
+
+    @Test
+    void takesRolesFromClaimWithoutResolver() {
+        SubjectBasedGrantedAuthoritiesConverter claimOnly = new SubjectBasedGrantedAuthoritiesConverter(subject -> {
+            throw new AssertionError("Roles of " + subject + " must not be resolved");
+        });
+        Converter<Jwt, Collection<GrantedAuthority>> authorities =
+                claimOnly.withAuthorityPolicy(AuthorityPolicy.claim("roles"));
+
+        Collection<GrantedAuthority> first = authorities.convert(jwt("bob", List.of("ADMIN", "USER")));
+        assertThat(AuthorityUtils.authorityListToSet(first)).containsExactlyInAnyOrder("ROLE_ADMIN", "ROLE_USER");
+        // Interned, so that other tokens with the same roles share the authorities
+        assertThat(authorities.convert(jwt("alice", List.of("ADMIN", "USER")))).isSameAs(first);
+        assertThat(AuthorityUtils.authorityListToSet(authorities.convert(jwt("bob", "ADMIN USER"))))
+                .containsExactlyInAnyOrder("ROLE_ADMIN", "ROLE_USER");
+        assertThat(authorities.convert(jwt("bob", null))).isEmpty();
+    }
+
+    @Test
+    void mergesRolesOfClaimAndResolver() {
+        Converter<Jwt, Collection<GrantedAuthority>> authorities =
+                converter.withAuthorityPolicy(AuthorityPolicy.merged("roles"));
+
+        assertThat(AuthorityUtils.authorityListToSet(authorities.convert(jwt("bob", List.of("ADMIN")))))
+                .containsExactlyInAnyOrder("ROLE_ADMIN", "ROLE_USER");
+        assertThat(AuthorityUtils.authorityListToSet(authorities.convert(jwt("bob", null))))
+                .containsExactly("ROLE_USER");
+        assertThat(AuthorityUtils.authorityListToSet(authorities.convert(jwt("alice", List.of("ADMIN")))))
+                .containsExactly("ROLE_ADMIN");
+    }
+
+    @Test
+    void ignoresClaimByDefault() {
+        assertThat(converter.withAuthorityPolicy(AuthorityPolicy.resolver())).isSameAs(converter);
+        assertThat(AuthorityUtils.authorityListToSet(converter.convert(jwt("bob", List.of("ADMIN")))))
+                .containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void followsPolicyInReactiveMode() {
+        ReactiveSubjectBasedGrantedAuthoritiesConverter claimOnly = new ReactiveSubjectBasedGrantedAuthoritiesConverter(
+                subject -> Mono.error(new AssertionError("Roles of " + subject + " must not be resolved")));
+        Converter<Jwt, Flux<GrantedAuthority>> claimAuthorities =
+                claimOnly.withAuthorityPolicy(AuthorityPolicy.claim("roles"));
+        ReactiveSubjectBasedGrantedAuthoritiesConverter reactiveConverter =
+                new ReactiveSubjectBasedGrantedAuthoritiesConverter(
+                        subject -> Mono.just("bob".equals(subject) ? Set.of("USER") : Set.of()));
+        Converter<Jwt, Flux<GrantedAuthority>> mergedAuthorities =
+                reactiveConverter.withAuthorityPolicy(AuthorityPolicy.merged("roles"));
+
+        assertThat(AuthorityUtils.authorityListToSet(claimAuthorities.convert(jwt("bob", List.of("ADMIN")))
+                .collectList().block())).containsExactly("ROLE_ADMIN");
+        assertThat(AuthorityUtils.authorityListToSet(mergedAuthorities.convert(jwt("bob", List.of("ADMIN")))
+                .collectList().block())).containsExactlyInAnyOrder("ROLE_ADMIN", "ROLE_USER");
+        assertThat(reactiveConverter.withAuthorityPolicy(AuthorityPolicy.resolver())).isSameAs(reactiveConverter);
+    }
+
+    private static Jwt jwt(String subject, Object roles) {
+        Jwt.Builder builder = Jwt.withTokenValue("token")
+                .header("alg", "HS256")
+                .subject(subject);
+        if (roles != null) {
+            builder.claim("roles", roles);
+        }
+        return builder.build();
+    }
+}
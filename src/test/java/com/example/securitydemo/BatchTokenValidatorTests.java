@@ -0,0 +1,126 @@
+package com.example.securitydemo;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifies that the {@link BatchTokenValidator} answers every token of a batch in
+ * order, also when its verification fails unexpectedly or it exceeds the limits.
+ */
+public class BatchTokenValidatorTests {
+
+    private final JwtIssuerRegistry registry = new JwtIssuerRegistry(SupportedJwtTokenIssuer::getJwtDecoder,
+            (issuer, decoder) -> authentication -> authentication, Duration.ofMinutes(30));
+
+    private BatchTokenValidator validator;
+
+    @AfterEach
+    void close() {
+        if (validator != null) {
+            validator.close();
+        }
+        registry.close();
+    }
+
+    @Test
+    void reportsUnexpectedFailuresPerToken() throws Exception {
+        registry.register(new StubIssuer("https://tenant.local",
+                token -> Jwt.withTokenValue(token).header("alg", "none").subject("bob").build()));
+        registry.register(new StubIssuer("https://broken.local", token -> {
+            throw new IllegalStateException("JWK set not available");
+        }));
+        validator = createValidator(100, 1000);
+
+        List<TokenValidationResult> results = validate(
+                token("https://broken.local"),
+                token("https://tenant.local"),
+                token("https://broken.local"));
+
+        assertThat(results).extracting(TokenValidationResult::index).containsExactly(0, 1, 2);
+        assertThat(results).extracting(TokenValidationResult::valid).containsExactly(false, true, false);
+        assertThat(results.get(0).issuer()).isEqualTo("https://broken.local");
+        assertThat(results.get(0).error()).isEqualTo("Unable to validate token");
+        assertThat(results.get(1).roles()).containsExactly("USER");
+    }
+
+    @Test
+    void skipsTokensLongerThanTheMaximum() throws Exception {
+        registry.register(new StubIssuer("https://tenant.local",
+                token -> Jwt.withTokenValue(token).header("alg", "none").subject("bob").build()));
+        validator = createValidator(100, 100);
+
+        List<TokenValidationResult> results = validate(
+                "x".repeat(100_000),
+                token("https://tenant.local"),
+                " " + token("https://tenant.local") + " \r");
+
+        assertThat(results).extracting(TokenValidationResult::valid).containsExactly(false, true, true);
+        assertThat(results.get(0).error()).isEqualTo("Token too long");
+    }
+
+    @Test
+    void endsBatchesAfterTheMaximumNumberOfTokens() throws Exception {
+        validator = createValidator(2, 1000);
+
+        List<TokenValidationResult> results = validate("a", "", "b", "c", "d");
+
+        assertThat(results).extracting(TokenValidationResult::index).containsExactly(0, 1, 2);
+        assertThat(results.get(2).error()).isEqualTo("Too many tokens");
+    }
+
+    private BatchTokenValidator createValidator(int maximumTokens, int maximumTokenLength) {
+        SecurityDemoProperties.BatchValidation properties = new SecurityDemoProperties.BatchValidation();
+        properties.setParallelism(2);
+        properties.setMaximumTokens(maximumTokens);
+        properties.setMaximumTokenLength(maximumTokenLength);
+        return new BatchTokenValidator(registry,
+                new SubjectBasedGrantedAuthoritiesConverter(new InMemorySubjectRolesResolver()), properties);
+    }
+
+    private List<TokenValidationResult> validate(String... tokens) throws Exception {
+        List<TokenValidationResult> results = new ArrayList<>();
+        validator.validate(new StringReader(String.join("\n", tokens)), new BatchTokenValidator.ResultWriter() {
+            @Override
+            public void write(TokenValidationResult result) {
+                results.add(result);
+            }
+
+            @Override
+            public void flush() {
+            }
+        });
+        return results;
+    }
+
+    private static String token(String issuer) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(("{\"iss\":\"" + issuer + "\"}").getBytes(StandardCharsets.UTF_8))
+                + ".c2lnbmF0dXJl";
+    }
+
+    private record StubIssuer(String issuerName, JwtDecoder decoder) implements SupportedJwtTokenIssuer {
+
+        @Override
+        public String getIssuerName() {
+            return issuerName;
+        }
+
+        @Override
+        public JwtDecoder getJwtDecoder() {
+            return decoder;
+        }
+    }
+}
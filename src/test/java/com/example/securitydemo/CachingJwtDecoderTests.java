@@ -0,0 +1,151 @@
+package com.example.securitydemo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies that the {@link CachingJwtDecoder} serves repeated tokens from the cache
+ * until they expire, stays within its size, never serves a token for another and
+ * reports its hits and misses.
+ */
+public class CachingJwtDecoderTests {
+
+    private final FakeClock clock = new FakeClock();
+
+    // Tokens decoded by the delegate, i.e. the cache misses
+    private final List<String> decoded = new ArrayList<>();
+
+    // Tokens are named after their lifetime in seconds, "none" has no expiry
+    private final JwtDecoder delegate = token -> {
+        decoded.add(token);
+        if (token.startsWith("bad")) {
+            throw new BadJwtException("Invalid signature");
+        }
+        Jwt.Builder jwt = Jwt.withTokenValue(token).header("alg", "none").subject("bob")
+                .issuedAt(clock.instant());
+        if (!token.startsWith("none")) {
+            jwt.expiresAt(clock.instant().plusSeconds(Long.parseLong(token.split("-")[0])));
+        }
+        return jwt.build();
+    };
+
+    @Test
+    void servesRepeatedTokensFromTheCache() {
+        CachingJwtDecoder decoder = createDecoder(100, Duration.ofMinutes(5));
+
+        Jwt first = decoder.decode("60-a");
+        Jwt second = decoder.decode("60-a");
+
+        assertThat(second).isSameAs(first);
+        assertThat(decoded).containsExactly("60-a");
+    }
+
+    @Test
+    void reportsHitsAndMisses() {
+        CachingJwtDecoder decoder = createDecoder(100, Duration.ofMinutes(5));
+        MeterRegistry registry = new SimpleMeterRegistry();
+        new SecurityPipelineMetrics(registry).monitorJwtCache("https://issuer.local", decoder);
+
+        decoder.decode("60-a");
+        decoder.decode("60-a");
+        decoder.decode("60-b");
+
+        assertThat(decoder.getHitCount()).isEqualTo(1);
+        assertThat(decoder.getMissCount()).isEqualTo(2);
+        assertThat(registry.get("cache.gets").tags("cache", "security.jwt.cache", "issuer", "https://issuer.local")
+                .tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tags("cache", "security.jwt.cache", "issuer", "https://issuer.local")
+                .tag("result", "miss").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void expiresEntriesAtTheExpiryOfTheirToken() {
+        CachingJwtDecoder decoder = createDecoder(100, Duration.ofMinutes(5));
+        decoder.decode("60-a");
+
+        clock.advance(Duration.ofSeconds(59));
+        decoder.decode("60-a");
+        assertThat(decoded).containsExactly("60-a");
+
+        clock.advance(Duration.ofSeconds(1));
+        decoder.decode("60-a");
+        assertThat(decoded).containsExactly("60-a", "60-a");
+    }
+
+    @Test
+    void capsTheLifetimeOfEntriesAtTheMaximumTtl() {
+        CachingJwtDecoder decoder = createDecoder(100, Duration.ofMinutes(1));
+        decoder.decode("3600-a");
+
+        clock.advance(Duration.ofMinutes(1));
+        decoder.decode("3600-a");
+
+        assertThat(decoded).containsExactly("3600-a", "3600-a");
+    }
+
+    @Test
+    void doesNotCacheTokensWithoutExpiryOrFailures() {
+        CachingJwtDecoder decoder = createDecoder(100, Duration.ofMinutes(5));
+
+        decoder.decode("none-a");
+        decoder.decode("none-a");
+        assertThatThrownBy(() -> decoder.decode("bad-a")).isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> decoder.decode("bad-a")).isInstanceOf(BadJwtException.class);
+
+        assertThat(decoded).containsExactly("none-a", "none-a", "bad-a", "bad-a");
+        assertThat(decoder.estimatedSize()).isZero();
+    }
+
+    @Test
+    void staysWithinTheMaximumSize() {
+        CachingJwtDecoder decoder = createDecoder(10, Duration.ofMinutes(5));
+
+        for (int i = 0; i < 100; i++) {
+            decoder.decode("60-" + i);
+        }
+
+        assertThat(decoder.estimatedSize()).isEqualTo(10);
+    }
+
+    @Test
+    void doesNotServeTokensWithTheSameKeyForEachOther() {
+        // Keys made of the first characters only, so that tokens of the same lifetime collide
+        CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, 100, Duration.ofMinutes(5),
+                token -> token.substring(0, 3), clock, clock);
+
+        Jwt first = decoder.decode("60-a");
+        Jwt second = decoder.decode("60-b");
+
+        assertThat(first.getTokenValue()).isEqualTo("60-a");
+        assertThat(second.getTokenValue()).isEqualTo("60-b");
+        assertThat(decoded).containsExactly("60-a", "60-b");
+    }
+
+    @Test
+    void keysByDigestOfTheWholeToken() {
+        CachingJwtDecoder decoder = createDecoder(100, Duration.ofMinutes(5));
+        String token = "60-" + "x".repeat(1000);
+
+        decoder.decode(token);
+        decoder.decode(token);
+        decoder.decode(token + "y");
+
+        assertThat(decoded).containsExactly(token, token + "y");
+    }
+
+    private CachingJwtDecoder createDecoder(long maximumSize, Duration maximumTtl) {
+        return new CachingJwtDecoder(delegate, maximumSize, maximumTtl, CachingJwtDecoder::digest, clock, clock);
+    }
+}
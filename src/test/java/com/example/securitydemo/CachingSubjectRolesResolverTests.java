@@ -0,0 +1,198 @@
+package com.example.securitydemo;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies the lookups, expiry and background refreshes of the
+ * {@link CachingSubjectRolesResolver}, driven by a fake ticker and an executor
+ * which runs the refreshes only when told to.
+ */
+public class CachingSubjectRolesResolverTests {
+
+    private static final Duration TTL = Duration.ofMinutes(10);
+    private static final Duration REFRESH_AFTER = Duration.ofMinutes(5);
+    private static final Duration NEGATIVE_TTL = Duration.ofMinutes(1);
+
+    private final FakeClock ticker = new FakeClock();
+    private final ManualExecutor executor = new ManualExecutor();
+
+    private final Map<String, Collection<String>> roles = new ConcurrentHashMap<>(Map.of("bob", Set.of("USER")));
+    private final AtomicInteger lookups = new AtomicInteger();
+    private volatile RuntimeException failure;
+
+    private final SubjectRolesResolver backend = subject -> {
+        lookups.incrementAndGet();
+        RuntimeException current = failure;
+        if (current != null) {
+            throw current;
+        }
+        return roles.get(subject);
+    };
+
+    @Test
+    void loadsConcurrentMissesOfASubjectOnce() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SubjectRolesResolver blockingBackend = subject -> {
+            loading.countDown();
+            await(release);
+            return backend.getRolesBySubject(subject);
+        };
+        CachingSubjectRolesResolver resolver = new CachingSubjectRolesResolver(blockingBackend, 100, TTL,
+                REFRESH_AFTER, NEGATIVE_TTL, executor, ticker);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable);
+            callers.add(thread);
+            return thread;
+        });
+        try {
+            List<Future<Collection<String>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> {
+                    await(start);
+                    return resolver.getRolesBySubject("bob");
+                }));
+            }
+            start.countDown();
+            assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+            // Let all callers reach the cache before the first load completes
+            awaitBlocked(callers, threads);
+            release.countDown();
+
+            for (Future<Collection<String>> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).containsExactly("USER");
+            }
+            assertThat(lookups).hasValue(1);
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void cachesSubjectsWithoutRolesForTheNegativeTtl() {
+        CachingSubjectRolesResolver resolver = createResolver();
+
+        assertThat(resolver.getRolesBySubject("nobody")).isEmpty();
+        ticker.advance(NEGATIVE_TTL.minusSeconds(1));
+        assertThat(resolver.getRolesBySubject("nobody")).isEmpty();
+        assertThat(lookups).hasValue(1);
+
+        roles.put("nobody", Set.of("USER"));
+        ticker.advance(Duration.ofSeconds(1));
+        assertThat(resolver.getRolesBySubject("nobody")).containsExactly("USER");
+        assertThat(lookups).hasValue(2);
+    }
+
+    @Test
+    void servesCurrentRolesWhileRefreshing() {
+        CachingSubjectRolesResolver resolver = createResolver();
+        assertThat(resolver.getRolesBySubject("bob")).containsExactly("USER");
+
+        roles.put("bob", Set.of("ADMIN"));
+        ticker.advance(REFRESH_AFTER.plusSeconds(1));
+        // The refresh is only scheduled, the caller gets the current roles right away
+        assertThat(resolver.getRolesBySubject("bob")).containsExactly("USER");
+        assertThat(lookups).hasValue(1);
+
+        executor.runAll();
+        assertThat(lookups).hasValue(2);
+        assertThat(resolver.getRolesBySubject("bob")).containsExactly("ADMIN");
+    }
+
+    @Test
+    void keepsCurrentRolesWhenRefreshFails() {
+        CachingSubjectRolesResolver resolver = createResolver();
+        assertThat(resolver.getRolesBySubject("bob")).containsExactly("USER");
+
+        failure = new IllegalStateException("Database not available");
+        ticker.advance(REFRESH_AFTER.plusSeconds(1));
+        assertThat(resolver.getRolesBySubject("bob")).containsExactly("USER");
+        executor.runAll();
+
+        assertThat(lookups).hasValue(2);
+        assertThat(resolver.getRolesBySubject("bob")).containsExactly("USER");
+
+        // Until the roles expire, then the failure reaches the caller
+        executor.runAll();
+        ticker.advance(TTL.minus(REFRESH_AFTER).minusSeconds(1));
+        assertThatThrownBy(() -> resolver.getRolesBySubject("bob")).isSameAs(failure);
+    }
+
+    private CachingSubjectRolesResolver createResolver() {
+        return new CachingSubjectRolesResolver(backend, 100, TTL, REFRESH_AFTER, NEGATIVE_TTL, executor, ticker);
+    }
+
+    private static void awaitBlocked(List<Thread> threads, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            // One caller is loading, the others wait for it
+            long blocked = threads.stream()
+                    .filter(thread -> thread.getState() == Thread.State.WAITING
+                            || thread.getState() == Thread.State.BLOCKED)
+                    .count();
+            if (threads.size() == count && blocked == count) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+        throw new AssertionError("Callers did not reach the cache");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Collects the tasks of the cache, i.e. the refreshes and the maintenance, until
+     * they are run by the test.
+     */
+    private static final class ManualExecutor implements Executor {
+
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = poll()) != null) {
+                task.run();
+            }
+        }
+
+        private synchronized Runnable poll() {
+            return tasks.poll();
+        }
+    }
+}
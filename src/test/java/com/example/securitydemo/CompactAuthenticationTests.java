@@ -0,0 +1,76 @@
+package com.example.securitydemo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Verifies that requests authenticated with a {@link CompactJwtAuthenticationToken}
+ * are authorized like with the full token, and that the claims are still available.
+ */
+@SpringBootTest(properties = "security-demo.compact-authentication.enabled=true")
+class CompactAuthenticationTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private PrivateServerJwtTokenIssuer issuer;
+
+    @Autowired
+    private SubjectBasedGrantedAuthoritiesConverter grantedAuthoritiesConverter;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setup() {
+        mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    @Test
+    void authorizesRequestsByCompactAuthentication() throws Exception {
+        mvc.perform(get("/protected")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("bob")))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Protected content for bob"));
+        mvc.perform(get("/admin")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("bob")))
+                .andExpect(status().isForbidden());
+        mvc.perform(get("/admin")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("admin")))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Admin only content for admin"));
+    }
+
+    @Test
+    void decodesClaimsOnDemand() {
+        Jwt jwt = issuer.getJwtDecoder().decode(SecurityScenarioTests.testPrivateAuthServerToken("admin"));
+        CompactJwtAuthenticationToken authentication = (CompactJwtAuthenticationToken)
+                new CompactJwtAuthenticationConverter(grantedAuthoritiesConverter).convert(jwt);
+
+        assertThat(authentication.getName()).isEqualTo("admin");
+        assertThat(authentication.getIssuer()).isEqualTo(PrivateServerJwtTokenIssuer.ISSUER_NAME);
+        assertThat(authentication.isAuthenticated()).isTrue();
+        // Interned by the GrantedAuthorityRegistry rather than copied
+        assertThat(authentication.getAuthorities()).isSameAs(grantedAuthoritiesConverter.convert(jwt));
+
+        Jwt token = authentication.getToken();
+        assertThat(authentication.getToken()).isSameAs(token);
+        assertThat(token.getClaims()).isEqualTo(jwt.getClaims());
+        assertThat(token.getHeaders()).isEqualTo(jwt.getHeaders());
+        assertThat(authentication.getTokenAttributes()).containsEntry(JwtClaimNames.SUB, "admin");
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.securitydemo;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+
+/**
+ * Clock and Caffeine ticker which only move when told to, so that tests of caches
+ * can expire and refresh entries without waiting.
+ */
+class FakeClock extends Clock implements Ticker {
+
+    private final Instant start = Instant.parse("2024-01-01T00:00:00Z");
+    private final AtomicLong nanos = new AtomicLong();
+
+    void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+
+    @Override
+    public long read() {
+        return nanos.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return start.plusNanos(nanos.get());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.securitydemo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifies the budgets enforced by the {@link GcraRateLimiter} with a simulated clock.
+ */
+class GcraRateLimiterTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void admitsBurstThenSustainedRate() {
+        GcraRateLimiter limiter = new GcraRateLimiter(10, 3);
+        long now = 1_000 * SECOND;
+
+        assertThat(limiter.tryAcquire("bob", now)).isZero();
+        assertThat(limiter.tryAcquire("bob", now)).isZero();
+        assertThat(limiter.tryAcquire("bob", now)).isZero();
+        assertThat(limiter.tryAcquire("bob", now)).isEqualTo(SECOND / 10);
+
+        // Other keys have their own budget
+        assertThat(limiter.tryAcquire("alice", now)).isZero();
+
+        // One permit per emission interval
+        assertThat(limiter.tryAcquire("bob", now + SECOND / 10)).isZero();
+        assertThat(limiter.tryAcquire("bob", now + SECOND / 10)).isPositive();
+
+        // The full burst is available again after a pause
+        long later = now + 10 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("bob", later)).isZero();
+        }
+        assertThat(limiter.tryAcquire("bob", later)).isPositive();
+    }
+
+    @Test
+    void givesBackReleasedPermits() {
+        GcraRateLimiter limiter = new GcraRateLimiter(10, 1);
+        long now = 1_000 * SECOND;
+
+        assertThat(limiter.tryAcquire("bob", now)).isZero();
+        assertThat(limiter.tryAcquire("bob", now)).isPositive();
+        limiter.release("bob");
+        assertThat(limiter.tryAcquire("bob", now)).isZero();
+    }
+
+    @Test
+    void sweepsFullBuckets() {
+        GcraRateLimiter limiter = new GcraRateLimiter(10, 1);
+        long now = 1_000 * SECOND;
+        for (int i = 0; i < 100; i++) {
+            assertThat(limiter.tryAcquire("subject-" + i, now)).isZero();
+        }
+        assertThat(limiter.tryAcquire("recent", now + SECOND)).isZero();
+
+        limiter.sweep(now + SECOND);
+
+        // The buckets of the first subjects are full again, the one of the recent subject is not
+        assertThat(limiter.size()).isEqualTo(1);
+        assertThat(limiter.tryAcquire("recent", now + SECOND)).isPositive();
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.securitydemo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies that the {@link GrantedAuthorityRegistry} maps roles to {@code ROLE_}
+ * authorities and shares them up to its limits.
+ */
+public class GrantedAuthorityRegistryTests {
+
+    @Test
+    void prefixesRoles() {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+
+        assertThat(registry.getAuthority("ADMIN").getAuthority()).isEqualTo("ROLE_ADMIN");
+        assertThat(registry.getAuthorities(List.of("USER", "ADMIN")))
+                .extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER", "ROLE_ADMIN");
+        assertThat(registry.getAuthorities(Set.of())).isEmpty();
+    }
+
+    @Test
+    void sharesAuthoritiesOfEqualRoleSets() {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+
+        Collection<GrantedAuthority> authorities = registry.getAuthorities(Set.of("USER", "ADMIN"));
+
+        assertThat(registry.getAuthorities(new LinkedHashSet<>(List.of("ADMIN", "USER")))).isSameAs(authorities);
+        // Neither lists nor sets of other types are turned into lists or sets
+        assertThat(registry.getAuthorities(new ArrayList<>(List.of("USER")))).isSameAs(
+                registry.getAuthorities(List.of("USER")));
+        assertThat(registry.getAuthority("USER")).isSameAs(registry.getAuthority("USER"));
+    }
+
+    @Test
+    void isNotAffectedByChangesOfTheRolesOfTheCaller() {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+        Set<String> roles = new HashSet<>(Set.of("USER"));
+        Collection<GrantedAuthority> authorities = registry.getAuthorities(roles);
+
+        roles.add("ADMIN");
+
+        assertThat(registry.getAuthorities(Set.of("USER"))).isSameAs(authorities)
+                .extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_USER");
+        assertThat(registry.getAuthorities(roles)).extracting(GrantedAuthority::getAuthority)
+                .containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+        assertThatThrownBy(() -> authorities.add(registry.getAuthority("ADMIN")))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void internsRoleSetsUpToTheMaximum() {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry(2);
+        Collection<GrantedAuthority> first = registry.getAuthorities(Set.of("A"));
+        Collection<GrantedAuthority> second = registry.getAuthorities(Set.of("B"));
+
+        Collection<GrantedAuthority> third = registry.getAuthorities(Set.of("C"));
+
+        assertThat(registry.getAuthorities(Set.of("A"))).isSameAs(first);
+        assertThat(registry.getAuthorities(Set.of("B"))).isSameAs(second);
+        // Still converted, but not shared
+        assertThat(third).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_C");
+        assertThat(registry.getAuthorities(Set.of("C"))).isNotSameAs(third).isEqualTo(third);
+    }
+
+    @Test
+    void internsRolesUpToTheMaximum() {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry(1024, 2);
+        GrantedAuthority first = registry.getAuthority("A");
+        GrantedAuthority second = registry.getAuthority("B");
+
+        GrantedAuthority third = registry.getAuthority("C");
+
+        assertThat(registry.getAuthority("A")).isSameAs(first);
+        assertThat(registry.getAuthority("B")).isSameAs(second);
+        assertThat(third.getAuthority()).isEqualTo("ROLE_C");
+        assertThat(registry.getAuthority("C")).isNotSameAs(third).isEqualTo(third);
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies that the {@link JwtIssuerRegistry} creates issuers lazily, releases idle
+ * ones without disturbing their tokens in progress and follows the changes of a
+ * {@link TenantIssuersFile}.
+ */
+public class JwtIssuerRegistryTests {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final List<String> released = new CopyOnWriteArrayList<>();
+
+    private JwtIssuerRegistry registry;
+
+    @AfterEach
+    void close() {
+        if (registry != null) {
+            registry.close();
+        }
+    }
+
+    @Test
+    void createsDecodersOnFirstToken() {
+        registry = createRegistry(Duration.ofMinutes(30));
+        registry.register("https://tenant-1.local", () -> new StubIssuer("https://tenant-1.local"));
+        registry.register("https://tenant-2.local", () -> new StubIssuer("https://tenant-2.local"));
+
+        assertThat(registry.getIssuerNames()).containsExactlyInAnyOrder("https://tenant-1.local",
+                "https://tenant-2.local");
+        assertThat(created).hasValue(0);
+
+        JwtDecoder decoder = registry.getDecoder("https://tenant-1.local");
+        assertThat(registry.getDecoder("https://tenant-1.local")).isSameAs(decoder);
+        assertThat(registry.resolve("https://tenant-1.local")).isNotNull();
+        assertThat(created).hasValue(1);
+        assertThat(registry.getDecoder("https://unknown.local")).isNull();
+        assertThat(registry.resolve("https://unknown.local")).isNull();
+    }
+
+    @Test
+    void releasesIdleIssuers() throws Exception {
+        registry = createRegistry(Duration.ofMillis(100));
+        StubIssuer permanent = new StubIssuer("https://permanent.local");
+        registry.register(permanent);
+        registry.register("https://tenant.local", () -> new StubIssuer("https://tenant.local"));
+        JwtDecoder permanentDecoder = registry.getDecoder("https://permanent.local");
+        registry.getDecoder("https://tenant.local");
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (closed.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertThat(closed).hasValue(1);
+        assertThat(released).containsExactly("https://tenant.local");
+        assertThat(registry.getDecoder("https://tenant.local")).isNotNull();
+        assertThat(created).hasValue(3);
+        // Issuers registered as instances are only released when removed
+        assertThat(registry.getDecoder("https://permanent.local")).isSameAs(permanentDecoder);
+    }
+
+    @Test
+    void followsTenantIssuersFile() throws Exception {
+        registry = createRegistry(Duration.ofMinutes(30));
+        Path file = directory.resolve("issuers.csv");
+        write(file, Instant.now().minusSeconds(60),
+                "# issuer,jwkSetUri\nhttps://tenant-1.local,https://tenant-1.local/jwks\n"
+                        + "https://tenant-2.local,https://tenant-2.local/jwks\n");
+        try (TenantIssuersFile tenants = new TenantIssuersFile(file, Duration.ofMinutes(30), registry,
+                (issuerName, jwkSetUri) -> new StubIssuer(issuerName))) {
+            assertThat(registry.getIssuerNames()).containsExactlyInAnyOrder("https://tenant-1.local",
+                    "https://tenant-2.local");
+            registry.getDecoder("https://tenant-1.local");
+            registry.getDecoder("https://tenant-2.local");
+
+            write(file, Instant.now(), "https://tenant-2.local,https://tenant-2.local/jwks\n"
+                    + "https://tenant-3.local,https://tenant-3.local/jwks\n");
+            tenants.reload();
+
+            assertThat(registry.getIssuerNames()).containsExactlyInAnyOrder("https://tenant-2.local",
+                    "https://tenant-3.local");
+            // Unchanged issuers keep their decoders
+            assertThat(closed).hasValue(1);
+            registry.getDecoder("https://tenant-2.local");
+            assertThat(created).hasValue(2);
+        }
+    }
+
+    @Test
+    void skipsTenantsWithMalformedJwkSetUri() throws Exception {
+        registry = createRegistry(Duration.ofMinutes(30));
+        Path file = directory.resolve("issuers.csv");
+        write(file, Instant.now().minusSeconds(60), "https://tenant-1.local,tenant-1.local/jwks\n"
+                + "https://tenant-2.local,https://tenant-2.local/jwks\n");
+        try (TenantIssuersFile tenants = new TenantIssuersFile(file, Duration.ofMinutes(30), registry,
+                (issuerName, jwkSetUri) -> new StubIssuer(issuerName))) {
+            assertThat(registry.getIssuerNames()).containsExactly("https://tenant-2.local");
+        }
+    }
+
+    @Test
+    void failsFastWhileAnIssuerCannotBeCreated() {
+        registry = createRegistry(Duration.ofMinutes(30));
+        AtomicInteger attempts = new AtomicInteger();
+        registry.register("https://tenant.local", () -> {
+            attempts.incrementAndGet();
+            throw new IllegalArgumentException("Malformed JWK set URI");
+        });
+
+        assertThatThrownBy(() -> registry.resolve("https://tenant.local"))
+                .isInstanceOf(AuthenticationServiceException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> registry.getDecoder("https://tenant.local"))
+                .isInstanceOf(AuthenticationServiceException.class);
+        assertThat(attempts).hasValue(1);
+
+        // Registering the issuer again, e.g. with a corrected file, tries right away
+        registry.register("https://tenant.local", () -> new StubIssuer("https://tenant.local"));
+        assertThat(registry.getDecoder("https://tenant.local")).isNotNull();
+    }
+
+    @Test
+    void closesReleasedIssuersAfterTheirLastToken() throws Exception {
+        registry = createRegistry(Duration.ofMinutes(30));
+        CountDownLatch decoding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Jwt jwt = Jwt.withTokenValue("token").header("alg", "none").subject("bob").build();
+        registry.register("https://tenant.local", () -> new StubIssuer("https://tenant.local", token -> {
+            decoding.countDown();
+            await(release);
+            return jwt;
+        }));
+        JwtDecoder decoder = registry.getDecoder("https://tenant.local");
+        CompletableFuture<Jwt> decoded = CompletableFuture.supplyAsync(() -> decoder.decode("token"));
+        assertThat(decoding.await(5, TimeUnit.SECONDS)).isTrue();
+
+        registry.unregister("https://tenant.local");
+
+        assertThat(registry.getDecoder("https://tenant.local")).isNull();
+        assertThat(closed).hasValue(0);
+        release.countDown();
+        assertThat(decoded.get(5, TimeUnit.SECONDS)).isSameAs(jwt);
+        assertThat(closed).hasValue(1);
+        // Holders of the decoder of a removed issuer do not bring it back
+        assertThatThrownBy(() -> decoder.decode("token")).isInstanceOf(BadJwtException.class);
+        assertThat(created).hasValue(1);
+    }
+
+    @Test
+    void keepsIssuersRegisteredAsInstances() throws Exception {
+        registry = createRegistry(Duration.ofMinutes(30));
+        registry.register(new StubIssuer("https://permanent.local"));
+        JwtDecoder permanentDecoder = registry.getDecoder("https://permanent.local");
+        Path file = directory.resolve("issuers.csv");
+        write(file, Instant.now().minusSeconds(60), "https://permanent.local,https://attacker.local/jwks\n"
+                + "https://tenant.local,https://tenant.local/jwks\n");
+        try (TenantIssuersFile tenants = new TenantIssuersFile(file, Duration.ofMinutes(30), registry,
+                (issuerName, jwkSetUri) -> new StubIssuer(issuerName))) {
+            assertThat(registry.getDecoder("https://permanent.local")).isSameAs(permanentDecoder);
+            assertThat(registry.register("https://permanent.local", () -> new StubIssuer("https://permanent.local")))
+                    .isFalse();
+
+            write(file, Instant.now(), "https://tenant.local,https://tenant.local/jwks\n");
+            tenants.reload();
+
+            assertThat(registry.getIssuerNames()).containsExactlyInAnyOrder("https://permanent.local",
+                    "https://tenant.local");
+            assertThat(registry.getDecoder("https://permanent.local")).isSameAs(permanentDecoder);
+            assertThat(closed).hasValue(0);
+        }
+    }
+
+    private JwtIssuerRegistry createRegistry(Duration idleTimeout) {
+        return new JwtIssuerRegistry(SupportedJwtTokenIssuer::getJwtDecoder,
+                (issuer, decoder) -> authentication -> authentication, idleTimeout, released::add);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void write(Path file, Instant modifiedTime, String content) throws Exception {
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(modifiedTime));
+    }
+
+    private class StubIssuer implements SupportedJwtTokenIssuer, Closeable {
+
+        private final String issuerName;
+        private final JwtDecoder decoder;
+
+        StubIssuer(String issuerName) {
+            this(issuerName, token -> {
+                throw new UnsupportedOperationException();
+            });
+        }
+
+        StubIssuer(String issuerName, JwtDecoder decoder) {
+            this.issuerName = issuerName;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public String getIssuerName() {
+            return issuerName;
+        }
+
+        @Override
+        public JwtDecoder getJwtDecoder() {
+            created.incrementAndGet();
+            return decoder;
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.securitydemo;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Base64;
+
+import com.nimbusds.jwt.JWTParser;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.security.oauth2.jwt.BadJwtException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies that the {@link JwtIssuerScanner} finds the same issuer as the Nimbus
+ * parser, also for payloads the scan alone cannot decide.
+ */
+public class JwtIssuerScannerTests {
+
+    private static final String HEADER = encode("{\"alg\":\"HS256\",\"typ\":\"JWT\"}");
+
+    @Test
+    void findsTopLevelIssuer() {
+        assertThat(JwtIssuerScanner.issuerOf(token("{\"sub\":\"bob\",\"iss\":\"https://issuer.local\"}")))
+                .isEqualTo("https://issuer.local");
+        assertThat(JwtIssuerScanner.issuerOf(token("{ \"iss\" :\n \"https://issuer.local\" , \"exp\":1}")))
+                .isEqualTo("https://issuer.local");
+    }
+
+    @Test
+    void returnsNullWithoutIssuer() {
+        assertThat(JwtIssuerScanner.issuerOf(token("{\"sub\":\"bob\"}"))).isNull();
+        assertThat(JwtIssuerScanner.issuerOf(token("{}"))).isNull();
+    }
+
+    @Test
+    void ignoresIssuerNestedInObjectsAndArrays() {
+        assertThat(JwtIssuerScanner.issuerOf(token(
+                "{\"act\":{\"iss\":\"https://actor.local\"},\"iss\":\"https://issuer.local\"}")))
+                .isEqualTo("https://issuer.local");
+        assertThat(JwtIssuerScanner.issuerOf(token("{\"act\":{\"iss\":\"https://actor.local\"}}"))).isNull();
+        assertThat(JwtIssuerScanner.issuerOf(token("{\"chain\":[{\"iss\":\"https://actor.local\"}],\"sub\":\"bob\"}")))
+                .isNull();
+        assertThat(JwtIssuerScanner.issuerOf(token("{\"aud\":[\"iss\"],\"iss\":\"https://issuer.local\"}")))
+                .isEqualTo("https://issuer.local");
+    }
+
+    @Test
+    void ignoresLookalikesInsideStrings() {
+        assertThat(JwtIssuerScanner.issuerOf(token(
+                "{\"note\":\"{\\\"iss\\\":\\\"https://fake.local\\\"}\",\"iss\":\"https://issuer.local\"}")))
+                .isEqualTo("https://issuer.local");
+        assertThat(JwtIssuerScanner.issuerOf(token("{\"note\":\"}}]] \\\"\",\"iss\":\"https://issuer.local\"}")))
+                .isEqualTo("https://issuer.local");
+    }
+
+    @Test
+    void unescapesIssuerLikeTheParser() {
+        String escapedValue = token("{\"iss\":\"https:\\/\\/issuer.local\"}");
+        assertThat(JwtIssuerScanner.issuerOf(escapedValue)).isEqualTo("https://issuer.local");
+        assertSameAsParser(escapedValue);
+
+        String escapedKey = token("{\"\\u0069ss\":\"https://issuer.local\"}");
+        assertThat(JwtIssuerScanner.issuerOf(escapedKey)).isEqualTo("https://issuer.local");
+        assertSameAsParser(escapedKey);
+    }
+
+    @Test
+    void leavesDuplicateIssuersToTheParser() {
+        assertSameAsParser(token("{\"iss\":\"https://issuer.local\",\"iss\":\"https://other.local\"}"));
+        assertSameAsParser(token("{\"iss\":\"https://issuer.local\",\"\\u0069ss\":\"https://other.local\"}"));
+    }
+
+    @Test
+    void rejectsIssuersOtherThanStrings() {
+        assertThatThrownBy(() -> JwtIssuerScanner.issuerOf(token("{\"iss\":42}")))
+                .isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> JwtIssuerScanner.issuerOf(token("{\"iss\":[\"https://issuer.local\"]}")))
+                .isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> JwtIssuerScanner.issuerOf(token("{\"iss\":{\"url\":\"https://issuer.local\"}}")))
+                .isInstanceOf(BadJwtException.class);
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertThatThrownBy(() -> JwtIssuerScanner.issuerOf("wrong-token")).isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> JwtIssuerScanner.issuerOf("a.b")).isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> JwtIssuerScanner.issuerOf("a.b.c.d")).isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> JwtIssuerScanner.issuerOf(HEADER + ".not+base64url!.c2ln"))
+                .isInstanceOf(BadJwtException.class);
+        // Unterminated string, which the scan cannot decide either
+        assertThatThrownBy(() -> JwtIssuerScanner.issuerOf(token("{\"iss\":\"https://issuer.local}")))
+                .isInstanceOf(BadJwtException.class);
+    }
+
+    @Test
+    void handlesBase64Padding() {
+        String payload = "{\"iss\":\"https://issuer.local/a\"}";
+        String padded = Base64.getUrlEncoder().encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        assertThat(padded).endsWith("=");
+
+        assertThat(JwtIssuerScanner.issuerOf(HEADER + "." + padded + ".c2ln")).isEqualTo("https://issuer.local/a");
+        assertThatThrownBy(() -> JwtIssuerScanner.issuerOf(HEADER + "." + padded + "==.c2ln"))
+                .isInstanceOf(BadJwtException.class);
+    }
+
+    private static void assertSameAsParser(String token) {
+        String expected;
+        try {
+            expected = JWTParser.parse(token).getJWTClaimsSet().getIssuer();
+        } catch (ParseException e) {
+            assertThatThrownBy(() -> JwtIssuerScanner.issuerOf(token)).isInstanceOf(BadJwtException.class);
+            return;
+        }
+        assertThat(JwtIssuerScanner.issuerOf(token)).isEqualTo(expected);
+    }
+
+    private static String token(String payload) {
+        return HEADER + "." + encode(payload) + ".c2ln";
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
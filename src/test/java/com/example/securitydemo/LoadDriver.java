@@ -0,0 +1,149 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal closed-loop HTTP load driver used by the load tests. Each worker sends
+ * its next request as soon as the previous one completes, cycling through the
+ * given mix of requests.
+ */
+final class LoadDriver {
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final URI baseUri;
+
+    LoadDriver(int port) {
+        this.baseUri = URI.create("http://127.0.0.1:" + port);
+    }
+
+    /**
+     * Sends the requests with the given number of concurrent workers and reports
+     * the throughput and latency distribution.
+     */
+    Result run(List<Request> mix, int concurrency, int totalRequests) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong errors = new AtomicLong();
+        List<Future<long[]>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    long[] latencies = new long[totalRequests / concurrency + 1];
+                    int count = 0;
+                    int index;
+                    while ((index = next.getAndIncrement()) < totalRequests) {
+                        Request request = mix.get(index % mix.size());
+                        long sent = System.nanoTime();
+                        if (send(request) != request.expectedStatus()) {
+                            errors.incrementAndGet();
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - sent;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        long[] latencies = new long[0];
+        for (Future<long[]> worker : workers) {
+            long[] workerLatencies = worker.get();
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + workerLatencies.length);
+            System.arraycopy(workerLatencies, 0, latencies, offset, workerLatencies.length);
+        }
+        Arrays.sort(latencies);
+        return new Result(latencies, errors.get(), elapsed);
+    }
+
+    private int send(Request request) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(baseUri.resolve(request.path()))
+                .timeout(Duration.ofSeconds(30))
+                .GET();
+        if (request.token() != null) {
+            builder.header("Authorization", "Bearer " + request.token());
+        }
+        try {
+            return client.send(builder.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * A request of the mix and the status it is expected to complete with.
+     */
+    record Request(String path, String token, int expectedStatus) {
+    }
+
+    /**
+     * Latencies of all completed requests in ascending order.
+     */
+    record Result(long[] latencies, long errors, Duration elapsed) {
+
+        double throughput() {
+            return latencies.length / (elapsed.toNanos() / 1e9);
+        }
+
+        Duration percentile(double percentile) {
+            if (latencies.length == 0) {
+                return Duration.ZERO;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return Duration.ofNanos(latencies[Math.max(0, index)]);
+        }
+
+        /**
+         * Latency distribution in buckets doubling in size, starting at 250µs.
+         */
+        String histogram() {
+            StringBuilder histogram = new StringBuilder();
+            long bound = TimeUnit.MICROSECONDS.toNanos(250);
+            int from = 0;
+            while (from < latencies.length) {
+                int to = from;
+                while (to < latencies.length && latencies[to] <= bound) {
+                    to++;
+                }
+                int count = to - from;
+                histogram.append(String.format("  <= %8.2fms %8d %s%n", bound / 1e6, count,
+                        "#".repeat((int) Math.ceil(50.0 * count / latencies.length))));
+                from = to;
+                bound *= 2;
+            }
+            return histogram.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, %d errors, %.0f req/s, latency p50=%dms p90=%dms p99=%dms p99.9=%dms max=%dms",
+                    latencies.length, errors, throughput(),
+                    percentile(50).toMillis(), percentile(90).toMillis(), percentile(99).toMillis(),
+                    percentile(99.9).toMillis(), percentile(100).toMillis());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.securitydemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for an OIDC provider, so that load tests do not depend on the
+ * live mock OIDC provider. It publishes the discovery document and the JWK set,
+ * and signs RS256 tokens for arbitrary subjects.
+ */
+final class LocalOidcServer implements Closeable {
+
+    private static final String JWKS_PATH = "/.well-known/jwks.json";
+
+    private final HttpServer server;
+    private final RSAKey signingKey;
+    private final JWSSigner signer;
+
+    LocalOidcServer() throws IOException, JOSEException {
+        signingKey = new RSAKeyGenerator(2048).keyID("local-oidc").generate();
+        signer = new RSASSASigner(signingKey);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(JWKS_PATH, exchange -> respond(exchange, new JWKSet(signingKey).toString()));
+        server.createContext("/.well-known/openid-configuration", exchange -> respond(exchange,
+                String.format("{\"issuer\":\"%s\",\"jwks_uri\":\"%s\"}", issuer(), jwkSetUri())));
+        server.start();
+    }
+
+    String issuer() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    String jwkSetUri() {
+        return issuer() + JWKS_PATH;
+    }
+
+    /**
+     * Signs a token for the subject which stays valid for the given time.
+     */
+    String token(String subject, Duration validity) {
+        Instant now = Instant.now();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuer())
+                .subject(subject)
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(validity)))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(),
+                claims);
+        try {
+            jwt.sign(signer);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Unable to sign token", e);
+        }
+        return jwt.serialize();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.securitydemo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the full-stack cost of authentication without any external dependency:
+ * the tokens are RS256 tokens of many subjects signed by a {@link LocalOidcServer},
+ * which the application trusts through an additional {@link SupportedJwtTokenIssuer}.
+ * <p>
+ * The application runs on a local port and each mix of requests is reported with its
+ * throughput and latency histogram, so the numbers can be compared across commits.
+ * Run with {@code ./gradlew loadTest}.
+ */
+@Tag("load")
+public class OfflineLoadTests {
+
+    private static final int SUBJECTS = 1000;
+    private static final int CONCURRENCY = 64;
+    private static final int REQUESTS = 50_000;
+
+    private static LocalOidcServer oidcServer;
+    private static ConfigurableApplicationContext context;
+    private static LoadDriver driver;
+
+    @BeforeAll
+    static void start() throws Exception {
+        oidcServer = new LocalOidcServer();
+        context = new SpringApplicationBuilder(SecurityDemoApplication.class)
+                .initializers(OfflineLoadTests::registerLocalIssuer)
+                .properties("server.port=0")
+                .run();
+        driver = new LoadDriver(context.getEnvironment().getProperty("local.server.port", Integer.class));
+    }
+
+    @AfterAll
+    static void stop() {
+        if (context != null) {
+            context.close();
+        }
+        if (oidcServer != null) {
+            oidcServer.close();
+        }
+    }
+
+    @Test
+    void reportsThroughputAndLatencyPerMix() throws Exception {
+        List<LoadDriver.Request> publicMix = List.of(new LoadDriver.Request("/public", null, 200));
+        List<LoadDriver.Request> protectedMix = new ArrayList<>();
+        List<LoadDriver.Request> adminMix = new ArrayList<>();
+        String adminToken = oidcServer.token("admin", Duration.ofHours(1));
+        for (int i = 0; i < SUBJECTS; i++) {
+            String userToken = oidcServer.token("user-" + i, Duration.ofHours(1));
+            protectedMix.add(new LoadDriver.Request("/protected", userToken, 200));
+            adminMix.add(new LoadDriver.Request("/admin", userToken, 403));
+            adminMix.add(new LoadDriver.Request("/admin", adminToken, 200));
+        }
+        List<LoadDriver.Request> combinedMix = new ArrayList<>();
+        for (int i = 0; i < SUBJECTS; i++) {
+            combinedMix.add(publicMix.get(0));
+            combinedMix.add(protectedMix.get(i));
+            combinedMix.add(adminMix.get(2 * i));
+            combinedMix.add(adminMix.get(2 * i + 1));
+        }
+
+        Map<String, List<LoadDriver.Request>> mixes = new LinkedHashMap<>();
+        mixes.put("/public", publicMix);
+        mixes.put("/protected", protectedMix);
+        mixes.put("/admin", adminMix);
+        mixes.put("combined", combinedMix);
+
+        // Warm up the JIT, the caches and the connection pools first
+        driver.run(combinedMix, CONCURRENCY, REQUESTS);
+        for (Map.Entry<String, List<LoadDriver.Request>> mix : mixes.entrySet()) {
+            LoadDriver.Result result = driver.run(mix.getValue(), CONCURRENCY, REQUESTS);
+            System.out.printf("%s, %d concurrent clients: %s%n%s", mix.getKey(), CONCURRENCY, result,
+                    result.histogram());
+            assertThat(result.errors()).as(mix.getKey()).isZero();
+        }
+    }
+
+    private static void registerLocalIssuer(ConfigurableApplicationContext context) {
+        ((GenericApplicationContext) context).registerBean("localOidcJwtTokenIssuer", MockOidcJwtTokenIssuer.class,
+                () -> new MockOidcJwtTokenIssuer(oidcServer.issuer(), oidcServer.jwkSetUri(),
+                        new SecurityDemoProperties.Jwks(), BlockingExecutors.platform()));
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.securitydemo;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathTrieAuthorizationManagerTests {
+
+    private static final Authentication ANONYMOUS = new AnonymousAuthenticationToken("key", "anonymousUser",
+            AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+    private static final Authentication USER = authenticated("ROLE_USER");
+    private static final Authentication ADMIN = authenticated("ROLE_ADMIN");
+
+    private final PathTrieAuthorizationManager manager = PathTrieAuthorizationManager.builder()
+            .permitAll("/public")
+            .hasRole("/admin", "ADMIN")
+            .anyRequestAuthenticated()
+            .build();
+
+    @Test
+    void grantsSameAccessAsTheAntMatcherRules() {
+        assertThat(isGranted(manager, "/public", ANONYMOUS)).isTrue();
+        assertThat(isGranted(manager, "/public", USER)).isTrue();
+
+        assertThat(isGranted(manager, "/protected", ANONYMOUS)).isFalse();
+        assertThat(isGranted(manager, "/protected", USER)).isTrue();
+        assertThat(isGranted(manager, "/protected", ADMIN)).isTrue();
+
+        assertThat(isGranted(manager, "/admin", ANONYMOUS)).isFalse();
+        assertThat(isGranted(manager, "/admin", USER)).isFalse();
+        assertThat(isGranted(manager, "/admin", ADMIN)).isTrue();
+    }
+
+    @Test
+    void matchesPathsExactlyLikeAntPatterns() {
+        assertThat(isGranted(manager, "/public/nested", ANONYMOUS)).isFalse();
+        assertThat(isGranted(manager, "/Public", ANONYMOUS)).isFalse();
+        assertThat(isGranted(manager, "/admin/nested", USER)).isTrue();
+    }
+
+    @Test
+    void matchesTrailingSlashLikeMvcMatchers() {
+        assertThat(isGranted(manager, "/public/", ANONYMOUS)).isTrue();
+        assertThat(isGranted(manager, "/admin/", USER)).isFalse();
+        assertThat(isGranted(manager, "/admin/", ADMIN)).isTrue();
+
+        PathTrieAuthorizationManager wildcards = PathTrieAuthorizationManager.builder()
+                .hasRole("/docs/*/index", "ADMIN")
+                .hasRole("/reports/**", "ADMIN")
+                .anyRequestAuthenticated()
+                .build();
+        assertThat(isGranted(wildcards, "/docs/a/index/", USER)).isFalse();
+        assertThat(isGranted(wildcards, "/reports/", USER)).isFalse();
+        assertThat(isGranted(wildcards, "/reports", USER)).isFalse();
+    }
+
+    @Test
+    void appliesFirstDeclaredOfMatchingRules() {
+        PathTrieAuthorizationManager wildcards = PathTrieAuthorizationManager.builder()
+                .permitAll("/docs/*/index")
+                .hasRole("/docs/**", "ADMIN")
+                .denyAll("/docs/private/index")
+                .build();
+
+        assertThat(isGranted(wildcards, "/docs/private/index", ANONYMOUS)).isTrue();
+        assertThat(isGranted(wildcards, "/docs", USER)).isFalse();
+        assertThat(isGranted(wildcards, "/docs", ADMIN)).isTrue();
+        assertThat(isGranted(wildcards, "/docs/a/b/c", ADMIN)).isTrue();
+        assertThat(isGranted(wildcards, "/other", ADMIN)).isFalse();
+    }
+
+    @Test
+    void checksAllAuthoritiesOfTheRequest() {
+        assertThat(isGranted(manager, "/admin", authenticated("ROLE_ADMIN"))).isTrue();
+        assertThat(isGranted(manager, "/admin", authenticated("ROLE_USER", "ROLE_ADMIN"))).isTrue();
+        assertThat(isGranted(manager, "/admin", authenticated("ROLE_USER"))).isFalse();
+        assertThat(isGranted(manager, "/admin", authenticated())).isFalse();
+    }
+
+    private static boolean isGranted(PathTrieAuthorizationManager manager, String path,
+            Authentication authentication) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        return manager.check(() -> authentication,
+                new RequestAuthorizationContext(request, Collections.emptyMap())).isGranted();
+    }
+
+    private static Authentication authenticated(String... authorities) {
+        TestingAuthenticationToken authentication = new TestingAuthenticationToken("user", null, authorities);
+        authentication.setAuthenticated(true);
+        return authentication;
+    }
+}
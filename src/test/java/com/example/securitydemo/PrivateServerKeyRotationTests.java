@@ -0,0 +1,121 @@
+package com.example.securitydemo;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.jwk.gen.OctetSequenceKeyGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies that {@link PrivateServerJwtTokenIssuer} selects HMAC keys by kid and picks
+ * up rotated keys from the key file.
+ */
+public class PrivateServerKeyRotationTests {
+
+    @TempDir
+    Path directory;
+
+    private PrivateServerJwtTokenIssuer issuer;
+
+    @AfterEach
+    void close() {
+        if (issuer != null) {
+            issuer.close();
+        }
+    }
+
+    @Test
+    void verifiesTokensWithKeysSelectedByKid() throws Exception {
+        OctetSequenceKey key1 = generateKey("key-1");
+        OctetSequenceKey key2 = generateKey("key-2");
+        issuer = createIssuer(writeKeyFile(Instant.now(), key1, key2));
+        JwtDecoder decoder = issuer.getJwtDecoder();
+
+        assertThat(decoder.decode(token(key1.getKeyID(), key1.toByteArray(), "bob")).getSubject()).isEqualTo("bob");
+        assertThat(decoder.decode(token(key2.getKeyID(), key2.toByteArray(), "bob")).getSubject()).isEqualTo("bob");
+        assertThat(decoder.decode(SecurityScenarioTests.testPrivateAuthServerToken("bob")).getSubject())
+                .isEqualTo("bob");
+        assertThatThrownBy(() -> decoder.decode(token(key1.getKeyID(), key2.toByteArray(), "bob")))
+                .isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> decoder.decode(token("unknown", key1.toByteArray(), "bob")))
+                .isInstanceOf(BadJwtException.class);
+    }
+
+    @Test
+    void picksUpRotatedKeys() throws Exception {
+        OctetSequenceKey oldKey = generateKey("old");
+        OctetSequenceKey newKey = generateKey("new");
+        Path keyFile = writeKeyFile(Instant.now().minusSeconds(60), oldKey);
+        issuer = createIssuer(keyFile);
+        JwtDecoder decoder = issuer.getJwtDecoder();
+        String oldToken = token(oldKey.getKeyID(), oldKey.toByteArray(), "bob");
+        String newToken = token(newKey.getKeyID(), newKey.toByteArray(), "bob");
+        assertThat(decoder.decode(oldToken).getSubject()).isEqualTo("bob");
+
+        writeKeyFile(Instant.now(), newKey);
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!isValid(decoder, newToken) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(isValid(decoder, newToken)).isTrue();
+        assertThat(isValid(decoder, oldToken)).isFalse();
+    }
+
+    private PrivateServerJwtTokenIssuer createIssuer(Path keyFile) {
+        SecurityDemoProperties.PrivateServer properties = new SecurityDemoProperties.PrivateServer();
+        properties.setKeyFile(keyFile);
+        properties.setKeyReloadInterval(Duration.ofMillis(50));
+        return new PrivateServerJwtTokenIssuer(properties);
+    }
+
+    private Path writeKeyFile(Instant modifiedTime, OctetSequenceKey... keys) throws Exception {
+        Path keyFile = directory.resolve("keys.json");
+        Files.write(keyFile, new JWKSet(Arrays.asList(keys)).toString(false)
+                .getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(keyFile, FileTime.from(modifiedTime));
+        return keyFile;
+    }
+
+    private static boolean isValid(JwtDecoder decoder, String token) {
+        try {
+            decoder.decode(token);
+            return true;
+        } catch (BadJwtException e) {
+            return false;
+        }
+    }
+
+    private static OctetSequenceKey generateKey(String keyId) throws JOSEException {
+        return new OctetSequenceKeyGenerator(256).keyID(keyId).generate();
+    }
+
+    private static String token(String keyId, byte[] secret, String subject) throws JOSEException {
+        JWSObject jwsObject = new JWSObject(new JWSHeader.Builder(JWSAlgorithm.HS256).keyID(keyId).build(),
+                new Payload("{\"sub\": \"" + subject + "\", \"iss\": \"" + PrivateServerJwtTokenIssuer.ISSUER_NAME
+                        + "\"}"));
+        jwsObject.sign(new MACSigner(secret));
+        return jwsObject.serialize();
+    }
+}
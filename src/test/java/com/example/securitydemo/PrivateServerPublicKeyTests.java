@@ -0,0 +1,130 @@
+package com.example.securitydemo;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.Arrays;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.util.Base64URL;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies that {@link PrivateServerJwtTokenIssuer} verifies ES256 and EdDSA tokens
+ * with the public keys of the key file, next to the HMAC tokens.
+ */
+public class PrivateServerPublicKeyTests {
+
+    @TempDir
+    Path directory;
+
+    private PrivateServerJwtTokenIssuer issuer;
+
+    @AfterEach
+    void close() {
+        if (issuer != null) {
+            issuer.close();
+        }
+    }
+
+    @Test
+    void verifiesEs256AndEdDsaTokens() throws Exception {
+        ECKey ecKey = new ECKeyGenerator(Curve.P_256).keyID("ec").generate();
+        KeyPair edKeyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        issuer = createIssuer(writeKeyFile(ecKey.toPublicJWK(), toOctetKeyPair("ed", edKeyPair)));
+        JwtDecoder decoder = issuer.getJwtDecoder();
+
+        assertThat(decoder.decode(es256Token("ec", ecKey, "bob")).getSubject()).isEqualTo("bob");
+        assertThat(decoder.decode(edDsaToken("ed", edKeyPair, "bob")).getSubject()).isEqualTo("bob");
+        assertThat(decoder.decode(SecurityScenarioTests.testPrivateAuthServerToken("bob")).getSubject())
+                .isEqualTo("bob");
+    }
+
+    @Test
+    void rejectsTokensNotMatchingTheirKey() throws Exception {
+        ECKey ecKey = new ECKeyGenerator(Curve.P_256).keyID("ec").generate();
+        ECKey otherEcKey = new ECKeyGenerator(Curve.P_256).generate();
+        KeyPair edKeyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        KeyPair otherEdKeyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        issuer = createIssuer(writeKeyFile(ecKey.toPublicJWK(), toOctetKeyPair("ed", edKeyPair)));
+        JwtDecoder decoder = issuer.getJwtDecoder();
+
+        assertThatThrownBy(() -> decoder.decode(es256Token("ec", otherEcKey, "bob")))
+                .isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> decoder.decode(edDsaToken("ed", otherEdKeyPair, "bob")))
+                .isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> decoder.decode(es256Token("unknown", ecKey, "bob")))
+                .isInstanceOf(BadJwtException.class);
+        // Keys are only used with the algorithm of their type
+        assertThatThrownBy(() -> decoder.decode(es256Token("ed", ecKey, "bob")))
+                .isInstanceOf(BadJwtException.class);
+        String token = edDsaToken("ed", edKeyPair, "bob");
+        String tampered = token.substring(0, token.lastIndexOf('.') + 1) + es256Token("ec", ecKey, "bob")
+                .substring(token.lastIndexOf('.') + 1);
+        assertThatThrownBy(() -> decoder.decode(tampered)).isInstanceOf(BadJwtException.class);
+    }
+
+    private PrivateServerJwtTokenIssuer createIssuer(Path publicKeyFile) {
+        SecurityDemoProperties.PrivateServer properties = new SecurityDemoProperties.PrivateServer();
+        properties.setPublicKeyFile(publicKeyFile);
+        properties.setKeyReloadInterval(Duration.ofMillis(50));
+        return new PrivateServerJwtTokenIssuer(properties);
+    }
+
+    private Path writeKeyFile(JWK... keys) throws Exception {
+        Path keyFile = directory.resolve("public-keys.json");
+        Files.write(keyFile, new JWKSet(Arrays.asList(keys)).toString(false).getBytes(StandardCharsets.UTF_8));
+        return keyFile;
+    }
+
+    private static OctetKeyPair toOctetKeyPair(String keyId, KeyPair keyPair) {
+        // The X.509 encoding of an Ed25519 public key ends with its 32 bytes
+        byte[] encoded = keyPair.getPublic().getEncoded();
+        byte[] x = Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length);
+        return new OctetKeyPair.Builder(Curve.Ed25519, Base64URL.encode(x)).keyID(keyId).build();
+    }
+
+    private static String es256Token(String keyId, ECKey key, String subject) throws Exception {
+        JWSObject jwsObject = new JWSObject(new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(keyId).build(),
+                payload(subject));
+        jwsObject.sign(new ECDSASigner(key));
+        return jwsObject.serialize();
+    }
+
+    private static String edDsaToken(String keyId, KeyPair keyPair, String subject) throws Exception {
+        // Signed with the JDK, since the Nimbus Ed25519Signer requires Tink
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.EdDSA).keyID(keyId).build();
+        String signingInput = header.toBase64URL() + "." + payload(subject).toBase64URL();
+        Signature signature = Signature.getInstance("Ed25519");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + Base64URL.encode(signature.sign());
+    }
+
+    private static Payload payload(String subject) {
+        return new Payload("{\"sub\": \"" + subject + "\", \"iss\": \"" + PrivateServerJwtTokenIssuer.ISSUER_NAME
+                + "\"}");
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.securitydemo;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Verifies that the {@link RateLimitingFilter} rejects the requests of a subject or an
+ * issuer over its budget without affecting other subjects.
+ */
+@SpringBootTest(properties = {
+        "security-demo.rate-limit.enabled=true",
+        "security-demo.rate-limit.subject-requests-per-second=0.01",
+        "security-demo.rate-limit.subject-burst=2"
+})
+class RateLimitingFilterTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setup() {
+        mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    @Test
+    void rejectsRequestsOverSubjectBudget() throws Exception {
+        String token = "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("limited");
+        mvc.perform(get("/protected").header("Authorization", token)).andExpect(status().isOk());
+        mvc.perform(get("/protected").header("Authorization", token)).andExpect(status().isOk());
+        mvc.perform(get("/protected").header("Authorization", token))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+
+        mvc.perform(get("/protected")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("bob")))
+                .andExpect(status().isOk());
+        // Public resources are not limited
+        mvc.perform(get("/public")).andExpect(status().isOk());
+    }
+
+    @Test
+    void rejectsRequestsOverIssuerBudget() throws Exception {
+        SecurityDemoProperties.RateLimit properties = new SecurityDemoProperties.RateLimit();
+        properties.setSubjectRequestsPerSecond(0.01);
+        properties.setSubjectBurst(1);
+        properties.setIssuerRequestsPerSecond(0.01);
+        properties.setIssuerBurst(2);
+        RateLimitingFilter filter = new RateLimitingFilter(properties);
+
+        assertThat(filter(filter, "alice").getStatus()).isEqualTo(HttpStatus.OK.value());
+        // Over the subject budget, which does not count against the issuer
+        assertThat(filter(filter, "alice").getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+        assertThat(filter(filter, "bob").getStatus()).isEqualTo(HttpStatus.OK.value());
+        // Over the issuer budget, although the subject has its own budget left
+        MockHttpServletResponse response = filter(filter, "carol");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isNotNull();
+    }
+
+    private static MockHttpServletResponse filter(RateLimitingFilter filter, String subject) throws Exception {
+        SecurityContextHolder.getContext().setAuthentication(new CompactJwtAuthenticationToken("token", subject,
+                PrivateServerJwtTokenIssuer.ISSUER_NAME, Instant.now().plusSeconds(60), AuthorityUtils.NO_AUTHORITIES));
+        try {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(new MockHttpServletRequest("GET", "/protected"), response, new MockFilterChain());
+            return response;
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
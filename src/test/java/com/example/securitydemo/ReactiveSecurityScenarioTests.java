@@ -0,0 +1,31 @@
+package com.example.securitydemo;
+
+import org.junit.jupiter.api.BeforeEach;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.springSecurity;
+
+/**
+ * Runs the {@link SecurityScenarioTests} against the reactive (WebFlux) stack
+ * configured by {@link ReactiveSecurityConfiguration}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK,
+        properties = "spring.main.web-application-type=reactive")
+public class ReactiveSecurityScenarioTests extends SecurityScenarioTests {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @BeforeEach
+    void setup() {
+        client = WebTestClient
+                .bindToApplicationContext(context)
+                .apply(springSecurity()) // This is important to enable security testing
+                .configureClient()
+                .build();
+    }
+}
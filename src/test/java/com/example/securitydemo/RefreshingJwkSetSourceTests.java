@@ -0,0 +1,262 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.util.Resource;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifies the cold start and key rotation behavior of {@link RefreshingJwkSetSource}
+ * against a local stand-in for the JWKS endpoint of an issuer, and the coalescing of
+ * concurrent fetches against a fetcher which blocks until told to complete.
+ */
+public class RefreshingJwkSetSourceTests {
+
+    private static final Duration SLOW_ISSUER_DELAY = Duration.ofSeconds(2);
+
+    @TempDir
+    Path snapshotDirectory;
+
+    private HttpServer jwksServer;
+    private final AtomicReference<JWKSet> servedJwkSet = new AtomicReference<>();
+    private final AtomicInteger jwksRequests = new AtomicInteger();
+    private volatile boolean slowIssuer;
+
+    private RefreshingJwkSetSource source;
+
+    @BeforeEach
+    void startJwksServer() throws IOException {
+        jwksServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        jwksServer.createContext("/jwks.json", exchange -> {
+            jwksRequests.incrementAndGet();
+            if (slowIssuer) {
+                sleep(SLOW_ISSUER_DELAY);
+            }
+            byte[] body = servedJwkSet.get().toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        jwksServer.start();
+    }
+
+    @AfterEach
+    void stop() {
+        if (source != null) {
+            source.close();
+        }
+        jwksServer.stop(0);
+    }
+
+    /**
+     * Demonstrates that a new instance verifies tokens using the persisted snapshot
+     * without waiting for a slow issuer.
+     */
+    @Test
+    void servesPersistedSnapshotWithoutWaitingForTheIssuer() throws Exception {
+        RSAKey key = generateKey("key-1");
+        servedJwkSet.set(new JWKSet(key));
+        Path snapshot = snapshotDirectory.resolve("jwks.json");
+        Files.write(snapshot, new JWKSet(key).toString().getBytes(StandardCharsets.UTF_8));
+        slowIssuer = true;
+
+        long start = System.nanoTime();
+        source = createSource(snapshot);
+        List<JWK> keys = source.get(selectorFor("key-1"), null);
+        Duration coldStartLatency = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(keys).extracting(JWK::getKeyID).containsExactly("key-1");
+        assertThat(coldStartLatency).isLessThan(SLOW_ISSUER_DELAY);
+    }
+
+    /**
+     * Demonstrates that without a snapshot the first lookup has to wait for the issuer,
+     * which is the latency the snapshot removes.
+     */
+    @Test
+    void waitsForTheIssuerWithoutSnapshot() throws Exception {
+        servedJwkSet.set(new JWKSet(generateKey("key-1")));
+        slowIssuer = true;
+
+        long start = System.nanoTime();
+        source = createSource(snapshotDirectory.resolve("jwks.json"));
+        List<JWK> keys = source.get(selectorFor("key-1"), null);
+        Duration coldStartLatency = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(keys).extracting(JWK::getKeyID).containsExactly("key-1");
+        assertThat(coldStartLatency).isGreaterThanOrEqualTo(SLOW_ISSUER_DELAY);
+    }
+
+    /**
+     * Demonstrates that a key rotated on the issuer side replaces the stale snapshot
+     * both in memory and on disk.
+     */
+    @Test
+    void picksUpRotatedKeyAndUpdatesSnapshot() throws Exception {
+        RSAKey oldKey = generateKey("key-1");
+        RSAKey newKey = generateKey("key-2");
+        Path snapshot = snapshotDirectory.resolve("jwks.json");
+        Files.write(snapshot, new JWKSet(oldKey).toString().getBytes(StandardCharsets.UTF_8));
+        servedJwkSet.set(new JWKSet(newKey));
+
+        source = createSource(snapshot);
+        List<JWK> keys = source.get(selectorFor("key-2"), null);
+
+        assertThat(keys).extracting(JWK::getKeyID).containsExactly("key-2");
+        assertThat(JWKSet.load(snapshot.toFile()).getKeyByKeyId("key-2")).isNotNull();
+        assertThat(JWKSet.load(snapshot.toFile()).getKeyByKeyId("key-1")).isNull();
+        assertThat(JWKSet.load(snapshot.toFile()).getKeyByKeyId("key-2").isPrivate()).isFalse();
+    }
+
+    /**
+     * Demonstrates that a burst of tokens with an unknown key, e.g. right after a key
+     * rotation, results in a single fetch shared by all callers.
+     */
+    @Test
+    void coalescesConcurrentFetchesForUnknownKeys() throws Exception {
+        JWKSet rotatedJwkSet = new JWKSet(generateKey("key-2"));
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        servedJwkSet.set(new JWKSet(generateKey("key-1")));
+        source = new RefreshingJwkSetSource(new URL("http://issuer.local/jwks.json"), Duration.ofMinutes(5),
+                Duration.ZERO, Duration.ofSeconds(30), null, BlockingExecutors.platform(), url -> {
+                    JWKSet jwkSet = servedJwkSet.get();
+                    if (jwkSet == rotatedJwkSet) {
+                        fetches.incrementAndGet();
+                        fetching.countDown();
+                        await(release);
+                    }
+                    return new Resource(jwkSet.toString(), "application/json");
+                });
+        // The initial fetch
+        assertThat(source.get(selectorFor("key-1"), null)).isNotEmpty();
+        servedJwkSet.set(rotatedJwkSet);
+
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable);
+            callers.add(thread);
+            return thread;
+        });
+        try {
+            List<Future<List<JWK>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> {
+                    await(start);
+                    return source.get(selectorFor("key-2"), null);
+                }));
+            }
+            start.countDown();
+            assertThat(fetching.await(10, TimeUnit.SECONDS)).isTrue();
+            // Let all callers join the fetch before it completes
+            awaitFetchJoined(callers, threads);
+            release.countDown();
+
+            for (Future<List<JWK>> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).extracting(JWK::getKeyID).containsExactly("key-2");
+            }
+            assertThat(fetches).hasValue(1);
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Demonstrates that tokens with an unknown key do not trigger another fetch
+     * until the cooldown elapses.
+     */
+    @Test
+    void skipsFetchesForUnknownKeysDuringCooldown() throws Exception {
+        servedJwkSet.set(new JWKSet(generateKey("key-1")));
+        source = createSource(null);
+        source.get(selectorFor("key-1"), null);
+        int requestsBeforeBurst = jwksRequests.get();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(source.get(selectorFor("unknown"), null)).isEmpty();
+        }
+
+        assertThat(jwksRequests.get() - requestsBeforeBurst).isLessThanOrEqualTo(1);
+    }
+
+    private RefreshingJwkSetSource createSource(Path snapshot) throws IOException {
+        URL jwkSetUrl = new URL("http://127.0.0.1:" + jwksServer.getAddress().getPort() + "/jwks.json");
+        return new RefreshingJwkSetSource(jwkSetUrl, Duration.ofMinutes(5), Duration.ofMinutes(1),
+                Duration.ofSeconds(5), snapshot);
+    }
+
+    private static JWKSelector selectorFor(String keyId) {
+        return new JWKSelector(new JWKMatcher.Builder().keyID(keyId).build());
+    }
+
+    private static RSAKey generateKey(String keyId) throws JOSEException {
+        return new RSAKeyGenerator(2048).keyID(keyId).generate();
+    }
+
+    private static void awaitFetchJoined(List<Thread> threads, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            // Callers wait for the fetch with a timeout, unlike for the start latch
+            long waiting = threads.stream()
+                    .filter(thread -> thread.getState() == Thread.State.TIMED_WAITING)
+                    .count();
+            if (threads.size() == count && waiting == count) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+        throw new AssertionError("Callers did not join the fetch");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.securitydemo;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.MACSigner;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Verifies that the authentication pipeline reports its meters when
+ * {@link SecurityPipelineMetrics} are enabled.
+ */
+@SpringBootTest(properties = "security-demo.metrics.enabled=true")
+class SecurityPipelineMetricsTests {
+
+    private static final String ISSUER = PrivateServerJwtTokenIssuer.ISSUER_NAME;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setup() {
+        mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    @Test
+    void timesStagesOfSuccessfulAuthentication() throws Exception {
+        long decodes = timerCount("security.jwt.decode");
+        long conversions = timerCount("security.authorities.conversion");
+        long resolutions = timerCount("security.roles.resolution");
+
+        mvc.perform(get("/protected")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("bob")))
+                .andExpect(status().isOk());
+
+        assertThat(timerCount("security.jwt.decode")).isEqualTo(decodes + 1);
+        assertThat(timerCount("security.authorities.conversion")).isEqualTo(conversions + 1);
+        assertThat(timerCount("security.roles.resolution")).isEqualTo(resolutions + 1);
+    }
+
+    @Test
+    void countsFailuresByIssuerAndReason() throws Exception {
+        double malformed = failureCount(SecurityPipelineMetrics.UNKNOWN_ISSUER, "malformed");
+        double unknownIssuer = failureCount(SecurityPipelineMetrics.UNKNOWN_ISSUER, "unknown_issuer");
+        double invalidToken = failureCount(ISSUER, "invalid_token");
+
+        mvc.perform(get("/protected").header("Authorization", "Bearer wrong-token"))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(get("/protected").header("Authorization", "Bearer " + token("https://unknown.local",
+                        PrivateServerJwtTokenIssuer.PRIVATE_AUTH_SERVER_KEY.getEncoded())))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(get("/protected").header("Authorization", "Bearer " + token(ISSUER, new byte[32])))
+                .andExpect(status().isUnauthorized());
+
+        assertThat(failureCount(SecurityPipelineMetrics.UNKNOWN_ISSUER, "malformed")).isEqualTo(malformed + 1);
+        assertThat(failureCount(SecurityPipelineMetrics.UNKNOWN_ISSUER, "unknown_issuer"))
+                .isEqualTo(unknownIssuer + 1);
+        assertThat(failureCount(ISSUER, "invalid_token")).isEqualTo(invalidToken + 1);
+    }
+
+    @Test
+    void countsExpiredTokensByErrorCode() throws Exception {
+        double expired = failureCount(ISSUER, "expired");
+        long expiresAt = Instant.now().minus(Duration.ofHours(1)).getEpochSecond();
+
+        mvc.perform(get("/protected").header("Authorization", "Bearer " + token(ISSUER,
+                        PrivateServerJwtTokenIssuer.PRIVATE_AUTH_SERVER_KEY.getEncoded(), ", \"exp\": " + expiresAt)))
+                .andExpect(status().isUnauthorized());
+
+        assertThat(failureCount(ISSUER, "expired")).isEqualTo(expired + 1);
+    }
+
+    @Test
+    void removesMetersOfReleasedIssuers() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SecurityPipelineMetrics metrics = new SecurityPipelineMetrics(meterRegistry);
+        metrics.timeDecoding("https://tenant.local", token -> null);
+        metrics.timeDecoding("https://other.local", token -> null);
+        CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder().build(), "security.jwt.cache",
+                "issuer", "https://tenant.local");
+        meterRegistry.counter("security.jwks.refresh.failures", "issuer", "https://tenant.local");
+
+        metrics.removeIssuer("https://tenant.local");
+
+        assertThat(meterRegistry.find("security.jwt.decode").tag("issuer", "https://tenant.local").meter()).isNull();
+        assertThat(meterRegistry.find("cache.gets").tag("issuer", "https://tenant.local").meter()).isNull();
+        assertThat(meterRegistry.find("security.jwt.decode").tag("issuer", "https://other.local").meter()).isNotNull();
+        // Removed by the issuer itself when it is closed
+        assertThat(meterRegistry.find("security.jwks.refresh.failures").meter()).isNotNull();
+    }
+
+    private long timerCount(String name) {
+        return registry.timer(name, "issuer", ISSUER).count();
+    }
+
+    private double failureCount(String issuer, String reason) {
+        return registry.counter("security.authentication.failures", "issuer", issuer, "reason", reason).count();
+    }
+
+    private static String token(String issuer, byte[] key) throws JOSEException {
+        return token(issuer, key, "");
+    }
+
+    private static String token(String issuer, byte[] key, String claims) throws JOSEException {
+        JWSObject jwsObject = new JWSObject(new JWSHeader(JWSAlgorithm.HS256),
+                new Payload("{\"sub\": \"bob\", \"iss\": \"" + issuer + "\"" + claims + "}"));
+        jwsObject.sign(new MACSigner(key));
+        return jwsObject.serialize();
+    }
+}
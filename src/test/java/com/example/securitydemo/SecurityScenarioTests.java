@@ -6,35 +6,18 @@ import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.JWSObject;
 import com.nimbusds.jose.Payload;
 import com.nimbusds.jose.crypto.MACSigner;
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.test.web.servlet.MockMvc;
-import org.springframework.test.web.servlet.setup.MockMvcBuilders;
-import org.springframework.web.context.WebApplicationContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
 
-import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+/**
+ * Security scenarios shared by the servlet and the reactive mode of the application.
+ * Subclasses bootstrap the application in the respective mode and provide the
+ * {@link WebTestClient} bound to it.
+ */
+public abstract class SecurityScenarioTests {
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
-public class SecurityScenarioTests {
-
-    @Autowired
-    private WebApplicationContext context;
-
-    private MockMvc mvc;
-
-    @BeforeEach
-    void setup() {
-        mvc = MockMvcBuilders
-                .webAppContextSetup(context)
-                .apply(springSecurity()) // This is important to enable security testing
-                .build();
-    }
+    protected WebTestClient client;
 
     /**
      * Demonstrates ability to access public resources without authenticating.
@@ -43,9 +26,9 @@ public class SecurityScenarioTests {
      */
     @Test
     void allowsUnauthenticatedAccessToAPublicResource() throws Exception {
-        mvc.perform(get("/public"))
-                .andExpect(status().isOk())
-                .andExpect(content().string("Public content"));
+        client.get().uri("/public").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Public content");
     }
 
     /**
@@ -54,8 +37,8 @@ public class SecurityScenarioTests {
      */
     @Test
     void deniesAccessToProtectedResourceToUnauthenticatedUsers() throws Exception {
-        mvc.perform(get("/protected"))
-                .andExpect(status().isUnauthorized());
+        client.get().uri("/protected").exchange()
+                .expectStatus().isUnauthorized();
     }
 
     /**
@@ -67,10 +50,11 @@ public class SecurityScenarioTests {
      */
     @Test
     void allowsAccessToProtectedResourceWithJWTIssuedByPrivateAuthServer() throws Exception {
-        mvc.perform(get("/protected")
-                        .header("Authorization", "Bearer " + testPrivateAuthServerToken("bob")))
-                .andExpect(status().isOk())
-                .andExpect(content().string("Protected content for bob"));
+        client.get().uri("/protected")
+                .header("Authorization", "Bearer " + testPrivateAuthServerToken("bob"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Protected content for bob");
     }
 
     /**
@@ -79,9 +63,10 @@ public class SecurityScenarioTests {
      */
     @Test
     void deniesAccessToProtectedResourceWhenProvidedBearerTokenIsInWrongFormat() throws Exception {
-        mvc.perform(get("/protected")
-                        .header("Authorization", "Bearer " + "wrong-token"))
-                .andExpect(status().isUnauthorized());
+        client.get().uri("/protected")
+                .header("Authorization", "Bearer " + "wrong-token")
+                .exchange()
+                .expectStatus().isUnauthorized();
     }
 
     /**
@@ -95,14 +80,16 @@ public class SecurityScenarioTests {
      */
     @Test
     void allowsAccessToAdminResourceBasedOnRoleMappedFromCustomASSubject() throws Exception {
-        mvc.perform(get("/admin")
-                        .header("Authorization", "Bearer " + testPrivateAuthServerToken("bob")))
-                .andExpect(status().isForbidden());
-
-        mvc.perform(get("/admin")
-                        .header("Authorization", "Bearer " + testPrivateAuthServerToken("admin")))
-                .andExpect(status().isOk())
-                .andExpect(content().string("Admin only content for admin"));
+        client.get().uri("/admin")
+                .header("Authorization", "Bearer " + testPrivateAuthServerToken("bob"))
+                .exchange()
+                .expectStatus().isForbidden();
+
+        client.get().uri("/admin")
+                .header("Authorization", "Bearer " + testPrivateAuthServerToken("admin"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Admin only content for admin");
     }
 
     /**
@@ -115,10 +102,11 @@ public class SecurityScenarioTests {
     @Test
     void allowsAccessToProtectedResourceWithJWTIssuedByOIDCServer() throws Exception {
         String oidcSub = "dGVzdEBleGFtcGxlLmNvbQ=="; // It is a sub claim in the test JWT token
-        mvc.perform(get("/protected")
-                        .header("Authorization", "Bearer " + regularUserOIDCToken()))
-                .andExpect(status().isOk())
-                .andExpect(content().string("Protected content for " + oidcSub));
+        client.get().uri("/protected")
+                .header("Authorization", "Bearer " + regularUserOIDCToken())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Protected content for " + oidcSub);
     }
 
     /**
@@ -134,20 +122,22 @@ public class SecurityScenarioTests {
     void allowsAccessToAdminResourceBasedOnRoleMappedFromOIDCSubject() throws Exception {
         String regularUserId = "dGVzdEBleGFtcGxlLmNvbQ=="; // It is a sub claim in the test JWT token
         String adminUserId = "YWRtaW5AZXhhbXBsZS5jb20="; // It is a sub claim in the test JWT token
-        mvc.perform(get("/admin")
-                        .header("Authorization", "Bearer " + regularUserOIDCToken()))
-                .andExpect(status().isForbidden());
-
-        mvc.perform(get("/admin")
-                        .header("Authorization", "Bearer " + adminUserOIDCToken()))
-                .andExpect(status().isOk())
-                .andExpect(content().string("Admin only content for " + adminUserId));
+        client.get().uri("/admin")
+                .header("Authorization", "Bearer " + regularUserOIDCToken())
+                .exchange()
+                .expectStatus().isForbidden();
+
+        client.get().uri("/admin")
+                .header("Authorization", "Bearer " + adminUserOIDCToken())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Admin only content for " + adminUserId);
     }
 
     /**
      * Helper method to generate JWT token that emulates custom Authorization Server scenario.
      */
-    private String testPrivateAuthServerToken(String sub) {
+    static String testPrivateAuthServerToken(String sub) {
         // Only sub and iss are important in this case
         String tokenPayloadJson = String.format("{\n"
                 + "  \"sub\": \"%s\",\n"
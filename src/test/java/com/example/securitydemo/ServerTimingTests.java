@@ -0,0 +1,91 @@
+package com.example.securitydemo;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Verifies that sampled requests to the {@link AppController} report the stages of the
+ * security pipeline in a Server-Timing header.
+ */
+@SpringBootTest(properties = {
+        "security-demo.server-timing.enabled=true",
+        "security-demo.server-timing.sample-rate=1"
+})
+class ServerTimingTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setup() {
+        mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    @Test
+    void reportsStagesOfAuthenticatedRequests() throws Exception {
+        MvcResult result = mvc.perform(get("/protected")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("bob")))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getHeader(ServerTimingRecorder.HEADER_NAME))
+                .matches("extract;dur=\\d+\\.\\d{3}, issuer;dur=\\d+\\.\\d{3}, verify;dur=\\d+\\.\\d{3}, "
+                        + "roles;dur=\\d+\\.\\d{3}, authorities;dur=\\d+\\.\\d{3}, authz;dur=\\d+\\.\\d{3}");
+    }
+
+    @Test
+    void reportsOnlyStagesRunForPublicRequests() throws Exception {
+        MvcResult result = mvc.perform(get("/public"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getHeader(ServerTimingRecorder.HEADER_NAME))
+                .matches("extract;dur=\\d+\\.\\d{3}, authz;dur=\\d+\\.\\d{3}");
+    }
+
+    @Test
+    void recordsOnlySampledRequests() throws Exception {
+        ServerTimingRecorder recorder = new ServerTimingRecorder(true, 0);
+        SubjectRolesResolver resolver = recorder.timeRoleResolution(subject -> List.of("USER"));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            recorder.createFilter().doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+                assertThat(resolver.getRolesBySubject("bob")).containsExactly("USER");
+                assertThat(ServerTimingRecorder.headerValue(request)).isNull();
+            });
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        assertThat(Collections.list(request.getAttributeNames())).isEmpty();
+    }
+
+    @Test
+    void omitsHeaderOutsideAppController() throws Exception {
+        mvc.perform(get("/protected"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().doesNotExist(ServerTimingRecorder.HEADER_NAME));
+    }
+}
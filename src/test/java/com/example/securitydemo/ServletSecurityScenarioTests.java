@@ -0,0 +1,31 @@
+package com.example.securitydemo;
+
+import org.junit.jupiter.api.BeforeEach;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.client.MockMvcWebTestClient;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+
+/**
+ * Runs the {@link SecurityScenarioTests} against the default servlet stack.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+public class ServletSecurityScenarioTests extends SecurityScenarioTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @BeforeEach
+    void setup() {
+        MockMvc mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity()) // This is important to enable security testing
+                .build();
+        client = MockMvcWebTestClient.bindTo(mvc).build();
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.securitydemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies that a {@link SubjectRolesIndex} built by the {@link SubjectRolesIndexBuilder}
+ * finds the roles of every subject, also when its sections span many segments, and
+ * that damaged files are rejected when opened.
+ */
+public class SubjectRolesIndexTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsRolesOfAllSubjects() throws Exception {
+        Path index = build(csv(1000), SubjectRolesIndex.DEFAULT_SEGMENT_SHIFT);
+
+        SubjectRolesIndex rolesIndex = SubjectRolesIndex.open(index);
+
+        assertRoles(rolesIndex, 1000);
+    }
+
+    @Test
+    void findsRolesAcrossSegments() throws Exception {
+        // Segments of 64 bytes, so that both sections span many of them and subjects are padded
+        Path index = build(csv(1000), 6);
+
+        SubjectRolesIndex rolesIndex = SubjectRolesIndex.open(index);
+
+        assertRoles(rolesIndex, 1000);
+    }
+
+    @Test
+    void comparesSubjectsInFull() throws Exception {
+        Path csv = directory.resolve("roles.csv");
+        Files.writeString(csv, "bob,USER\nbób,ADMIN\n😀,ADMIN\n");
+        SubjectRolesIndex rolesIndex = SubjectRolesIndex.open(build(csv, 6));
+
+        assertThat(rolesIndex.getRoles("bob")).containsExactly("USER");
+        assertThat(rolesIndex.getRoles("bób")).containsExactly("ADMIN");
+        assertThat(rolesIndex.getRoles("😀")).containsExactly("ADMIN");
+        assertThat(rolesIndex.getRoles("bo")).isEmpty();
+        assertThat(rolesIndex.getRoles("bobby")).isEmpty();
+        assertThat(rolesIndex.getRoles("")).isEmpty();
+    }
+
+    @Test
+    void servesRolesViaResolver() throws Exception {
+        Path index = build(csv(10), SubjectRolesIndex.DEFAULT_SEGMENT_SHIFT);
+        MappedSubjectRolesResolver resolver = new MappedSubjectRolesResolver(index, Duration.ofMinutes(30));
+        try {
+            assertThat(resolver.getRolesBySubject("subject-3")).containsExactly("USER");
+            assertThat(resolver.getRolesBySubject("subject-5")).containsExactlyInAnyOrder("USER", "ADMIN");
+        } finally {
+            resolver.close();
+        }
+    }
+
+    @Test
+    void rejectsCorruptedFiles() throws Exception {
+        Path index = build(csv(100), 6);
+        byte[] original = Files.readAllBytes(index);
+
+        // Wrong magic
+        Path corrupted = write("magic", original, buffer -> buffer.putInt(0, 0x12345678));
+        assertThatThrownBy(() -> SubjectRolesIndex.open(corrupted)).isInstanceOf(IOException.class);
+
+        // Segment shift out of range
+        Path shift = write("shift", original, buffer -> buffer.putInt(8, 31));
+        assertThatThrownBy(() -> SubjectRolesIndex.open(shift)).isInstanceOf(IOException.class);
+
+        // Missing the end of the data section
+        Path truncated = directory.resolve("truncated.idx");
+        Files.write(truncated, Arrays.copyOf(original, original.length - 1));
+        assertThatThrownBy(() -> SubjectRolesIndex.open(truncated)).isInstanceOf(IOException.class);
+
+        // Cut off within the header
+        Path header = directory.resolve("header.idx");
+        Files.write(header, Arrays.copyOf(original, 14));
+        assertThatThrownBy(() -> SubjectRolesIndex.open(header)).isInstanceOf(IOException.class);
+
+        Path empty = directory.resolve("empty.idx");
+        Files.write(empty, new byte[0]);
+        assertThatThrownBy(() -> SubjectRolesIndex.open(empty)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void rejectsSlotCountOtherThanPowerOfTwo() throws Exception {
+        Path csv = directory.resolve("roles.csv");
+        Files.writeString(csv, "bob,USER\n");
+        Path index = build(csv, 6);
+        // The header of a single role and role set ends with the slot count and the data length
+        int slotCountPosition = 4 + 4 + 4 + 4 + (2 + "USER".length()) + 4 + 8;
+        Path corrupted = write("slots", Files.readAllBytes(index), buffer -> buffer.putInt(slotCountPosition, 24));
+
+        assertThatThrownBy(() -> SubjectRolesIndex.open(corrupted)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void rejectsSubjectsLongerThanASegment() throws Exception {
+        Path csv = directory.resolve("roles.csv");
+        Files.writeString(csv, "a-subject-which-does-not-fit-into-a-segment-of-32-bytes,USER\n");
+
+        assertThatThrownBy(() -> build(csv, 5)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Path build(Path csv, int segmentShift) throws IOException {
+        Path index = directory.resolve("roles-" + segmentShift + ".idx");
+        SubjectRolesIndexBuilder.build(csv, index, segmentShift);
+        return index;
+    }
+
+    /**
+     * Every subject is a USER, every fifth one also an ADMIN, except for every seventh one,
+     * which is not listed at all.
+     */
+    private Path csv(int subjects) throws IOException {
+        StringBuilder csv = new StringBuilder("# subject,role\n");
+        for (int i = 0; i < subjects; i++) {
+            for (String role : roles(i)) {
+                csv.append("subject-").append(i).append(',').append(role).append('\n');
+            }
+        }
+        Path file = directory.resolve("roles.csv");
+        Files.writeString(file, csv);
+        return file;
+    }
+
+    private static List<String> roles(int subject) {
+        if (subject % 7 == 0) {
+            return List.of();
+        }
+        return subject % 5 == 0 ? List.of("USER", "ADMIN") : List.of("USER");
+    }
+
+    private static void assertRoles(SubjectRolesIndex rolesIndex, int subjects) {
+        for (int i = 0; i < subjects; i++) {
+            assertThat(rolesIndex.getRoles("subject-" + i)).containsExactlyInAnyOrderElementsOf(roles(i));
+        }
+        assertThat(rolesIndex.getRoles("subject-" + subjects)).isEmpty();
+        assertThat(rolesIndex.getRoles("unknown")).isEmpty();
+    }
+
+    private Path write(String name, byte[] content, Consumer<ByteBuffer> corruption)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(content.clone());
+        corruption.accept(buffer);
+        Path file = directory.resolve(name + ".idx");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(buffer);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.securitydemo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Verifies that tokens revoked via {@link TokenRevocationController} are rejected.
+ */
+@SpringBootTest(properties = "security-demo.revocation.enabled=true")
+class TokenRevocationControllerTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setup() {
+        mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    @Test
+    void rejectsTokensOfRevokedSubject() throws Exception {
+        String token = SecurityScenarioTests.testPrivateAuthServerToken("eve");
+        mvc.perform(get("/protected").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+
+        revoke("{\"issuer\": \"" + PrivateServerJwtTokenIssuer.ISSUER_NAME + "\", \"subject\": \"eve\"}",
+                SecurityScenarioTests.testPrivateAuthServerToken("admin"))
+                .andExpect(status().isNoContent());
+
+        mvc.perform(get("/protected").header("Authorization", "Bearer " + token))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(get("/protected")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("bob")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void requiresAdminRole() throws Exception {
+        revoke("{\"issuer\": \"" + PrivateServerJwtTokenIssuer.ISSUER_NAME + "\", \"subject\": \"eve\"}",
+                SecurityScenarioTests.testPrivateAuthServerToken("bob"))
+                .andExpect(status().isForbidden());
+        revoke("{}", SecurityScenarioTests.testPrivateAuthServerToken("admin"))
+                .andExpect(status().isBadRequest());
+        // Subjects and token ids are only unique within their issuer
+        revoke("{\"subject\": \"eve\"}", SecurityScenarioTests.testPrivateAuthServerToken("admin"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private ResultActions revoke(String body, String token) throws Exception {
+        return mvc.perform(post("/admin/revocations")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body));
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.securitydemo;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies that the {@link TokenRevocationList} follows its append-only file, keeps
+ * the revocations of different issuers apart and stays exact while its filter grows.
+ */
+public class TokenRevocationListTests {
+
+    private static final String ISSUER = "https://private-server.local";
+    private static final String OTHER_ISSUER = "https://tenant.local";
+    private static final Instant ISSUED_AT = Instant.parse("2024-01-01T00:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private TokenRevocationList revocationList;
+
+    @AfterEach
+    void close() {
+        if (revocationList != null) {
+            revocationList.close();
+        }
+    }
+
+    @Test
+    void readsAppendedRevocations() throws Exception {
+        Path file = directory.resolve("revocations");
+        Files.writeString(file, "jti:" + ISSUER + " token-1\nsub:" + ISSUER + " " + revokedAt() + " mallory\n");
+        revocationList = new TokenRevocationList(file, Duration.ofMinutes(30), 16, 0.01);
+
+        assertThat(revocationList.isRevoked(ISSUER, "token-1", "bob", ISSUED_AT)).isTrue();
+        assertThat(revocationList.isRevoked(ISSUER, "token-2", "mallory", ISSUED_AT)).isTrue();
+        assertThat(revocationList.isRevoked(ISSUER, "token-2", "bob", ISSUED_AT)).isFalse();
+        assertThat(revocationList.isRevoked(ISSUER, null, null, null)).isFalse();
+
+        // The incomplete last line is picked up once it is terminated
+        Files.writeString(file, "jti:" + ISSUER + " token-2\njti:" + ISSUER + " token-",
+                StandardOpenOption.APPEND);
+        revocationList.reload();
+        assertThat(revocationList.isRevoked(ISSUER, "token-2", "bob", ISSUED_AT)).isTrue();
+        assertThat(revocationList.isRevoked(ISSUER, "token-", "bob", ISSUED_AT)).isFalse();
+
+        Files.writeString(file, "3\n", StandardOpenOption.APPEND);
+        revocationList.reload();
+        assertThat(revocationList.isRevoked(ISSUER, "token-3", "bob", ISSUED_AT)).isTrue();
+    }
+
+    @Test
+    void rebuildsWhenFileIsTruncated() throws Exception {
+        Path file = directory.resolve("revocations");
+        Files.writeString(file, "jti:" + ISSUER + " token-1\njti:" + ISSUER + " token-2\n");
+        revocationList = new TokenRevocationList(file, Duration.ofMinutes(30), 16, 0.01);
+
+        Files.writeString(file, "jti:" + ISSUER + " token-2\n");
+        revocationList.reload();
+
+        assertThat(revocationList.isRevoked(ISSUER, "token-1", null, ISSUED_AT)).isFalse();
+        assertThat(revocationList.isRevoked(ISSUER, "token-2", null, ISSUED_AT)).isTrue();
+    }
+
+    @Test
+    void persistsRevocationsToTheFile() throws Exception {
+        Path file = directory.resolve("revocations");
+        revocationList = new TokenRevocationList(file, Duration.ofMinutes(30), 16, 0.01);
+
+        revocationList.revokeToken(ISSUER, "token-1");
+        revocationList.revokeSubject(ISSUER, "mallory");
+        revocationList.reload();
+
+        assertThat(revocationList.isRevoked(ISSUER, "token-1", null, ISSUED_AT)).isTrue();
+        assertThat(revocationList.isRevoked(ISSUER, null, "mallory", ISSUED_AT)).isTrue();
+        assertThat(Files.readAllLines(file)).hasSize(2)
+                .first().isEqualTo("jti:" + ISSUER + " token-1");
+        assertThat(Files.readAllLines(file).get(1)).startsWith("sub:" + ISSUER + " ").endsWith(" mallory");
+
+        // Read back from the file alone
+        revocationList.close();
+        revocationList = new TokenRevocationList(file, Duration.ofMinutes(30), 16, 0.01);
+        assertThat(revocationList.isRevoked(ISSUER, null, "mallory", ISSUED_AT)).isTrue();
+    }
+
+    @Test
+    void keepsRevocationsOfIssuersApart() throws Exception {
+        revocationList = new TokenRevocationList(16, 0.01);
+        revocationList.revokeToken(ISSUER, "token-1");
+        revocationList.revokeSubject(ISSUER, "bob");
+
+        assertThat(revocationList.isRevoked(ISSUER, "token-1", null, ISSUED_AT)).isTrue();
+        assertThat(revocationList.isRevoked(ISSUER, null, "bob", ISSUED_AT)).isTrue();
+        assertThat(revocationList.isRevoked(OTHER_ISSUER, "token-1", null, ISSUED_AT)).isFalse();
+        assertThat(revocationList.isRevoked(OTHER_ISSUER, null, "bob", ISSUED_AT)).isFalse();
+    }
+
+    @Test
+    void acceptsTokensIssuedAfterTheSubjectWasRevoked() throws Exception {
+        revocationList = new TokenRevocationList(16, 0.01);
+        Instant revokedAt = Instant.now();
+        revocationList.revokeSubject(ISSUER, "bob");
+
+        assertThat(revocationList.isRevoked(ISSUER, null, "bob", revokedAt.minusSeconds(60))).isTrue();
+        assertThat(revocationList.isRevoked(ISSUER, null, "bob", revokedAt.plusSeconds(60))).isFalse();
+        // Without iat there is no telling, so the token is rejected
+        assertThat(revocationList.isRevoked(ISSUER, null, "bob", null)).isTrue();
+    }
+
+    @Test
+    void rejectsInvalidRevocations() {
+        revocationList = new TokenRevocationList(16, 0.01);
+
+        assertThatThrownBy(() -> revocationList.revokeSubject("https://tenant .local", "bob"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> revocationList.revokeToken(ISSUER, "token\n1"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void staysExactBeyondExpectedRevocations() throws Exception {
+        revocationList = new TokenRevocationList(8, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            revocationList.revokeToken(ISSUER, "revoked-" + i);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(revocationList.isRevoked(ISSUER, "revoked-" + i, null, ISSUED_AT)).isTrue();
+            assertThat(revocationList.isRevoked(ISSUER, "valid-" + i, null, ISSUED_AT)).isFalse();
+            assertThat(revocationList.isRevoked(OTHER_ISSUER, "revoked-" + i, null, ISSUED_AT)).isFalse();
+        }
+    }
+
+    @Test
+    void staysExactWhenAppendedRevocationsExceedTheExpectedOnes() throws Exception {
+        Path file = directory.resolve("revocations");
+        Files.writeString(file, "jti:" + ISSUER + " revoked-0\n");
+        revocationList = new TokenRevocationList(file, Duration.ofMinutes(30), 8, 0.01);
+
+        // Grows the live filter several times within a single reload
+        StringBuilder appended = new StringBuilder();
+        for (int i = 1; i < 100; i++) {
+            appended.append("jti:").append(ISSUER).append(" revoked-").append(i).append('\n');
+            appended.append("sub:").append(ISSUER).append(' ').append(revokedAt()).append(" subject-").append(i)
+                    .append('\n');
+        }
+        Files.writeString(file, appended, StandardOpenOption.APPEND);
+        revocationList.reload();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(revocationList.isRevoked(ISSUER, "revoked-" + i, null, ISSUED_AT)).isTrue();
+            assertThat(revocationList.isRevoked(ISSUER, "valid-" + i, null, ISSUED_AT)).isFalse();
+        }
+        for (int i = 1; i < 100; i++) {
+            assertThat(revocationList.isRevoked(ISSUER, null, "subject-" + i, ISSUED_AT)).isTrue();
+        }
+    }
+
+    private static long revokedAt() {
+        return ISSUED_AT.plusSeconds(60).getEpochSecond();
+    }
+}
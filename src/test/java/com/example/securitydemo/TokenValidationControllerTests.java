@@ -0,0 +1,133 @@
+package com.example.securitydemo;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "security-demo.batch-validation.maximum-tokens=3",
+        "security-demo.batch-validation.maximum-token-length=2000"
+})
+class TokenValidationControllerTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setup() {
+        mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    @Test
+    void validatesEachTokenOfTheBatchInOrder() throws Exception {
+        String batch = String.join("\n",
+                SecurityScenarioTests.testPrivateAuthServerToken("bob"),
+                "wrong-token",
+                "",
+                SecurityScenarioTests.testPrivateAuthServerToken("admin"));
+
+        String response = mvc.perform(post("/tokens/validate")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("gateway"))
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(batch))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        List<String> lines = response.lines().toList();
+        assertThat(lines).hasSize(3);
+
+        JsonNode bob = objectMapper.readTree(lines.get(0));
+        assertThat(bob.get("index").asInt()).isEqualTo(0);
+        assertThat(bob.get("valid").asBoolean()).isTrue();
+        assertThat(bob.get("issuer").asText()).isEqualTo(PrivateServerJwtTokenIssuer.ISSUER_NAME);
+        assertThat(bob.get("subject").asText()).isEqualTo("bob");
+        assertThat(bob.get("roles").get(0).asText()).isEqualTo("USER");
+
+        JsonNode wrong = objectMapper.readTree(lines.get(1));
+        assertThat(wrong.get("index").asInt()).isEqualTo(1);
+        assertThat(wrong.get("valid").asBoolean()).isFalse();
+        assertThat(wrong.get("error").asText()).isNotEmpty();
+
+        JsonNode admin = objectMapper.readTree(lines.get(2));
+        assertThat(admin.get("index").asInt()).isEqualTo(2);
+        assertThat(admin.get("roles").get(0).asText()).isEqualTo("ADMIN");
+    }
+
+    @Test
+    void reportsTokensBeyondTheLimitsAsInvalid() throws Exception {
+        String batch = String.join("\n",
+                "x".repeat(2500),
+                SecurityScenarioTests.testPrivateAuthServerToken("bob"),
+                SecurityScenarioTests.testPrivateAuthServerToken("admin"),
+                SecurityScenarioTests.testPrivateAuthServerToken("bob"),
+                SecurityScenarioTests.testPrivateAuthServerToken("admin"));
+
+        List<String> lines = validate(batch).lines().toList();
+
+        assertThat(lines).hasSize(4);
+        JsonNode tooLong = objectMapper.readTree(lines.get(0));
+        assertThat(tooLong.get("valid").asBoolean()).isFalse();
+        assertThat(tooLong.get("error").asText()).isEqualTo("Token too long");
+        assertThat(objectMapper.readTree(lines.get(1)).get("valid").asBoolean()).isTrue();
+        assertThat(objectMapper.readTree(lines.get(2)).get("valid").asBoolean()).isTrue();
+        JsonNode tooMany = objectMapper.readTree(lines.get(3));
+        assertThat(tooMany.get("index").asInt()).isEqualTo(3);
+        assertThat(tooMany.get("error").asText()).isEqualTo("Too many tokens");
+    }
+
+    @Test
+    void rejectsBatchesDeclaredLongerThanTheLimits() throws Exception {
+        mvc.perform(post("/tokens/validate")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("gateway"))
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("x".repeat(7000)))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    void requiresTheRoleOfTheGateway() throws Exception {
+        mvc.perform(post("/tokens/validate")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("bob"))
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(SecurityScenarioTests.testPrivateAuthServerToken("bob")))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void requiresAuthentication() throws Exception {
+        mvc.perform(post("/tokens/validate")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(SecurityScenarioTests.testPrivateAuthServerToken("bob")))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private String validate(String batch) throws Exception {
+        return mvc.perform(post("/tokens/validate")
+                        .header("Authorization", "Bearer " + SecurityScenarioTests.testPrivateAuthServerToken("gateway"))
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(batch))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+}
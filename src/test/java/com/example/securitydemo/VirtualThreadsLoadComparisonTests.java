@@ -0,0 +1,81 @@
+package com.example.securitydemo;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the platform-thread Tomcat pool with the virtual-thread mode enabled by
+ * {@link VirtualThreadsConfiguration} when every authenticated request waits for
+ * an artificially slow {@link SubjectRolesResolver}.
+ * <p>
+ * Run with {@code ./gradlew loadTest}.
+ */
+@Tag("load")
+public class VirtualThreadsLoadComparisonTests {
+
+    private static final Duration RESOLVER_DELAY = Duration.ofMillis(50);
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int CONCURRENCY = 1000;
+    private static final int REQUESTS = 20_000;
+
+    @Test
+    void virtualThreadsServeMoreRequestsWithSlowRolesResolver() throws Exception {
+        LoadDriver.Result platformThreads = runAgainstApplication(false);
+        LoadDriver.Result virtualThreads = runAgainstApplication(true);
+
+        System.out.printf("Slow resolver (%dms), %d concurrent clients%n  platform threads (max %d): %s%n"
+                        + "  virtual threads: %s%n", RESOLVER_DELAY.toMillis(), CONCURRENCY, TOMCAT_MAX_THREADS,
+                platformThreads, virtualThreads);
+        assertThat(platformThreads.errors()).isZero();
+        assertThat(virtualThreads.errors()).isZero();
+        assertThat(virtualThreads.throughput()).isGreaterThan(platformThreads.throughput());
+    }
+
+    private LoadDriver.Result runAgainstApplication(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SecurityDemoApplication.class)
+                .initializers(VirtualThreadsLoadComparisonTests::registerSlowRolesResolver)
+                .properties(
+                        "server.port=0",
+                        "server.tomcat.threads.max=" + TOMCAT_MAX_THREADS,
+                        "server.tomcat.max-connections=" + CONCURRENCY * 2,
+                        "server.tomcat.accept-count=" + CONCURRENCY,
+                        "security-demo.virtual-threads.enabled=" + virtualThreads)
+                .run()) {
+            LoadDriver driver = new LoadDriver(context.getEnvironment().getProperty("local.server.port", Integer.class));
+            List<LoadDriver.Request> mix = Arrays.asList(
+                    new LoadDriver.Request("/protected", SecurityScenarioTests.testPrivateAuthServerToken("bob"), 200),
+                    new LoadDriver.Request("/admin", SecurityScenarioTests.testPrivateAuthServerToken("admin"), 200));
+            // Warm up the JIT and the connection pools first
+            driver.run(mix, CONCURRENCY, REQUESTS / 4);
+            return driver.run(mix, CONCURRENCY, REQUESTS);
+        }
+    }
+
+    private static void registerSlowRolesResolver(ConfigurableApplicationContext context) {
+        SubjectRolesResolver delegate = new InMemorySubjectRolesResolver();
+        SubjectRolesResolver slowResolver = subject -> {
+            sleep(RESOLVER_DELAY);
+            return delegate.getRolesBySubject(subject);
+        };
+        ((GenericApplicationContext) context).registerBean("slowSubjectRolesResolver", SubjectRolesResolver.class,
+                () -> slowResolver, definition -> definition.setPrimary(true));
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}